@@ -1,11 +1,16 @@
 DROP TRIGGER IF EXISTS tsvector_doc_update ON documents;
 DROP TRIGGER IF EXISTS tsvector_doc_update_freq ON documents;
+DROP TRIGGER IF EXISTS tsvector_doc_update_terms ON documents;
 
+DROP TABLE IF EXISTS pagerank_runs;
+DROP TABLE IF EXISTS projection_control_points;
+DROP TABLE IF EXISTS projection_runs;
 DROP TABLE IF EXISTS citations;
 DROP TABLE IF EXISTS documents_data;
 DROP TABLE IF EXISTS document_authors;
 DROP TABLE IF EXISTS documents;
 DROP TABLE IF EXISTS authors;
+DROP TABLE IF EXISTS terms;
 
 CREATE TABLE documents (
 	doc_id				bigserial PRIMARY KEY,
@@ -21,7 +26,16 @@ CREATE TABLE documents (
 	container_issn		varchar(100),
 	language			regconfig,
 	tsv					tsvector,
-	freqs				jsonb
+	freqs				jsonb,
+	term_ids			int4[],
+	term_freqs			float4[]
+);
+
+CREATE TABLE terms (
+	term_id		serial PRIMARY KEY,
+	term		text NOT NULL UNIQUE,
+	ndoc		int NOT NULL DEFAULT 0,
+	nentry		int NOT NULL DEFAULT 0
 );
 
 CREATE TABLE authors (
@@ -53,6 +67,50 @@ CREATE TABLE citations (
 );
 
 
+CREATE TABLE pagerank_runs (
+	run_id				bigserial PRIMARY KEY,
+	created_at			timestamp DEFAULT now(),
+	last_citation_id	bigint,
+	num_citations		bigint,
+	num_documents		int,
+	iterations			int,
+	delta				double precision,
+	updated				int
+);
+
+CREATE TABLE projection_runs (
+	run_id				bigserial PRIMARY KEY,
+	created_at			timestamp DEFAULT now(),
+	num_documents		int,
+	num_terms			int,
+	min_df				int,
+	max_df				double precision,
+	top_k				int,
+	stopwords			text[],
+	term_ids			int4[],
+	term_ndocs			int4[],
+	hashing_bits		int,
+	last_doc_id			bigint,
+	bounds				double precision[],
+	seed				bigint,
+	vocabulary_hash		text,
+	aligned_to			bigint,
+	updated				int,
+	phases				text[],
+	phase_ms			int8[]
+);
+
+CREATE TABLE projection_control_points (
+	run_id				bigint REFERENCES projection_runs(run_id) ON UPDATE CASCADE ON DELETE CASCADE,
+	position			int,
+	doc_id				bigint,
+	x					double precision,
+	y					double precision,
+	columns				int4[],
+	vals				double precision[],
+	PRIMARY KEY(run_id, position)
+);
+
 CREATE INDEX source_idx ON citations(doc_id);
 CREATE INDEX target_idx ON citations(ref_id);
 
@@ -106,9 +164,95 @@ $documents_freqs_trigger$ LANGUAGE plpgsql;
 CREATE TRIGGER tsvector_doc_update_freq BEFORE INSERT OR UPDATE
     ON documents FOR EACH ROW EXECUTE PROCEDURE documents_freqs();
     
+-- Vocabulário persistente: os vetores de termos de cada documento
+-- (term_ids/term_freqs, ordenados por term_id) são calculados por linha e as
+-- contagens dos termos (terms.ndoc/nentry) são atualizadas uma vez por
+-- comando, a partir das tabelas de transição (PostgreSQL 10+).
+-- Para preencher documentos existentes: UPDATE documents SET term_ids = NULL;
+CREATE OR REPLACE FUNCTION documents_terms() RETURNS TRIGGER AS $documents_terms_trigger$
+	DECLARE
+		words	text[];
+		freqs	int[];
+	BEGIN
+		IF TG_OP = 'UPDATE' AND new.tsv IS NOT DISTINCT FROM old.tsv AND new.term_ids IS NOT NULL THEN
+			RETURN new;
+		END IF;
+
+		new.term_ids := NULL;
+		new.term_freqs := NULL;
+		IF new.tsv IS NOT NULL THEN
+			SELECT array_agg(word ORDER BY word), array_agg(nentry ORDER BY word) INTO words, freqs 
+			FROM ts_stat( format('SELECT %s::tsvector', quote_literal(new.tsv)) );
+
+			-- Somente termos novos: ON CONFLICT consome um valor da sequência por linha
+			INSERT INTO terms (term) SELECT w FROM unnest(words) w 
+			WHERE NOT EXISTS (SELECT 1 FROM terms t WHERE t.term = w) ON CONFLICT (term) DO NOTHING;
+
+			SELECT array_agg(t.term_id ORDER BY t.term_id), array_agg(f.nentry::float4 ORDER BY t.term_id)
+			INTO new.term_ids, new.term_freqs
+			FROM unnest(words, freqs) f(word, nentry), LATERAL (SELECT term_id FROM terms WHERE term = f.word) t;
+		END IF;
+
+		RETURN new;
+	END;
+$documents_terms_trigger$ LANGUAGE plpgsql
+-- Busca dos termos sempre pelo índice (o plano é mantido em cache e
+-- pode ter sido gerado com a tabela terms ainda vazia)
+SET enable_seqscan = off;
+
+CREATE TRIGGER tsvector_doc_update_terms BEFORE INSERT OR UPDATE
+    ON documents FOR EACH ROW EXECUTE PROCEDURE documents_terms();
+
+CREATE OR REPLACE FUNCTION terms_counts() RETURNS TRIGGER AS $terms_counts_trigger$
+	DECLARE
+		ids		int[];
+		ndocs	int[];
+		nentries	int[];
+	BEGIN
+		IF TG_OP = 'INSERT' THEN
+			SELECT array_agg(term_id ORDER BY term_id), array_agg(ndoc ORDER BY term_id), array_agg(nentry ORDER BY term_id)
+			INTO ids, ndocs, nentries FROM (
+				SELECT f.term_id, count(*) ndoc, sum(f.freq) nentry
+				FROM new_docs, unnest(term_ids, term_freqs) f(term_id, freq) GROUP BY f.term_id ) d;
+		ELSIF TG_OP = 'DELETE' THEN
+			SELECT array_agg(term_id ORDER BY term_id), array_agg(ndoc ORDER BY term_id), array_agg(nentry ORDER BY term_id)
+			INTO ids, ndocs, nentries FROM (
+				SELECT f.term_id, -count(*) ndoc, -sum(f.freq) nentry
+				FROM old_docs, unnest(term_ids, term_freqs) f(term_id, freq) GROUP BY f.term_id ) d;
+		ELSE
+			SELECT array_agg(term_id ORDER BY term_id), array_agg(ndoc ORDER BY term_id), array_agg(nentry ORDER BY term_id)
+			INTO ids, ndocs, nentries FROM (
+				SELECT term_id, sum(ndoc) ndoc, sum(nentry) nentry FROM (
+					SELECT f.term_id, 1 ndoc, f.freq nentry FROM new_docs, unnest(term_ids, term_freqs) f(term_id, freq)
+					UNION ALL
+					SELECT f.term_id, -1, -f.freq FROM old_docs, unnest(term_ids, term_freqs) f(term_id, freq) ) u
+				GROUP BY term_id HAVING sum(ndoc) <> 0 OR sum(nentry) <> 0 ) d;
+		END IF;
+
+		IF ids IS NOT NULL THEN
+			-- Bloqueia termos em ordem (evita deadlocks entre cargas concorrentes)
+			PERFORM 1 FROM terms WHERE term_id = ANY(ids) ORDER BY term_id FOR UPDATE;
+			UPDATE terms t SET ndoc = t.ndoc + d.ndoc, nentry = t.nentry + d.nentry
+			FROM unnest(ids, ndocs, nentries) d(term_id, ndoc, nentry) WHERE t.term_id = d.term_id;
+		END IF;
+
+		RETURN NULL;
+	END;
+$terms_counts_trigger$ LANGUAGE plpgsql;
+
+CREATE TRIGGER terms_counts_insert AFTER INSERT ON documents
+	REFERENCING NEW TABLE AS new_docs FOR EACH STATEMENT EXECUTE PROCEDURE terms_counts();
+
+CREATE TRIGGER terms_counts_update AFTER UPDATE ON documents
+	REFERENCING OLD TABLE AS old_docs NEW TABLE AS new_docs FOR EACH STATEMENT EXECUTE PROCEDURE terms_counts();
+
+CREATE TRIGGER terms_counts_delete AFTER DELETE ON documents
+	REFERENCING OLD TABLE AS old_docs FOR EACH STATEMENT EXECUTE PROCEDURE terms_counts();
+
+-- Documentos sem projeção (x e y nulos) até a próxima projeção
 CREATE OR REPLACE FUNCTION documents_data() RETURNS TRIGGER AS $documents_data_trigger$
 	BEGIN
-		INSERT INTO documents_data(doc_id,x,y,relevance) VALUES (new.doc_id,0.0,0.0,0.0);
+		INSERT INTO documents_data(doc_id,x,y,relevance) VALUES (new.doc_id,NULL,NULL,0.0);
 		return new;
 	END;
 $documents_data_trigger$ LANGUAGE plpgsql;
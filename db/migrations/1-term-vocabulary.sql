@@ -0,0 +1,97 @@
+-- Vocabulário persistente (tabela terms e vetores term_ids/term_freqs)
+-- para bases criadas com versões anteriores do esquema. Funções e
+-- triggers idênticas às de db/database-schema.sql; o UPDATE final
+-- recalcula os vetores de termos e as contagens dos documentos existentes.
+-- Requer PostgreSQL 10 ou superior.
+
+ALTER TABLE documents ADD COLUMN term_ids int4[];
+ALTER TABLE documents ADD COLUMN term_freqs float4[];
+
+CREATE TABLE terms (
+	term_id		serial PRIMARY KEY,
+	term		text NOT NULL UNIQUE,
+	ndoc		int NOT NULL DEFAULT 0,
+	nentry		int NOT NULL DEFAULT 0
+);
+
+CREATE OR REPLACE FUNCTION documents_terms() RETURNS TRIGGER AS $documents_terms_trigger$
+	DECLARE
+		words	text[];
+		freqs	int[];
+	BEGIN
+		IF TG_OP = 'UPDATE' AND new.tsv IS NOT DISTINCT FROM old.tsv AND new.term_ids IS NOT NULL THEN
+			RETURN new;
+		END IF;
+
+		new.term_ids := NULL;
+		new.term_freqs := NULL;
+		IF new.tsv IS NOT NULL THEN
+			SELECT array_agg(word ORDER BY word), array_agg(nentry ORDER BY word) INTO words, freqs 
+			FROM ts_stat( format('SELECT %s::tsvector', quote_literal(new.tsv)) );
+
+			-- Somente termos novos: ON CONFLICT consome um valor da sequência por linha
+			INSERT INTO terms (term) SELECT w FROM unnest(words) w 
+			WHERE NOT EXISTS (SELECT 1 FROM terms t WHERE t.term = w) ON CONFLICT (term) DO NOTHING;
+
+			SELECT array_agg(t.term_id ORDER BY t.term_id), array_agg(f.nentry::float4 ORDER BY t.term_id)
+			INTO new.term_ids, new.term_freqs
+			FROM unnest(words, freqs) f(word, nentry), LATERAL (SELECT term_id FROM terms WHERE term = f.word) t;
+		END IF;
+
+		RETURN new;
+	END;
+$documents_terms_trigger$ LANGUAGE plpgsql
+-- Busca dos termos sempre pelo índice (o plano é mantido em cache e
+-- pode ter sido gerado com a tabela terms ainda vazia)
+SET enable_seqscan = off;
+
+CREATE TRIGGER tsvector_doc_update_terms BEFORE INSERT OR UPDATE
+    ON documents FOR EACH ROW EXECUTE PROCEDURE documents_terms();
+
+CREATE OR REPLACE FUNCTION terms_counts() RETURNS TRIGGER AS $terms_counts_trigger$
+	DECLARE
+		ids		int[];
+		ndocs	int[];
+		nentries	int[];
+	BEGIN
+		IF TG_OP = 'INSERT' THEN
+			SELECT array_agg(term_id ORDER BY term_id), array_agg(ndoc ORDER BY term_id), array_agg(nentry ORDER BY term_id)
+			INTO ids, ndocs, nentries FROM (
+				SELECT f.term_id, count(*) ndoc, sum(f.freq) nentry
+				FROM new_docs, unnest(term_ids, term_freqs) f(term_id, freq) GROUP BY f.term_id ) d;
+		ELSIF TG_OP = 'DELETE' THEN
+			SELECT array_agg(term_id ORDER BY term_id), array_agg(ndoc ORDER BY term_id), array_agg(nentry ORDER BY term_id)
+			INTO ids, ndocs, nentries FROM (
+				SELECT f.term_id, -count(*) ndoc, -sum(f.freq) nentry
+				FROM old_docs, unnest(term_ids, term_freqs) f(term_id, freq) GROUP BY f.term_id ) d;
+		ELSE
+			SELECT array_agg(term_id ORDER BY term_id), array_agg(ndoc ORDER BY term_id), array_agg(nentry ORDER BY term_id)
+			INTO ids, ndocs, nentries FROM (
+				SELECT term_id, sum(ndoc) ndoc, sum(nentry) nentry FROM (
+					SELECT f.term_id, 1 ndoc, f.freq nentry FROM new_docs, unnest(term_ids, term_freqs) f(term_id, freq)
+					UNION ALL
+					SELECT f.term_id, -1, -f.freq FROM old_docs, unnest(term_ids, term_freqs) f(term_id, freq) ) u
+				GROUP BY term_id HAVING sum(ndoc) <> 0 OR sum(nentry) <> 0 ) d;
+		END IF;
+
+		IF ids IS NOT NULL THEN
+			-- Bloqueia termos em ordem (evita deadlocks entre cargas concorrentes)
+			PERFORM 1 FROM terms WHERE term_id = ANY(ids) ORDER BY term_id FOR UPDATE;
+			UPDATE terms t SET ndoc = t.ndoc + d.ndoc, nentry = t.nentry + d.nentry
+			FROM unnest(ids, ndocs, nentries) d(term_id, ndoc, nentry) WHERE t.term_id = d.term_id;
+		END IF;
+
+		RETURN NULL;
+	END;
+$terms_counts_trigger$ LANGUAGE plpgsql;
+
+CREATE TRIGGER terms_counts_insert AFTER INSERT ON documents
+	REFERENCING NEW TABLE AS new_docs FOR EACH STATEMENT EXECUTE PROCEDURE terms_counts();
+
+CREATE TRIGGER terms_counts_update AFTER UPDATE ON documents
+	REFERENCING OLD TABLE AS old_docs NEW TABLE AS new_docs FOR EACH STATEMENT EXECUTE PROCEDURE terms_counts();
+
+CREATE TRIGGER terms_counts_delete AFTER DELETE ON documents
+	REFERENCING OLD TABLE AS old_docs FOR EACH STATEMENT EXECUTE PROCEDURE terms_counts();
+
+UPDATE documents SET term_ids = NULL;
@@ -0,0 +1,14 @@
+-- Documentos sem projeção com x e y nulos (projetados pelo modo
+-- incremental independente do doc_id) para bases criadas com versões
+-- anteriores do esquema, nas quais novos documentos recebiam x = y = 0.
+-- Documentos projetados exatamente na origem são apenas projetados
+-- novamente pela próxima execução.
+
+CREATE OR REPLACE FUNCTION documents_data() RETURNS TRIGGER AS $documents_data_trigger$
+	BEGIN
+		INSERT INTO documents_data(doc_id,x,y,relevance) VALUES (new.doc_id,NULL,NULL,0.0);
+		return new;
+	END;
+$documents_data_trigger$ LANGUAGE plpgsql;
+
+UPDATE documents_data SET x = NULL, y = NULL WHERE x = 0 AND y = 0;
@@ -0,0 +1,34 @@
+-- Inserção somente dos termos novos no vocabulário (term_id cresce com
+-- o número de termos e não com o volume de documentos inseridos) para
+-- bases que já executaram 1-term-vocabulary.sql.
+
+CREATE OR REPLACE FUNCTION documents_terms() RETURNS TRIGGER AS $documents_terms_trigger$
+	DECLARE
+		words	text[];
+		freqs	int[];
+	BEGIN
+		IF TG_OP = 'UPDATE' AND new.tsv IS NOT DISTINCT FROM old.tsv AND new.term_ids IS NOT NULL THEN
+			RETURN new;
+		END IF;
+
+		new.term_ids := NULL;
+		new.term_freqs := NULL;
+		IF new.tsv IS NOT NULL THEN
+			SELECT array_agg(word ORDER BY word), array_agg(nentry ORDER BY word) INTO words, freqs 
+			FROM ts_stat( format('SELECT %s::tsvector', quote_literal(new.tsv)) );
+
+			-- Somente termos novos: ON CONFLICT consome um valor da sequência por linha
+			INSERT INTO terms (term) SELECT w FROM unnest(words) w 
+			WHERE NOT EXISTS (SELECT 1 FROM terms t WHERE t.term = w) ON CONFLICT (term) DO NOTHING;
+
+			SELECT array_agg(t.term_id ORDER BY t.term_id), array_agg(f.nentry::float4 ORDER BY t.term_id)
+			INTO new.term_ids, new.term_freqs
+			FROM unnest(words, freqs) f(word, nentry), LATERAL (SELECT term_id FROM terms WHERE term = f.word) t;
+		END IF;
+
+		RETURN new;
+	END;
+$documents_terms_trigger$ LANGUAGE plpgsql
+-- Busca dos termos sempre pelo índice (o plano é mantido em cache e
+-- pode ter sido gerado com a tabela terms ainda vazia)
+SET enable_seqscan = off;
@@ -0,0 +1,290 @@
+package ep.db.database;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+
+import ep.db.extractor.Utils;
+import ep.db.model.Author;
+import ep.db.model.Document;
+
+/**
+ * Carga em massa de documentos, autores e citações utilizando
+ * <code>COPY ... FROM STDIN</code>.
+ * <p>Os registros são copiados para tabelas temporárias (staging)
+ * e então incorporados às tabelas definitivas com inserções
+ * baseadas em conjuntos, mantendo a mesma semântica de
+ * {@link DatabaseService#addDocument(Document)}: documentos
+ * com mesmo DOI são unificados e campos já existentes
+ * não são sobrescritos.</p>
+ * @version 1.0
+ * @since 2017
+ *
+ */
+class BulkLoader {
+
+	/**
+	 * Tamanho do buffer de escrita do COPY
+	 */
+	private static final int COPY_BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * SQL para criação das tabelas temporárias
+	 */
+	private static final String CREATE_STAGING = "CREATE TEMP TABLE stage_documents ("
+			+ "seq int, title text, doi varchar(100), keywords text, abstract text, "
+			+ "publication_date int, volume varchar(100), pages varchar(100), issue varchar(100), "
+			+ "container varchar(255), container_issn varchar(100), language text, doc_id bigint"
+			+ ") ON COMMIT DROP; "
+			+ "CREATE TEMP TABLE stage_authors (seq int, ord int, aut_name varchar(500)) ON COMMIT DROP; "
+			+ "CREATE TEMP TABLE stage_citations (doc_seq int, ref_seq int) ON COMMIT DROP";
+
+	private static final String COPY_DOCUMENTS = "COPY stage_documents (seq, title, doi, keywords, abstract, "
+			+ "publication_date, volume, pages, issue, container, container_issn, language) FROM STDIN";
+
+	private static final String COPY_AUTHORS = "COPY stage_authors (seq, ord, aut_name) FROM STDIN";
+
+	private static final String COPY_CITATIONS = "COPY stage_citations (doc_seq, ref_seq) FROM STDIN";
+
+	/**
+	 * SQL para inserção dos documentos sem DOI: não há conflito possível,
+	 * os id's são reservados antes para permitir o mapeamento.
+	 */
+	private static final String MERGE_DOCS_WITHOUT_DOI = "UPDATE stage_documents "
+			+ "SET doc_id = nextval(pg_get_serial_sequence('documents', 'doc_id')) WHERE doi IS NULL; "
+			+ "INSERT INTO documents (doc_id, title, doi, keywords, abstract, publication_date, volume, "
+			+ "pages, issue, container, container_issn, language) "
+			+ "SELECT doc_id, title, doi, keywords, abstract, publication_date, volume, pages, issue, "
+			+ "container, container_issn, language::regconfig FROM stage_documents WHERE doi IS NULL ORDER BY seq";
+
+	/**
+	 * SQL para inserção/atualização dos documentos com DOI. Documentos
+	 * repetidos no lote são unificados mantendo o primeiro valor não nulo
+	 * de cada campo (mesmo resultado de inserções sucessivas com
+	 * <code>DatabaseService.INSERT_DOC</code>).
+	 */
+	private static final String MERGE_DOCS_WITH_DOI = "WITH merged AS ("
+			+ "INSERT INTO documents AS d (title, doi, keywords, abstract, publication_date, volume, pages, "
+			+ "issue, container, container_issn, language) "
+			+ "SELECT " + first("title") + ", doi, " + first("keywords") + ", " + first("abstract") + ", "
+			+ first("publication_date") + ", " + first("volume") + ", " + first("pages") + ", "
+			+ first("issue") + ", " + first("container") + ", " + first("container_issn") + ", "
+			+ first("language") + "::regconfig "
+			+ "FROM stage_documents WHERE doi IS NOT NULL GROUP BY doi ORDER BY min(seq) "
+			+ "ON CONFLICT (doi) DO UPDATE "
+			+ "SET title = coalesce(d.title, excluded.title),"
+			+ "keywords=coalesce(d.keywords, excluded.keywords), "
+			+ "abstract = coalesce(d.abstract, excluded.abstract),"
+			+ "publication_date = coalesce(d.publication_date, excluded.publication_date), "
+			+ "volume = coalesce(d.volume, excluded.volume), "
+			+ "pages = coalesce(d.pages, excluded.pages), "
+			+ "issue = coalesce(d.issue, excluded.issue), "
+			+ "container = coalesce(d.container, excluded.container), "
+			+ "container_issn = coalesce(d.container_issn, excluded.container_issn), "
+			+ "language = coalesce(d.language, excluded.language) "
+			+ "RETURNING d.doc_id, d.doi) "
+			+ "UPDATE stage_documents s SET doc_id = m.doc_id FROM merged m WHERE s.doi = m.doi";
+
+	/**
+	 * SQL para inserção de autores e ligação documento-autor
+	 */
+	private static final String MERGE_AUTHORS = "INSERT INTO authors (aut_name) "
+			+ "SELECT DISTINCT aut_name FROM stage_authors ON CONFLICT (aut_name) DO NOTHING; "
+			+ "INSERT INTO document_authors (doc_id, aut_id) "
+			+ "SELECT DISTINCT d.doc_id, a.aut_id FROM stage_authors sa "
+			+ "JOIN stage_documents d ON d.seq = sa.seq "
+			+ "JOIN authors a ON a.aut_name = sa.aut_name ON CONFLICT DO NOTHING";
+
+	/**
+	 * SQL para inserção de citações
+	 */
+	private static final String MERGE_CITATIONS = "INSERT INTO citations (doc_id, ref_id) "
+			+ "SELECT DISTINCT s.doc_id, r.doc_id FROM stage_citations c "
+			+ "JOIN stage_documents s ON s.seq = c.doc_seq "
+			+ "JOIN stage_documents r ON r.seq = c.ref_seq "
+			+ "WHERE s.doc_id <> r.doc_id ON CONFLICT DO NOTHING";
+
+	/**
+	 * SQL para recuperar mapeamento posição -> id do documento
+	 */
+	private static final String SELECT_DOC_IDS = "SELECT seq, doc_id FROM stage_documents";
+
+	/**
+	 * SQL para recuperar mapeamento autor -> id
+	 */
+	private static final String SELECT_AUTHOR_IDS = "SELECT sa.seq, sa.ord, a.aut_id FROM stage_authors sa "
+			+ "JOIN authors a ON a.aut_name = sa.aut_name";
+
+	private final Connection conn;
+
+	/**
+	 * Cria novo carregador sobre a conexão dada. A conexão deve
+	 * estar com <i>auto-commit</i> desabilitado: as tabelas temporárias
+	 * são descartadas ao final da transação.
+	 * @param conn conexão com o banco de dados.
+	 */
+	BulkLoader(Connection conn) {
+		this.conn = conn;
+	}
+
+	/**
+	 * Carrega documentos, seus autores e citações.
+	 * @param documents documentos a serem inseridos ou atualizados.
+	 * @param citing índices (em <code>documents</code>) dos documentos
+	 * que fazem as citações ou <code>null</code>.
+	 * @param cited índices (em <code>documents</code>) dos documentos
+	 * citados, correspondentes a <code>citing</code>.
+	 * @return id's dos documentos, na mesma ordem de <code>documents</code>.
+	 * @throws SQLException erro ao executar carga.
+	 * @throws IOException erro ao enviar dados ao banco de dados.
+	 */
+	long[] load(List<Document> documents, int[] citing, int[] cited) throws SQLException, IOException {
+		try (Statement stmt = conn.createStatement()){
+			stmt.execute(CREATE_STAGING);
+
+			copyDocuments(documents);
+			copyAuthors(documents);
+			if ( citing != null && citing.length > 0 )
+				copyCitations(citing, cited);
+
+			// Tabelas temporárias não são analisadas automaticamente
+			stmt.execute("ANALYZE stage_documents; ANALYZE stage_authors; ANALYZE stage_citations");
+
+			stmt.execute(MERGE_DOCS_WITHOUT_DOI);
+			stmt.execute(MERGE_DOCS_WITH_DOI);
+			stmt.execute(MERGE_AUTHORS);
+			if ( citing != null && citing.length > 0 )
+				stmt.execute(MERGE_CITATIONS);
+
+			long[] docIds = new long[documents.size()];
+			try (ResultSet rs = stmt.executeQuery(SELECT_DOC_IDS)){
+				while ( rs.next() ){
+					int seq = rs.getInt(1);
+					docIds[seq] = rs.getLong(2);
+					documents.get(seq).setDocId(docIds[seq]);
+				}
+			}
+
+			try (ResultSet rs = stmt.executeQuery(SELECT_AUTHOR_IDS)){
+				while ( rs.next() ){
+					Document doc = documents.get(rs.getInt(1));
+					doc.getAuthors().get(rs.getInt(2)).setAuthorId(rs.getLong(3));
+				}
+			}
+
+			return docIds;
+		}
+	}
+
+	private void copyDocuments(List<Document> documents) throws SQLException, IOException {
+		try (Writer w = openCopy(COPY_DOCUMENTS)){
+			int seq = 0;
+			for( Document doc : documents ){
+				w.write(Integer.toString(seq++));
+				writeField(w, doc.getTitle());
+				writeField(w, doc.getDOI());
+				writeField(w, doc.getKeywords());
+				writeField(w, doc.getAbstract());
+				writeField(w, Integer.toString(Utils.extractYear(doc.getPublicationDate())));
+				writeField(w, doc.getVolume());
+				writeField(w, doc.getPages());
+				writeField(w, doc.getIssue());
+				writeField(w, doc.getContainer());
+				writeField(w, doc.getISSN());
+				writeField(w, doc.getLanguage());
+				w.write('\n');
+			}
+		}
+	}
+
+	private void copyAuthors(List<Document> documents) throws SQLException, IOException {
+		try (Writer w = openCopy(COPY_AUTHORS)){
+			int seq = 0;
+			for( Document doc : documents ){
+				List<Author> authors = doc.getAuthors();
+				if ( authors != null ){
+					for( int ord = 0; ord < authors.size(); ord++ ){
+						String name = authors.get(ord).getName();
+						if ( name == null )
+							continue;
+						w.write(Integer.toString(seq));
+						writeField(w, Integer.toString(ord));
+						writeField(w, name);
+						w.write('\n');
+					}
+				}
+				++seq;
+			}
+		}
+	}
+
+	private void copyCitations(int[] citing, int[] cited) throws SQLException, IOException {
+		try (Writer w = openCopy(COPY_CITATIONS)){
+			for( int i = 0; i < citing.length; i++ ){
+				w.write(Integer.toString(citing[i]));
+				w.write('\t');
+				w.write(Integer.toString(cited[i]));
+				w.write('\n');
+			}
+		}
+	}
+
+	/**
+	 * Inicia um comando COPY retornando {@link Writer} para
+	 * envio dos dados em formato texto. O comando é finalizado
+	 * ao fechar o {@link Writer}.
+	 * @param sql comando COPY.
+	 * @return {@link Writer} para envio dos dados.
+	 * @throws SQLException erro ao iniciar COPY.
+	 */
+	private Writer openCopy(String sql) throws SQLException {
+		PGCopyOutputStream out = new PGCopyOutputStream(conn.unwrap(PGConnection.class), sql, COPY_BUFFER_SIZE);
+		return new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), COPY_BUFFER_SIZE);
+	}
+
+	/**
+	 * Escreve campo (precedido de tabulação) no formato
+	 * texto do COPY.
+	 * @param w destino.
+	 * @param value valor do campo ou <code>null</code>.
+	 * @throws IOException erro de escrita.
+	 */
+	static void writeField(Writer w, String value) throws IOException {
+		w.write('\t');
+		if ( value == null ){
+			w.write("\\N");
+			return;
+		}
+		for( int i = 0; i < value.length(); i++ ){
+			char c = value.charAt(i);
+			switch (c) {
+			case '\\': w.write("\\\\"); break;
+			case '\t': w.write("\\t"); break;
+			case '\n': w.write("\\n"); break;
+			case '\r': w.write("\\r"); break;
+			case '\0': break;
+			default: w.write(c);
+			}
+		}
+	}
+
+	/**
+	 * Expressão SQL com primeiro valor não nulo do campo
+	 * no lote (ordem de inserção).
+	 * @param column nome da coluna.
+	 * @return expressão SQL.
+	 */
+	private static String first(String column) {
+		return "(array_agg(" + column + " ORDER BY seq) FILTER (WHERE " + column + " IS NOT NULL))[1]";
+	}
+}
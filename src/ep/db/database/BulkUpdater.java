@@ -0,0 +1,175 @@
+package ep.db.database;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+
+/**
+ * Atualização em massa de colunas da tabela <code>documents_data</code>
+ * (x, y, relevance).
+ * <p>Os valores são copiados (<code>COPY ... FROM STDIN</code>) para uma
+ * tabela temporária e aplicados com um único
+ * <code>UPDATE documents_data ... FROM</code> a cada lote, evitando um
+ * comando (e uma busca no índice) por documento.</p>
+ * @version 1.0
+ * @since 2017
+ *
+ */
+class BulkUpdater implements AutoCloseable {
+
+	/**
+	 * Tamanho do buffer de escrita do COPY
+	 */
+	private static final int COPY_BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * SQL para criação da tabela temporária. Tabelas temporárias
+	 * não são registradas no WAL.
+	 */
+	private static final String CREATE_STAGING = "CREATE TEMP TABLE stage_data ("
+			+ "doc_id bigint, x real, y real, relevance real) ON COMMIT DROP";
+
+	/**
+	 * Conexão com banco de dados (sem <i>auto-commit</i>)
+	 */
+	private final Connection conn;
+
+	/**
+	 * Colunas atualizadas
+	 */
+	private final String[] columns;
+
+	/**
+	 * Número de registros por lote
+	 */
+	private final int batchSize;
+
+	/**
+	 * Comando COPY em andamento
+	 */
+	private Writer writer;
+
+	/**
+	 * Número de registros no lote atual
+	 */
+	private int pending;
+
+	/**
+	 * Número total de registros atualizados
+	 */
+	private int updated;
+
+	/**
+	 * Indica se a tabela temporária já foi criada
+	 */
+	private boolean created;
+
+	/**
+	 * Cria novo objeto para atualização das colunas dadas.
+	 * A conexão deve estar com <i>auto-commit</i> desabilitado: a
+	 * tabela temporária é descartada ao final da transação.
+	 * @param conn conexão com o banco de dados.
+	 * @param batchSize número de registros por lote.
+	 * @param columns colunas de <code>documents_data</code> atualizadas
+	 * (x, y e/ou relevance).
+	 */
+	BulkUpdater(Connection conn, int batchSize, String... columns) {
+		this.conn = conn;
+		this.batchSize = Math.max(1, batchSize);
+		this.columns = columns;
+	}
+
+	/**
+	 * Adiciona valores de um documento.
+	 * @param docId id do documento.
+	 * @param values valores das colunas, na mesma ordem
+	 * informada no construtor.
+	 * @throws SQLException erro ao executar atualização.
+	 * @throws IOException erro ao enviar dados ao banco de dados.
+	 */
+	void add(long docId, double... values) throws SQLException, IOException {
+		if ( writer == null )
+			writer = openCopy();
+
+		writer.write(Long.toString(docId));
+		for( double value : values ){
+			writer.write('\t');
+			writer.write(Double.toString(value));
+		}
+		writer.write('\n');
+
+		if ( ++pending == batchSize )
+			flush();
+	}
+
+	/**
+	 * Aplica registros pendentes.
+	 * @throws SQLException erro ao executar atualização.
+	 * @throws IOException erro ao enviar dados ao banco de dados.
+	 */
+	void flush() throws SQLException, IOException {
+		if ( writer == null )
+			return;
+
+		writer.close();
+		writer = null;
+
+		StringBuilder sql = new StringBuilder("UPDATE documents_data d SET ");
+		for( int i = 0; i < columns.length; i++ ){
+			if ( i > 0 )
+				sql.append(", ");
+			sql.append(columns[i]).append(" = s.").append(columns[i]);
+		}
+		sql.append(" FROM stage_data s WHERE d.doc_id = s.doc_id");
+
+		try (Statement stmt = conn.createStatement()){
+			// Tabelas temporárias não são analisadas automaticamente
+			stmt.execute("ANALYZE stage_data");
+			updated += stmt.executeUpdate(sql.toString());
+			stmt.execute("TRUNCATE stage_data");
+		}
+		pending = 0;
+	}
+
+	/**
+	 * Retorna número de registros atualizados.
+	 * @return número de documentos atualizados até o momento.
+	 */
+	int getUpdated() {
+		return updated;
+	}
+
+	/**
+	 * Aplica registros pendentes.
+	 */
+	@Override
+	public void close() throws SQLException, IOException {
+		flush();
+	}
+
+	/**
+	 * Inicia COPY para a tabela temporária (criada
+	 * na primeira chamada).
+	 * @return {@link Writer} para envio dos dados.
+	 * @throws SQLException erro ao iniciar COPY.
+	 */
+	private Writer openCopy() throws SQLException {
+		if ( !created ){
+			try (Statement stmt = conn.createStatement()){
+				stmt.execute(CREATE_STAGING);
+			}
+			created = true;
+		}
+		String sql = "COPY stage_data (doc_id, " + String.join(", ", columns) + ") FROM STDIN";
+		PGCopyOutputStream out = new PGCopyOutputStream(conn.unwrap(PGConnection.class), sql, COPY_BUFFER_SIZE);
+		return new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), COPY_BUFFER_SIZE);
+	}
+}
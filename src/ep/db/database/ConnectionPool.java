@@ -0,0 +1,370 @@
+package ep.db.database;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.sql.DataSource;
+
+import org.apache.commons.pool.BasePoolableObjectFactory;
+import org.apache.commons.pool.impl.GenericObjectPool;
+import org.apache.log4j.Logger;
+
+/**
+ * Pool limitado de conexões com o banco de dados.
+ * <p>As conexões retornadas por {@link #getConnection()} são
+ * devolvidas ao pool quando fechadas ({@link Connection#close()}),
+ * de forma que o uso é transparente para quem já utiliza
+ * <i>try-with-resources</i>. Os statements (e seus result sets)
+ * abertos pela conexão emprestada são fechados ao devolvê-la, como
+ * no fechamento da conexão física.</p>
+ * <p>Configuração (opcional):</p>
+ * <ul>
+ * <li><code>db.pool.min_idle</code>: número mínimo de conexões ociosas;</li>
+ * <li><code>db.pool.max_active</code>: número máximo de conexões;</li>
+ * <li><code>db.pool.max_wait</code>: tempo máximo de espera (ms) por
+ * uma conexão antes de falhar;</li>
+ * <li><code>db.pool.idle_timeout</code>: tempo (ms) após o qual uma
+ * conexão ociosa é removida do pool;</li>
+ * <li><code>db.pool.eviction_interval</code>: intervalo (ms) entre
+ * verificações de conexões ociosas;</li>
+ * <li><code>db.pool.validation_timeout</code>: tempo máximo (s) para
+ * validação de uma conexão ao ser emprestada.</li>
+ * </ul>
+ * @version 1.0
+ * @since 2017
+ *
+ */
+public class ConnectionPool implements ConnectionPoolMXBean {
+
+	/**
+	 * Logger
+	 */
+	private static Logger logger = Logger.getLogger(ConnectionPool.class);
+
+	/**
+	 * Contador de pools criados (nome único para JMX)
+	 */
+	private static final AtomicInteger POOL_COUNTER = new AtomicInteger();
+
+	/**
+	 * Pool de conexões físicas
+	 */
+	private final GenericObjectPool<Connection> pool;
+
+	/**
+	 * Nome registrado no servidor JMX
+	 */
+	private ObjectName objectName;
+
+	/**
+	 * Tempo máximo para validação de conexões (segundos)
+	 */
+	private final int validationTimeout;
+
+	private final AtomicLong borrowCount = new AtomicLong();
+
+	private final AtomicLong timeoutCount = new AtomicLong();
+
+	private final AtomicLong totalWaitNanos = new AtomicLong();
+
+	private final AtomicLong maxWaitNanos = new AtomicLong();
+
+	/**
+	 * Cria novo pool de conexões sobre o {@link DataSource} dado.
+	 * @param ds data source para criação das conexões físicas.
+	 * @param config configuração.
+	 */
+	public ConnectionPool(DataSource ds, Properties config) {
+		this.validationTimeout = Integer.parseInt(config.getProperty("db.pool.validation_timeout", "5"));
+
+		this.pool = new GenericObjectPool<>(new ConnectionFactory(ds));
+		pool.setMaxActive(Integer.parseInt(config.getProperty("db.pool.max_active", "10")));
+		pool.setMaxIdle(pool.getMaxActive());
+		pool.setMinIdle(Integer.parseInt(config.getProperty("db.pool.min_idle", "1")));
+		pool.setMaxWait(Long.parseLong(config.getProperty("db.pool.max_wait", "30000")));
+		pool.setWhenExhaustedAction(GenericObjectPool.WHEN_EXHAUSTED_BLOCK);
+		pool.setTestOnBorrow(true);
+		pool.setMinEvictableIdleTimeMillis(Long.parseLong(config.getProperty("db.pool.idle_timeout", "600000")));
+		pool.setTimeBetweenEvictionRunsMillis(Long.parseLong(config.getProperty("db.pool.eviction_interval", "60000")));
+		pool.setLifo(true);
+
+		registerMBean(config.getProperty("db.database", "") + "@" + config.getProperty("db.host", ""));
+	}
+
+	/**
+	 * Empresta uma conexão do pool, aguardando no máximo
+	 * <code>db.pool.max_wait</code> ms caso todas estejam em uso.
+	 * @return conexão a ser devolvida ao pool com {@link Connection#close()}.
+	 * @throws SQLException caso não seja possível obter uma conexão
+	 * dentro do tempo máximo de espera.
+	 */
+	public Connection getConnection() throws SQLException {
+		long start = System.nanoTime();
+		Connection conn;
+		try {
+			conn = pool.borrowObject();
+		} catch (NoSuchElementException e) {
+			timeoutCount.incrementAndGet();
+			throw new SQLTransientConnectionException("Timeout waiting for a pooled connection", e);
+		} catch (SQLException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new SQLException("Can't borrow connection from pool", e);
+		} finally {
+			recordWait(System.nanoTime() - start);
+		}
+
+		return (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+				new Class<?>[]{ Connection.class }, new PooledConnection(conn));
+	}
+
+	/**
+	 * Encerra o pool fechando todas as conexões ociosas.
+	 */
+	public void close() {
+		try {
+			pool.close();
+		} catch (Exception e) {
+			logger.error("Error closing connection pool", e);
+		}
+		unregisterMBean();
+	}
+
+	@Override
+	public int getNumActive() {
+		return pool.getNumActive();
+	}
+
+	@Override
+	public int getNumIdle() {
+		return pool.getNumIdle();
+	}
+
+	@Override
+	public int getMaxActive() {
+		return pool.getMaxActive();
+	}
+
+	@Override
+	public long getBorrowCount() {
+		return borrowCount.get();
+	}
+
+	@Override
+	public long getTimeoutCount() {
+		return timeoutCount.get();
+	}
+
+	@Override
+	public double getAverageWaitMillis() {
+		long count = borrowCount.get();
+		return count == 0 ? 0 : totalWaitNanos.get() / (count * 1e6);
+	}
+
+	@Override
+	public double getMaxWaitMillis() {
+		return maxWaitNanos.get() / 1e6;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("active=%d, idle=%d, borrowed=%d, timeouts=%d, avgWait=%.3fms, maxWait=%.3fms",
+				getNumActive(), getNumIdle(), getBorrowCount(), getTimeoutCount(),
+				getAverageWaitMillis(), getMaxWaitMillis());
+	}
+
+	/**
+	 * Contabiliza tempo de espera por uma conexão.
+	 * @param nanos tempo de espera em nanosegundos.
+	 */
+	private void recordWait(long nanos) {
+		borrowCount.incrementAndGet();
+		totalWaitNanos.addAndGet(nanos);
+		long max;
+		while ( nanos > (max = maxWaitNanos.get()) && !maxWaitNanos.compareAndSet(max, nanos) );
+	}
+
+	/**
+	 * Registra métricas do pool no servidor JMX da plataforma.
+	 * @param name nome do banco de dados.
+	 */
+	private void registerMBean(String name) {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			objectName = new ObjectName("ep.db:type=ConnectionPool,name="
+					+ ObjectName.quote(name + "#" + POOL_COUNTER.incrementAndGet()));
+			server.registerMBean(this, objectName);
+		} catch (Exception e) {
+			logger.warn("Can't register connection pool metrics", e);
+			objectName = null;
+		}
+	}
+
+	/**
+	 * Remove registro do servidor JMX.
+	 */
+	private void unregisterMBean() {
+		if ( objectName == null )
+			return;
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+		} catch (Exception e) {
+			logger.warn("Can't unregister connection pool metrics", e);
+		}
+		objectName = null;
+	}
+
+	/**
+	 * Fábrica de conexões físicas para o pool.
+	 */
+	private class ConnectionFactory extends BasePoolableObjectFactory<Connection> {
+
+		private final DataSource ds;
+
+		ConnectionFactory(DataSource ds) {
+			this.ds = ds;
+		}
+
+		@Override
+		public Connection makeObject() throws Exception {
+			return ds.getConnection();
+		}
+
+		@Override
+		public void destroyObject(Connection conn) throws Exception {
+			conn.close();
+		}
+
+		@Override
+		public boolean validateObject(Connection conn) {
+			try {
+				return conn.isValid(validationTimeout);
+			} catch (SQLException e) {
+				return false;
+			}
+		}
+
+		@Override
+		public void passivateObject(Connection conn) throws Exception {
+			// Descarta transação pendente antes de devolver ao pool
+			if ( !conn.getAutoCommit() ){
+				conn.rollback();
+				conn.setAutoCommit(true);
+			}
+			conn.clearWarnings();
+		}
+	}
+
+	/**
+	 * Conexão emprestada: {@link Connection#close()} fecha os statements
+	 * criados pela conexão e devolve a conexão física ao pool.
+	 */
+	private class PooledConnection implements InvocationHandler {
+
+		/**
+		 * Número de statements a partir do qual os já fechados são
+		 * descartados da lista
+		 */
+		private static final int PRUNE_THRESHOLD = 64;
+
+		private Connection conn;
+
+		/**
+		 * Statements criados pela conexão emprestada
+		 */
+		private final List<Statement> statements = new ArrayList<>();
+
+		private int pruneThreshold = PRUNE_THRESHOLD;
+
+		PooledConnection(Connection conn) {
+			this.conn = conn;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+			case "close":
+				if ( conn != null ){
+					Connection c = conn;
+					conn = null;
+					closeStatements();
+					try {
+						pool.returnObject(c);
+					} catch (Exception e) {
+						logger.warn("Error returning connection to pool", e);
+					}
+				}
+				return null;
+			case "isClosed":
+				return conn == null || conn.isClosed();
+			case "equals":
+				return proxy == args[0];
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "toString":
+				return "Pooled" + conn;
+			default:
+				if ( conn == null )
+					throw new SQLException("Connection is closed");
+				Object result;
+				try {
+					result = method.invoke(conn, args);
+				} catch (InvocationTargetException e) {
+					throw e.getTargetException();
+				}
+				if ( result instanceof Statement )
+					track((Statement) result);
+				return result;
+			}
+		}
+
+		/**
+		 * Registra statement criado pela conexão, descartando os já
+		 * fechados quando a lista cresce.
+		 * @param stmt statement criado.
+		 */
+		private void track(Statement stmt) {
+			if ( statements.size() >= pruneThreshold ){
+				statements.removeIf(s -> {
+					try {
+						return s.isClosed();
+					} catch (SQLException e) {
+						return true;
+					}
+				});
+				pruneThreshold = Math.max(PRUNE_THRESHOLD, 2 * statements.size());
+			}
+			statements.add(stmt);
+		}
+
+		/**
+		 * Fecha statements (e seus result sets) ainda abertos antes
+		 * de devolver a conexão física ao pool.
+		 */
+		private void closeStatements() {
+			for( Statement stmt : statements ){
+				try {
+					stmt.close();
+				} catch (SQLException e) {
+					logger.warn("Error closing statement of pooled connection", e);
+				}
+			}
+			statements.clear();
+		}
+	}
+}
@@ -0,0 +1,54 @@
+package ep.db.database;
+
+/**
+ * Métricas exportadas (JMX) do pool de conexões
+ * com o banco de dados.
+ * @version 1.0
+ * @since 2017
+ *
+ */
+public interface ConnectionPoolMXBean {
+
+	/**
+	 * Retorna número de conexões em uso.
+	 * @return número de conexões emprestadas.
+	 */
+	public int getNumActive();
+
+	/**
+	 * Retorna número de conexões ociosas no pool.
+	 * @return número de conexões ociosas.
+	 */
+	public int getNumIdle();
+
+	/**
+	 * Retorna tamanho máximo do pool.
+	 * @return número máximo de conexões.
+	 */
+	public int getMaxActive();
+
+	/**
+	 * Retorna número total de conexões emprestadas.
+	 * @return número de empréstimos realizados.
+	 */
+	public long getBorrowCount();
+
+	/**
+	 * Retorna número de requisições que excederam
+	 * o tempo máximo de espera.
+	 * @return número de timeouts.
+	 */
+	public long getTimeoutCount();
+
+	/**
+	 * Retorna tempo médio de espera por uma conexão.
+	 * @return tempo médio de espera em milisegundos.
+	 */
+	public double getAverageWaitMillis();
+
+	/**
+	 * Retorna maior tempo de espera por uma conexão.
+	 * @return tempo máximo de espera em milisegundos.
+	 */
+	public double getMaxWaitMillis();
+}
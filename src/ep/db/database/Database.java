@@ -9,7 +9,9 @@ import javax.sql.DataSource;
 import org.postgresql.ds.PGSimpleDataSource;
 
 /**
- * Classe para conexão com o banco de dados
+ * Classe para conexão com o banco de dados.
+ * As conexões são obtidas de um {@link ConnectionPool}
+ * limitado.
  * @version 1.0
  * @since 2017
  *
@@ -19,15 +21,18 @@ public class Database {
 	private final Properties config;
 	
 	private final DataSource ds;
+	
+	private final ConnectionPool pool;
 
 	/**
 	 * Configura e inicializa um novo {@link DataSource}
-	 * para conexão com o banco de dados
+	 * e pool de conexões com o banco de dados
 	 * @param configuration configuração
 	 */
 	public Database(Properties configuration) {
 		this.config = configuration;
 		this.ds = initializeDataSource();
+		this.pool = new ConnectionPool(ds, config);
 	}
 
 	/**
@@ -45,13 +50,29 @@ public class Database {
 	}
 
 	/**
-	 * Retorna uma nova conexão com o banco de dados
+	 * Retorna uma conexão do pool de conexões com o banco de dados.
+	 * A conexão deve ser fechada após o uso para ser devolvida ao pool.
 	 * @return object da classe {@link Connection}
 	 * @throws SQLException caso não seja possível obter uma
 	 * conexão.
 	 */
 	public Connection getConnection() throws SQLException {
-		return ds.getConnection();
+		return pool.getConnection();
+	}
+
+	/**
+	 * Retorna pool de conexões (métricas).
+	 * @return pool de conexões.
+	 */
+	public ConnectionPool getPool() {
+		return pool;
+	}
+
+	/**
+	 * Encerra pool de conexões.
+	 */
+	public void close() {
+		pool.close();
 	}
 
 }
@@ -1,21 +1,28 @@
 package ep.db.database;
 
+import java.sql.Array;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
-import java.util.TreeMap;
-
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
-
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import cern.colt.list.tdouble.DoubleArrayList;
+import cern.colt.list.tint.IntArrayList;
+import cern.colt.list.tlong.LongArrayList;
 import cern.colt.matrix.tdouble.DoubleMatrix2D;
 import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix2D;
 import cern.colt.matrix.tdouble.impl.SparseDoubleMatrix2D;
@@ -23,10 +30,17 @@ import edu.uci.ics.jung.algorithms.scoring.PageRank;
 import edu.uci.ics.jung.graph.DirectedGraph;
 import edu.uci.ics.jung.graph.DirectedSparseGraph;
 import ep.db.extractor.Utils;
+import ep.db.matrix.SparseMatrixBuilder;
 import ep.db.model.Author;
 import ep.db.model.Document;
+import ep.db.model.ProjectionRun;
+import ep.db.pagerank.CitationGraph;
+import ep.db.tfidf.HashingVectorizer;
 import ep.db.tfidf.LogaritmicTFIDF;
+import ep.db.tfidf.Logarithms;
 import ep.db.tfidf.TFIDF;
+import ep.db.tfidf.Vocabulary;
+import ep.db.tfidf.VocabularySelector;
 
 /**
  * Provedor de serviços com o banco de dados.
@@ -63,12 +77,22 @@ public class DatabaseService {
 			+ "container_issn = coalesce(d.container_issn, excluded.container_issn), "
 			+ "language = coalesce(d.language, excluded.language) ";
 
+	/**
+	 * Colunas retornadas pela inserção de documentos (DOI -> id)
+	 */
+	private static final String[] DOC_KEYS = { "doc_id", "doi" };
+
 	/**
 	 * SQL para inserção de novo autor
 	 */
 	private static final String INSERT_AUTHOR = "INSERT INTO authors as a (aut_name) "
 			+ "VALUES (?) ON CONFLICT (aut_name) DO UPDATE "
-			+ "SET aut_name = coalesce(a.aut_name,excluded.aut_name); ";
+			+ "SET aut_name = coalesce(a.aut_name,excluded.aut_name)";
+
+	/**
+	 * Colunas retornadas pela inserção de autores (nome -> id)
+	 */
+	private static final String[] AUTHOR_KEYS = { "aut_id", "aut_name" };
 
 	/**
 	 * SQL para inserção de relação entre documento-autor
@@ -88,14 +112,116 @@ public class DatabaseService {
 	private static final String DELETE_DOC = "DELETE FROM documents WHERE doc_id = ?";
 
 	/**
-	 * SQL para atualização das coordenadas X,Y resultantes de projeção multidimensional
+	 * SQL para recuperar marca (maior id) e número de citações
+	 */
+	private static final String CITATIONS_STATE = "SELECT coalesce(max(id), 0), count(*) FROM citations";
+
+	/**
+	 * SQL para recuperar marca da última execução do PageRank
+	 */
+	private static final String LAST_PAGERANK_RUN = "SELECT last_citation_id, num_citations FROM pagerank_runs "
+			+ "ORDER BY run_id DESC LIMIT 1";
+
+	/**
+	 * SQL para verificar se uma tabela existe
+	 */
+	private static final String TABLE_EXISTS = "SELECT 1 FROM information_schema.tables "
+			+ "WHERE table_schema = current_schema() AND table_name = ?";
+
+	/**
+	 * SQL para registro de execução do PageRank
+	 */
+	private static final String INSERT_PAGERANK_RUN = "INSERT INTO pagerank_runs(last_citation_id, num_citations, "
+			+ "num_documents, iterations, delta, updated) VALUES (?, ?, ?, ?, ?, ?)";
+
+	/**
+	 * SQL para registro de execução da projeção multidimensional
+	 */
+	private static final String INSERT_PROJECTION_RUN = "INSERT INTO projection_runs(num_documents, num_terms, "
+			+ "min_df, max_df, top_k, stopwords, term_ids, term_ndocs, hashing_bits, last_doc_id, bounds, seed, "
+			+ "vocabulary_hash, aligned_to, updated, phases, phase_ms) "
+			+ "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+	/**
+	 * SQL para registro dos pontos de controle de uma execução
+	 * da projeção multidimensional
+	 */
+	private static final String INSERT_CONTROL_POINT = "INSERT INTO projection_control_points(run_id, position, "
+			+ "doc_id, x, y, columns, vals) VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+	/**
+	 * SQL para recuperar a última execução da projeção multidimensional
+	 * com pontos de controle registrados
+	 */
+	private static final String LAST_PROJECTION_RUN = "SELECT r.run_id, r.num_documents, r.num_terms, r.min_df, "
+			+ "r.max_df, r.top_k, r.stopwords, r.term_ids, r.term_ndocs, r.hashing_bits, r.last_doc_id, r.bounds, "
+			+ "r.seed, r.aligned_to "
+			+ "FROM projection_runs r WHERE r.last_doc_id IS NOT NULL AND EXISTS (SELECT 1 FROM "
+			+ "projection_control_points c WHERE c.run_id = r.run_id) ORDER BY r.run_id DESC LIMIT 1";
+
+	/**
+	 * SQL para recuperar os pontos de controle de uma execução
+	 */
+	private static final String CONTROL_POINTS = "SELECT doc_id, x, y, columns, vals FROM projection_control_points "
+			+ "WHERE run_id = ? ORDER BY position";
+
+	/**
+	 * SQL para recuperar termos do vocabulário de uma execução
 	 */
-	private static final String UPDATE_XY = "UPDATE documents_data SET x = ?, y = ? WHERE doc_id = ?";
+	private static final String TERMS_BY_ID = "SELECT term_id, term FROM terms WHERE term_id = ANY(?)";
 
 	/**
-	 * SQL para atualização da relevancia de um documento
+	 * SQL para atualização do maior doc_id projetado de uma execução
 	 */
-	private static final String UPDATE_RELEVANCE = "UPDATE documents_data SET relevance = ? WHERE doc_id = ?";
+	private static final String UPDATE_PROJECTION_RUN = "UPDATE projection_runs SET last_doc_id = ? WHERE run_id = ?";
+
+	/**
+	 * SQL para recuperar documentos inseridos após uma execução da
+	 * projeção ou sem projeção
+	 */
+	private static final String DOCUMENTS_TO_PROJECT = "SELECT d.doc_id FROM documents d LEFT JOIN documents_data dd "
+			+ "ON dd.doc_id = d.doc_id WHERE d.doc_id > ? OR dd.x IS NULL OR dd.y IS NULL ORDER BY d.doc_id";
+
+	/**
+	 * SQL para leitura das frequências dos termos de todos os
+	 * documentos (em lotes)
+	 */
+	private static final String DOCUMENT_FREQUENCIES = "SELECT doc_id, term_ids, term_freqs FROM documents "
+			+ "ORDER BY doc_id";
+
+	/**
+	 * SQL para leitura das frequências dos termos dos documentos
+	 * inseridos após uma execução da projeção ou sem projeção (em lotes)
+	 */
+	private static final String NEW_DOCUMENT_FREQUENCIES = "SELECT d.doc_id, d.term_ids, d.term_freqs "
+			+ "FROM documents d LEFT JOIN documents_data dd ON dd.doc_id = d.doc_id "
+			+ "WHERE d.doc_id > ? OR dd.x IS NULL OR dd.y IS NULL ORDER BY d.doc_id";
+
+	/**
+	 * SQL para recuperar projeção de documentos
+	 */
+	private static final String XY_PROJECTIONS_BY_ID = "SELECT doc_id, x, y FROM documents_data "
+			+ "WHERE doc_id = ANY(?) AND x IS NOT NULL AND y IS NOT NULL";
+
+	/**
+	 * SQL para leitura da projeção atual de um intervalo de documentos
+	 * (em lotes)
+	 */
+	private static final String XY_PROJECTIONS_RANGE = "SELECT doc_id, x, y FROM documents_data "
+			+ "WHERE doc_id BETWEEN ? AND ? ORDER BY doc_id";
+
+	/**
+	 * SQL para recuperar relevância de documentos
+	 */
+	private static final String RELEVANCES_BY_ID = "SELECT doc_id, relevance FROM documents_data "
+			+ "WHERE doc_id = ANY(?) AND relevance > 0";
+
+	/**
+	 * SQL para divisão dos documentos em intervalos de doc_id
+	 * (menor doc_id de cada intervalo)
+	 */
+	private static final String SHARD_BOUNDS = "SELECT min(doc_id) FROM (SELECT doc_id, ntile(?) "
+			+ "OVER (ORDER BY doc_id) shard FROM documents) s GROUP BY shard ORDER BY 1";
 
 	/**
 	 * Data source
@@ -107,6 +233,51 @@ public class DatabaseService {
 	 */
 	private final int batchSize;
 
+	/**
+	 * Tamanho do lote (para atualizações em massa
+	 * de documents_data)
+	 */
+	private final int updateBatchSize;
+
+	/**
+	 * Número de linhas recuperadas por vez em consultas
+	 * com cursor no servidor
+	 */
+	private final int fetchSize;
+
+	/**
+	 * Critérios de seleção do vocabulário
+	 */
+	private final VocabularySelector vocabularySelector;
+
+	/**
+	 * Número de bits do vetorizador por <i>feature hashing</i>
+	 * (0 = dicionário de termos)
+	 */
+	private final int hashingBits;
+
+	/**
+	 * Número de intervalos de doc_id lidos em paralelo na
+	 * construção da matriz de frequência
+	 */
+	private final int numberOfShards;
+
+	/**
+	 * Número de threads para leitura dos intervalos
+	 * (0 = número de processadores)
+	 */
+	private final int shardThreads;
+
+	/**
+	 * Cache DOI -> id do documento
+	 */
+	private final IdCache docIdCache;
+
+	/**
+	 * Cache nome do autor -> id do autor
+	 */
+	private final IdCache authorIdCache;
+
 	/**
 	 * Cria um novo serviço para manipulação do banco de dados
 	 * @param config configuração
@@ -114,6 +285,34 @@ public class DatabaseService {
 	public DatabaseService(Properties config) {
 		this.db = new Database(config);
 		this.batchSize = Integer.parseInt(config.getProperty("db.batch_size", "100"));
+		this.fetchSize = Integer.parseInt(config.getProperty("db.fetch_size", "10000"));
+		this.updateBatchSize = Integer.parseInt(config.getProperty("db.update_batch_size", "100000"));
+		int cacheSize = Integer.parseInt(config.getProperty("db.cache_size", "10000"));
+		this.vocabularySelector = new VocabularySelector(config);
+		if ( "hashing".equalsIgnoreCase(config.getProperty("tfidf.vectorizer", "dictionary")) )
+			this.hashingBits = Integer.parseInt(config.getProperty("tfidf.hashing.bits", "18"));
+		else
+			this.hashingBits = 0;
+		this.numberOfShards = Math.max(1, Integer.parseInt(config.getProperty("tfidf.shards", "1")));
+		this.shardThreads = Integer.parseInt(config.getProperty("tfidf.threads", "0"));
+		this.docIdCache = new IdCache(cacheSize);
+		this.authorIdCache = new IdCache(cacheSize);
+	}
+
+	/**
+	 * Retorna métricas do pool de conexões utilizado
+	 * por este serviço.
+	 * @return métricas do pool (conexões ativas, ociosas, tempo de espera).
+	 */
+	public ConnectionPoolMXBean getPoolStatistics() {
+		return db.getPool();
+	}
+
+	/**
+	 * Encerra o serviço, fechando as conexões do pool.
+	 */
+	public void close() {
+		db.close();
 	}
 
 	/**
@@ -189,196 +388,378 @@ public class DatabaseService {
 
 	/**
 	 * Retorna matrix de frequência de todos os termos presentes
-	 * nos documentos especificados.
+	 * nos documentos especificados, com o vetorizador da configuração
+	 * (<code>tfidf.vectorizer</code>): dicionário de termos ou
+	 * <i>feature hashing</i>.
 	 * @param docIds id's dos documentos considerados para obtenção dos termos ou 
 	 * <code>null</code> para recuperar termos de todos os documentos. 
-	 * @return matrix N x M onde N é o número de documentos e M o número de
-	 * termos.
+	 * @return matrix esparsa (CSR) N x M onde N é o número de documentos e M o número de
+	 * termos (ou de <i>buckets</i>).
 	 * @throws Exception erro ao executar consulta.
 	 */
 	public DoubleMatrix2D buildFrequencyMatrix(long[] docIds, TFIDF tfidfCalc) throws Exception {
-		
-		// Retorna numero de documentos e ocorrencia total dos termos
+		if ( hashingBits > 0 )
+			return buildHashedFrequencyMatrix(docIds, hashingBits, tfidfCalc);
+		return buildFrequencyMatrix(docIds, getVocabulary(docIds), tfidfCalc);
+	}
+
+	/**
+	 * Retorna número de bits do vetorizador por <i>feature hashing</i>
+	 * (<code>tfidf.hashing.bits</code>).
+	 * @return número de bits ou 0 caso o dicionário de termos seja
+	 * utilizado.
+	 */
+	public int getHashingBits() {
+		return hashingBits;
+	}
+
+	/**
+	 * Retorna matrix de frequência dos documentos especificados com
+	 * <i>feature hashing</i> ({@link HashingVectorizer}): os termos da
+	 * coluna <code>freqs</code> são mapeados para 2<sup>bits</sup> colunas,
+	 * sem consulta ao vocabulário, em uma única passada pelos documentos
+	 * (lidos em paralelo por intervalos de doc_id, como na matriz com vocabulário).
+	 * @param docIds id's dos documentos ou <code>null</code> para 
+	 * todos os documentos. 
+	 * @param bits número de bits (colunas = 2<sup>bits</sup>).
+	 * @param tfidfCalc cálculo do TF-IDF (TF por termo, IDF por <i>bucket</i>).
+	 * @return matrix esparsa (CSR) N x 2<sup>bits</sup> onde N é o número de documentos.
+	 * @throws Exception erro ao executar consulta.
+	 */
+	public DoubleMatrix2D buildHashedFrequencyMatrix(long[] docIds, int bits, TFIDF tfidfCalc) 
+			throws Exception {
 		int numberOfDocuments;
 		if ( docIds == null )
 			numberOfDocuments = getNumberOfDocuments();
 		else
 			numberOfDocuments = docIds.length;
 
-		// Constroi consulta caso docIds != null
-		StringBuilder sql = new StringBuilder();
-		if ( docIds != null ){
-			sql.append(" WHERE doc_id IN (");
-			sql.append(docIds[0]);
-			for(int i = 1; i < docIds.length; i++){
-				sql.append(",");
-				sql.append(docIds[i]);
+		HashingVectorizer vectorizer = readHashedRows(docIds, bits, tfidfCalc, numberOfDocuments, 
+				new LongArrayList());
+		return vectorizer.build(numberOfDocuments);
+	}
+
+	/**
+	 * Retorna matrix de frequência de todos os documentos com
+	 * <i>feature hashing</i> (ver {@link #buildHashedFrequencyMatrix(long[], int, TFIDF)})
+	 * junto com os id's dos documentos lidos na mesma consulta.
+	 * @param bits número de bits (colunas = 2<sup>bits</sup>).
+	 * @param tfidfCalc cálculo do TF-IDF (TF por termo, IDF por <i>bucket</i>).
+	 * @return matrix esparsa (CSR) N x 2<sup>bits</sup> e id's dos N documentos.
+	 * @throws Exception erro ao executar consulta.
+	 */
+	public DocumentMatrix readHashedFrequencyMatrix(int bits, TFIDF tfidfCalc) throws Exception {
+		LongArrayList ids = new LongArrayList();
+		HashingVectorizer vectorizer = readHashedRows(null, bits, tfidfCalc, getNumberOfDocuments(), ids);
+		ids.trimToSize();
+		return new DocumentMatrix(ids.elements(), vectorizer.build(vectorizer.rows()));
+	}
+
+	private HashingVectorizer readHashedRows(long[] docIds, int bits, TFIDF tfidfCalc, 
+			int numberOfDocuments, LongArrayList ids) throws Exception {
+		final int expectedRows = numberOfDocuments / numberOfShards;
+		List<ShardRows<HashingVectorizer>> shards = readShards(docIds, (conn, where) -> {
+			String sql = "SELECT doc_id, freqs FROM documents" + where + " ORDER BY doc_id";
+			ShardRows<HashingVectorizer> shard = new ShardRows<>(
+					new HashingVectorizer(bits, tfidfCalc, expectedRows), expectedRows);
+			try ( Statement stmt = conn.createStatement();){
+				stmt.setFetchSize(fetchSize);
+				try ( ResultSet rs = stmt.executeQuery(sql);){
+					while( rs.next() ){
+						shard.docIds.add(rs.getLong(1));
+						shard.rows.addDocument(rs.getString(2));
+					}
+				}
 			}
-			sql.append(")");
+			return shard;
+		});
+
+		// Concatena linhas na ordem dos intervalos (ordem de doc_id)
+		HashingVectorizer vectorizer = shards.get(0).rows;
+		ids.addAllOfFromTo(shards.get(0).docIds, 0, shards.get(0).docIds.size() - 1);
+		for(int i = 1; i < shards.size(); i++){
+			vectorizer.append(shards.get(i).rows);
+			ids.addAllOfFromTo(shards.get(i).docIds, 0, shards.get(i).docIds.size() - 1);
 		}
+		return vectorizer;
+	}
 
-		String where = sql.toString();
-		
-		// Recupera frequencia indiviual de cada termo na base de dados (todos os documentos)
-		final Map<String, Integer> termsCount = getTermsCounts(where);
+	/**
+	 * Retorna matrix de frequência dos termos do vocabulário dado
+	 * nos documentos especificados.
+	 * <p>Os documentos são lidos em paralelo, divididos em <code>tfidf.shards</code>
+	 * intervalos de doc_id; as linhas seguem a ordem de doc_id (mesma ordem
+	 * de {@link #updateXYProjections(DoubleMatrix2D)}).</p>
+	 * @param docIds id's dos documentos ou <code>null</code> para 
+	 * todos os documentos. 
+	 * @param vocabulary vocabulário (colunas da matriz).
+	 * @param tfidfCalc cálculo do TF-IDF.
+	 * @return matrix esparsa (CSR) N x M onde N é o número de documentos e M o número de
+	 * termos do vocabulário.
+	 * @throws Exception erro ao executar consulta.
+	 * @see #getVocabulary(long[])
+	 */
+	public DoubleMatrix2D buildFrequencyMatrix(long[] docIds, Vocabulary vocabulary, TFIDF tfidfCalc) 
+			throws Exception {
 
-		// Mapeamento termo -> coluna na matriz (bag of words)
-		final Map<String, Integer> termsToColumnMap = new HashMap<>();
-		int c = 0;
-		for(String key : termsCount.keySet()){
-			termsToColumnMap.put(key, c);
-			++c;
-		}
+		// Retorna numero de documentos
+		int numberOfDocuments;
+		if ( docIds == null )
+			numberOfDocuments = getNumberOfDocuments();
+		else
+			numberOfDocuments = docIds.length;
+
+		SparseMatrixBuilder matrix = readRows(docIds, vocabulary, tfidfCalc, numberOfDocuments, 
+				new LongArrayList());
+		return matrix.build(Math.max(numberOfDocuments, matrix.rows()));
+	}
 
-		DoubleMatrix2D matrix = new DenseDoubleMatrix2D(numberOfDocuments, termsCount.size());
+	/**
+	 * Retorna matrix de frequência dos termos do vocabulário dado em
+	 * todos os documentos (ver {@link #buildFrequencyMatrix(long[], Vocabulary, TFIDF)})
+	 * junto com os id's dos documentos lidos na mesma consulta: a linha
+	 * <code>i</code> corresponde ao documento <code>docIds[i]</code>, mesmo
+	 * que documentos sejam inseridos ou removidos durante a leitura.
+	 * @param vocabulary vocabulário (colunas da matriz).
+	 * @param tfidfCalc cálculo do TF-IDF.
+	 * @return matrix esparsa (CSR) N x M e id's dos N documentos.
+	 * @throws Exception erro ao executar consulta.
+	 */
+	public DocumentMatrix readFrequencyMatrix(Vocabulary vocabulary, TFIDF tfidfCalc) throws Exception {
+		LongArrayList ids = new LongArrayList();
+		SparseMatrixBuilder matrix = readRows(null, vocabulary, tfidfCalc, getNumberOfDocuments(), ids);
+		ids.trimToSize();
+		return new DocumentMatrix(ids.elements(), matrix.build());
+	}
 
-		tfidfCalc.setTermsCount(termsCount);
+	private SparseMatrixBuilder readRows(long[] docIds, Vocabulary vocabulary, TFIDF tfidfCalc, 
+			int numberOfDocuments, LongArrayList ids) throws Exception {
+		// IDF pré-calculado por coluna (documentos considerados no vocabulário)
+		tfidfCalc.setDocumentFrequencies(vocabulary.getNumberOfDocuments(), vocabulary.getDocumentFrequencies());
 		
 		// Popula matriz com frequencia dos termos em cada documento
-		buildFrequencyMatrix(matrix, termsCount, termsToColumnMap, where, true, tfidfCalc );
-
+		final int[] columns = vocabulary.getColumnIndex();
+		final int expectedRows = numberOfDocuments / numberOfShards;
+		List<ShardRows<SparseMatrixBuilder>> shards = readShards(docIds, (conn, where) -> 
+			buildFrequencyMatrix(conn, where, columns, vocabulary.size(), expectedRows, tfidfCalc));
+
+		// Concatena linhas na ordem dos intervalos (ordem de doc_id)
+		SparseMatrixBuilder matrix = shards.get(0).rows;
+		ids.addAllOfFromTo(shards.get(0).docIds, 0, shards.get(0).docIds.size() - 1);
+		for(int i = 1; i < shards.size(); i++){
+			matrix.append(shards.get(i).rows);
+			ids.addAllOfFromTo(shards.get(i).docIds, 0, shards.get(i).docIds.size() - 1);
+		}
 		return matrix;
 	}
 
 	/**
-	 * Insere novo documento ao banco de dados ou atualiza campos
-	 * caso já exista na base documento com mesmo DOI.
-	 * @param doc documento a ser inserido.
-	 * @return id do novo documento.
-	 * @throws Exception erro ao executar inserção.
+	 * Linhas lidas de um intervalo de documentos e id's dos
+	 * documentos correspondentes.
 	 */
-	public long addDocument(Document doc) throws Exception {
-		long docId = -1;
-		try ( Connection conn = db.getConnection();){
-			PreparedStatement stmt = conn.prepareStatement(INSERT_DOC, Statement.RETURN_GENERATED_KEYS);
-			stmt.setString(1, doc.getTitle());
-			stmt.setString(2, doc.getDOI());
-			stmt.setString(3, doc.getKeywords());
-			stmt.setString(4, doc.getAbstract());
-			stmt.setInt(5, Utils.extractYear(doc.getPublicationDate()));
-			stmt.setString(6, doc.getVolume());
-			stmt.setString(7, doc.getPages());
-			stmt.setString(8, doc.getIssue());
-			stmt.setString(9, doc.getContainer());
-			stmt.setString(10, doc.getISSN());
-			stmt.setString(11, doc.getLanguage());
-			stmt.executeUpdate();
-			ResultSet rs = stmt.getGeneratedKeys();
-			if (rs.next()){
-				docId = rs.getLong(1);
-				doc.setDocId(docId);
-			}
-		}catch( Exception e){
-			throw e;
-		}
+	private static final class ShardRows<T> {
+
+		final T rows;
+
+		final LongArrayList docIds;
 
-		// Em caso de succeso, insere autores na
-		// tabela authors e também atribui ao documento
-		// seus autores na tabela document_authors
-		if ( docId > 0 ){
-			addAuthors(Arrays.asList(doc));
-			addDocumetAuthors(Arrays.asList(doc));
+		ShardRows(T rows, int expectedRows) {
+			this.rows = rows;
+			this.docIds = new LongArrayList(Math.max(16, expectedRows));
 		}
+	}
 
-		return docId;
+	/**
+	 * Leitura de um intervalo de documentos.
+	 */
+	@FunctionalInterface
+	private interface ShardReader<T> {
+
+		/**
+		 * Lê documentos do intervalo.
+		 * @param conn conexão (transação) exclusiva do intervalo.
+		 * @param where clausula WHERE em SQL que seleciona o intervalo.
+		 * @return resultado parcial.
+		 * @throws Exception erro ao executar consulta.
+		 */
+		T read(Connection conn, String where) throws Exception;
 	}
 
 	/**
-	 * Insere todos os documentos da lista dada no bando de dados, 
-	 * atualizando campos caso já exista algum documento com mesmo DOI.
-	 * <p>Para inserção de multiplos documentos esse método é mais eficiente do que
-	 * multiplas chamadas do método {@link #addDocument(Document)} uma vez que realiza
-	 * inserção em batch.</p>
-	 * @param documents documentos a serem inseridos.
-	 * @return vetor com id dos documentos inseridos (excluidos os id's dos documentos
-	 * atualizados).
-	 * @throws Exception
+	 * Lê os documentos especificados divididos em <code>tfidf.shards</code>
+	 * intervalos consecutivos de doc_id. Cada intervalo é lido em paralelo
+	 * (em um {@link ForkJoinPool} com <code>tfidf.threads</code> threads)
+	 * com sua própria conexão do pool e cursor no servidor.
+	 * @param docIds id's dos documentos ou <code>null</code> para 
+	 * todos os documentos. 
+	 * @param reader leitura de cada intervalo.
+	 * @return resultados parciais na ordem dos intervalos (ordem de doc_id).
+	 * @throws Exception erro ao executar consulta.
 	 */
-	public long[] addDocuments(List<Document> documents) throws Exception {
-		List<Long> docIds = new ArrayList<>();
+	private <T> List<T> readShards(long[] docIds, ShardReader<T> reader) throws Exception {
+		List<String> shards = getShards(docIds, numberOfShards);
+		List<T> results = new ArrayList<>(shards.size());
+		if ( shards.size() == 1 ){
+			results.add(readShard(shards.get(0), reader));
+			return results;
+		}
+
+		int parallelism = shardThreads > 0 ? shardThreads : Runtime.getRuntime().availableProcessors();
+		ForkJoinPool pool = new ForkJoinPool(Math.min(parallelism, shards.size()));
+		try {
+			List<ForkJoinTask<T>> tasks = new ArrayList<>(shards.size());
+			for( String where : shards )
+				tasks.add(pool.submit(() -> readShard(where, reader)));
+			for( ForkJoinTask<T> task : tasks )
+				results.add(task.get());
+			return results;
+		}catch( ExecutionException e){
+			if ( e.getCause() instanceof Exception )
+				throw (Exception) e.getCause();
+			throw e;
+		}finally {
+			pool.shutdown();
+		}
+	}
 
+	private <T> T readShard(String where, ShardReader<T> reader) throws Exception {
 		try ( Connection conn = db.getConnection();){
-			PreparedStatement stmt = conn.prepareStatement(INSERT_DOC, Statement.RETURN_GENERATED_KEYS);
+			conn.setAutoCommit(false);
+			T result = reader.read(conn, where);
+			conn.commit();
+			return result;
+		}catch( Exception e){
+			throw e;
+		}
+	}
 
-			int count = 0;
+	/**
+	 * Divide os documentos especificados em intervalos consecutivos
+	 * de doc_id com aproximadamente o mesmo número de documentos.
+	 * @param docIds id's dos documentos ou <code>null</code> para 
+	 * todos os documentos. 
+	 * @param numberOfShards número de intervalos.
+	 * @return clausula WHERE em SQL de cada intervalo, em ordem de doc_id.
+	 * @throws Exception erro ao executar consulta.
+	 */
+	private List<String> getShards(long[] docIds, int numberOfShards) throws Exception {
+		List<String> shards = new ArrayList<>(numberOfShards);
+		if ( numberOfShards <= 1 ){
+			shards.add(whereDocIds(docIds));
+			return shards;
+		}
 
-			for( Document doc: documents ){
-				stmt.setString(1, doc.getTitle());
-				stmt.setString(2, doc.getDOI());
-				stmt.setString(3, doc.getKeywords());
-				stmt.setString(4, doc.getAbstract());
-				stmt.setInt(5, Utils.extractYear(doc.getPublicationDate()));
-				stmt.setString(6, doc.getVolume());
-				stmt.setString(7, doc.getPages());
-				stmt.setString(8, doc.getIssue());
-				stmt.setString(9, doc.getContainer());
-				stmt.setString(10, doc.getISSN());
-				stmt.setString(11, doc.getLanguage());
-				stmt.addBatch();
+		if ( docIds != null ){
+			long[] ids = docIds.clone();
+			Arrays.sort(ids);
+			int shardSize = (ids.length + numberOfShards - 1) / numberOfShards;
+			for(int from = 0; from < ids.length; from += shardSize)
+				shards.add(whereDocIds(Arrays.copyOfRange(ids, from, Math.min(ids.length, from + shardSize))));
+			if ( shards.isEmpty() )
+				shards.add(whereDocIds(docIds));
+			return shards;
+		}
 
-				if (++count % batchSize == 0){
-					stmt.executeBatch();
-					getGeneratedKeys(docIds, stmt.getGeneratedKeys());
-				}
+		// Menor doc_id de cada intervalo
+		List<Long> bounds = new ArrayList<>(numberOfShards);
+		try ( Connection conn = db.getConnection();
+				PreparedStatement stmt = conn.prepareStatement(SHARD_BOUNDS);){
+			stmt.setInt(1, numberOfShards);
+			try ( ResultSet rs = stmt.executeQuery();){
+				while( rs.next() )
+					bounds.add(rs.getLong(1));
 			}
-
-			stmt.executeBatch();
-			getGeneratedKeys(docIds, stmt.getGeneratedKeys());
-
-			for(int i = 0; i < docIds.size(); i++)
-				documents.get(i).setDocId(docIds.get(i));
-
 		}catch( Exception e){
 			throw e;
 		}
 
-		if ( docIds.size() > 0 ){
-			addAuthors(documents);
-			addDocumetAuthors(documents);
+		if ( bounds.size() <= 1 ){
+			shards.add("");
+			return shards;
 		}
-
-		return docIds.stream().mapToLong(l->l).toArray();
+		shards.add(" WHERE doc_id < " + bounds.get(1));
+		for(int i = 1; i < bounds.size() - 1; i++)
+			shards.add(" WHERE doc_id >= " + bounds.get(i) + " AND doc_id < " + bounds.get(i + 1));
+		shards.add(" WHERE doc_id >= " + bounds.get(bounds.size() - 1));
+		return shards;
 	}
 
 	/**
-	 * Adiciona autores dos documentos dados no banco de dados
-	 * @param documents documentos para quais os autores devem ser inseridos
-	 * ou atualizados no banco de dados.
-	 * @return id's do autores corretamente inseridos (excluídos id's dos registros
-	 * atualizados).
-	 * @throws Exception erro ao executar inserção.
+	 * Retorna vocabulário dos documentos especificados, selecionado
+	 * com os critérios da configuração (<code>tfidf.*</code>).
+	 * @param docIds id's dos documentos ou <code>null</code> para 
+	 * todos os documentos. 
+	 * @return vocabulário selecionado.
+	 * @throws Exception erro ao executar consulta.
+	 * @see VocabularySelector
 	 */
-	private long[] addAuthors(List<Document> documents) throws Exception {
-		try ( Connection conn = db.getConnection();){
-			PreparedStatement stmt = conn.prepareStatement(INSERT_AUTHOR, Statement.RETURN_GENERATED_KEYS);
-			int count = 0;
-
-			List<Long> ids = new ArrayList<>();
-
-			for( Document doc : documents){
-				for( Author author : doc.getAuthors() ){
-					stmt.setString(1, author.getName());
-					stmt.addBatch();
+	public Vocabulary getVocabulary(long[] docIds) throws Exception {
+		return getVocabulary(docIds, vocabularySelector);
+	}
 
-					if(++count % batchSize == 0){
-						stmt.executeBatch();
-						getGeneratedKeys(ids, stmt.getGeneratedKeys());
-					}
+	/**
+	 * Retorna vocabulário dos documentos especificados (tabela 
+	 * <code>terms</code>), selecionado com os critérios dados. A coluna
+	 * de cada termo na matriz segue a ordem alfabética dos termos.
+	 * <p>Para todos os documentos as contagens mantidas na tabela 
+	 * <code>terms</code> são utilizadas diretamente; para um subconjunto
+	 * as contagens são calculadas a partir dos vetores de termos 
+	 * (<code>term_ids</code>/<code>term_freqs</code>) dos documentos.
+	 * Somente termos que ocorrem mais de uma vez são considerados.</p>
+	 * @param docIds id's dos documentos ou <code>null</code> para 
+	 * todos os documentos. 
+	 * @param selector critérios de seleção (df mínimo/máximo, número
+	 * máximo de termos e stopwords).
+	 * @return vocabulário selecionado.
+	 * @throws Exception erro ao executar consulta.
+	 */
+	public Vocabulary getVocabulary(long[] docIds, VocabularySelector selector) throws Exception {
+		int numberOfDocuments;
+		String sql;
+		if ( docIds == null ){
+			numberOfDocuments = getNumberOfDocuments();
+			sql = "SELECT term_id, term, ndoc FROM terms WHERE nentry > 1 "
+					+ "AND ndoc >= ? AND ndoc <= ? AND term <> ALL(?)";
+		}
+		else {
+			numberOfDocuments = docIds.length;
+			sql = "SELECT t.term_id, t.term, v.ndoc FROM (SELECT f.term_id, count(*) ndoc, sum(f.freq) nentry "
+					+ "FROM documents d, unnest(d.term_ids, d.term_freqs) f(term_id, freq) " + whereDocIds(docIds) 
+					+ " GROUP BY f.term_id) v JOIN terms t ON t.term_id = v.term_id "
+					+ "WHERE v.nentry > 1 AND v.ndoc >= ? AND v.ndoc <= ? AND t.term <> ALL(?)";
+		}
+		
+		// Seleciona os K termos mais frequentes e os ordena alfabeticamente
+		sql = "SELECT term_id, term, ndoc FROM (" + sql + " ORDER BY ndoc DESC, term COLLATE \"C\" LIMIT ?) s "
+				+ "ORDER BY term COLLATE \"C\"";
+
+		try ( Connection conn = db.getConnection();
+				PreparedStatement stmt = conn.prepareStatement(sql);){
+			stmt.setInt(1, selector.getMinDf());
+			stmt.setInt(2, selector.getMaxDocuments(numberOfDocuments));
+			stmt.setArray(3, conn.createArrayOf("text", selector.getStopwords()));
+			if ( selector.getTopK() > 0 )
+				stmt.setInt(4, selector.getTopK());
+			else
+				stmt.setNull(4, Types.INTEGER);
+
+			List<Integer> termIds = new ArrayList<>();
+			List<String> terms = new ArrayList<>();
+			List<Integer> ndocs = new ArrayList<>();
+			try ( ResultSet rs = stmt.executeQuery();){
+				while( rs.next() ){
+					termIds.add(rs.getInt(1));
+					terms.add(rs.getString(2));
+					ndocs.add(rs.getInt(3));
 				}
 			}
 
-			stmt.executeBatch();
-			getGeneratedKeys(ids, stmt.getGeneratedKeys());
-
-			int i = 0;
-			for( Document doc : documents){
-				for( Author author : doc.getAuthors() ){
-					author.setAuthorId(ids.get(i));
-					++i;
-				}
+			int[] ids = new int[termIds.size()], df = new int[termIds.size()];
+			for(int c = 0; c < ids.length; c++){
+				ids[c] = termIds.get(c);
+				df[c] = ndocs.get(c);
 			}
-
-			return ids.stream().mapToLong(l->l).toArray();
+			return new Vocabulary(ids, terms.toArray(new String[terms.size()]), df, numberOfDocuments, selector);
 
 		}catch( Exception e){
 			throw e;
@@ -386,226 +767,1156 @@ public class DatabaseService {
 	}
 
 	/**
-	 * Adiciona ligação entre documento e autor no banco de dados.
-	 * @param docs documentos para quais as ligações documento-autor serão
-	 * inseridas.
+	 * Registra execução da projeção multidimensional com
+	 * o vocabulário utilizado.
+	 * @param vocabulary vocabulário utilizado na matriz de frequência.
+	 * @return id da execução.
 	 * @throws Exception erro ao executar inserção.
 	 */
-	private void addDocumetAuthors(List<Document> docs) throws Exception {
-		try ( Connection conn = db.getConnection();){
-			PreparedStatement stmt = conn.prepareStatement(INSERT_DOC_AUTHOR, Statement.RETURN_GENERATED_KEYS);
-
-			int count = 0;
-			for( Document doc : docs ){
-				for( Author aut : doc.getAuthors() ){
-					stmt.setLong(1, doc.getDocId());
-					stmt.setLong(2,aut.getAuthorId());
-					stmt.addBatch();
-
-					if (++count % batchSize == 0){
-						stmt.executeBatch();
-					}
-				}
-			}
-			stmt.executeBatch();
-		}catch (Exception e) {
-			throw e;
-		}
+	public long addProjectionRun(Vocabulary vocabulary) throws Exception {
+		ProjectionRun run = new ProjectionRun();
+		run.setNumberOfDocuments(vocabulary.getNumberOfDocuments());
+		run.setVocabulary(vocabulary);
+		return addProjectionRun(run);
 	}
 
 	/**
-	 * Insere na lista dada (ids) os id's gerados automaticamente
-	 * pelo banco de dados.
-	 * @param ids lista com id's gerados automaticamente.
-	 * @param generatedKeys {@link ResultSet} resultante da inserção.
-	 * @throws SQLException erro ao recuperar id's do {@link ResultSet}.
+	 * Registra execução da projeção multidimensional com
+	 * <i>feature hashing</i>.
+	 * @param numberOfDocuments número de documentos projetados.
+	 * @param bits número de bits do vetorizador.
+	 * @return id da execução.
+	 * @throws Exception erro ao executar inserção.
 	 */
-	private void getGeneratedKeys(List<Long> ids, ResultSet generatedKeys) throws SQLException {
-		while (generatedKeys.next()){
-			ids.add(generatedKeys.getLong(1));
-		}
+	public long addProjectionRun(int numberOfDocuments, int bits) throws Exception {
+		ProjectionRun run = new ProjectionRun();
+		run.setNumberOfDocuments(numberOfDocuments);
+		run.setHashingBits(bits);
+		return addProjectionRun(run);
 	}
 
 	/**
-	 * Remove documento da base de dados.
-	 * @param id id do documento a ser removido.
-	 * @throws Exception erro ao executar remoção.
+	 * Registra execução da projeção multidimensional: vocabulário (ou
+	 * número de bits do <i>feature hashing</i>), maior doc_id projetado,
+	 * normalização e, caso informados, os pontos de controle com seus
+	 * valores e projeção, em uma única transação.
+	 * @param run execução da projeção (o id gerado é atribuído a
+	 * <code>run</code>).
+	 * @return id da execução.
+	 * @throws Exception erro ao executar inserção.
+	 * @see #getLastProjectionRun()
+	 */
+	public long addProjectionRun(ProjectionRun run) throws Exception {
+		Connection conn = null;
+		try {
+			conn = db.getConnection();
+			conn.setAutoCommit(false);
+
+			try ( PreparedStatement stmt = conn.prepareStatement(INSERT_PROJECTION_RUN, new String[]{"run_id"});){
+				Vocabulary vocabulary = run.getVocabulary();
+				stmt.setInt(1, run.getNumberOfDocuments());
+				if ( vocabulary != null ){
+					VocabularySelector selector = vocabulary.getSelector();
+					stmt.setInt(2, vocabulary.size());
+					stmt.setInt(3, selector.getMinDf());
+					stmt.setDouble(4, selector.getMaxDf());
+					stmt.setInt(5, selector.getTopK());
+					stmt.setArray(6, conn.createArrayOf("text", selector.getStopwords()));
+					stmt.setArray(7, conn.createArrayOf("int4", toObjects(vocabulary.getTermIds())));
+					stmt.setArray(8, conn.createArrayOf("int4", toObjects(vocabulary.getDocumentFrequencies())));
+					stmt.setNull(9, Types.INTEGER);
+				}
+				else {
+					stmt.setInt(2, 1 << run.getHashingBits());
+					stmt.setNull(3, Types.INTEGER);
+					stmt.setNull(4, Types.DOUBLE);
+					stmt.setNull(5, Types.INTEGER);
+					stmt.setNull(6, Types.ARRAY);
+					stmt.setNull(7, Types.ARRAY);
+					stmt.setNull(8, Types.ARRAY);
+					stmt.setInt(9, run.getHashingBits());
+				}
+				if ( run.getControlPointIds() != null )
+					stmt.setLong(10, run.getLastDocId());
+				else
+					stmt.setNull(10, Types.BIGINT);
+				if ( run.getBounds() != null )
+					stmt.setArray(11, conn.createArrayOf("float8", toObjects(run.getBounds())));
+				else
+					stmt.setNull(11, Types.ARRAY);
+				stmt.setLong(12, run.getSeed());
+				stmt.setString(13, vocabulary != null ? vocabulary.getHash() : null);
+				if ( run.getAlignedTo() > 0 )
+					stmt.setLong(14, run.getAlignedTo());
+				else
+					stmt.setNull(14, Types.BIGINT);
+				stmt.setInt(15, run.getUpdated());
+				Map<String, Long> timings = run.getTimings();
+				stmt.setArray(16, conn.createArrayOf("text", timings.keySet().toArray()));
+				stmt.setArray(17, conn.createArrayOf("int8", timings.values().toArray()));
+				stmt.executeUpdate();
+				try ( ResultSet rs = stmt.getGeneratedKeys();){
+					rs.next();
+					run.setRunId(rs.getLong(1));
+				}
+			}
+
+			if ( run.getControlPointIds() != null )
+				addControlPoints(conn, run);
+
+			conn.commit();
+			return run.getRunId();
+		}catch( Exception e){
+			if ( conn != null )
+				conn.rollback();
+			throw e;
+		}finally {
+			if ( conn != null )
+				conn.close();
+		}
+	}
+
+	/**
+	 * Insere pontos de controle da execução dada: doc_id, projeção
+	 * e valores não nulos (colunas e valores) de cada ponto.
+	 */
+	private void addControlPoints(Connection conn, ProjectionRun run) throws Exception {
+		long[] docIds = run.getControlPointIds();
+		DoubleMatrix2D xs = run.getControlPoints(), ys = run.getControlPointsProjection();
+		try ( PreparedStatement stmt = conn.prepareStatement(INSERT_CONTROL_POINT);){
+			IntArrayList columns = new IntArrayList();
+			DoubleArrayList values = new DoubleArrayList();
+			for(int i = 0; i < docIds.length; i++){
+				xs.viewRow(i).getNonZeros(columns, values);
+				stmt.setLong(1, run.getRunId());
+				stmt.setInt(2, i);
+				stmt.setLong(3, docIds[i]);
+				stmt.setDouble(4, ys.getQuick(i, 0));
+				stmt.setDouble(5, ys.getQuick(i, 1));
+				stmt.setArray(6, conn.createArrayOf("int4", toObjects(columns.elements(), columns.size())));
+				stmt.setArray(7, conn.createArrayOf("float8", toObjects(values.elements(), values.size())));
+				stmt.addBatch();
+			}
+			stmt.executeBatch();
+		}
+	}
+
+	/**
+	 * Retorna última execução da projeção multidimensional com pontos
+	 * de controle registrados, para projeção somente de novos documentos.
+	 * O vocabulário é reconstruído a partir dos term_id's e df's registrados
+	 * (o IDF não é recalculado).
+	 * @return execução com vocabulário (ou número de bits), normalização e
+	 * pontos de controle, ou <code>null</code> caso não exista.
+	 * @throws Exception erro ao executar consulta.
+	 * @see #addProjectionRun(ProjectionRun)
+	 */
+	public ProjectionRun getLastProjectionRun() throws Exception {
+		try ( Connection conn = db.getConnection();){
+			ProjectionRun run = new ProjectionRun();
+			int numColumns;
+			try ( Statement stmt = conn.createStatement();
+					ResultSet rs = stmt.executeQuery(LAST_PROJECTION_RUN);){
+				if ( !rs.next() )
+					return null;
+				run.setRunId(rs.getLong("run_id"));
+				run.setNumberOfDocuments(rs.getInt("num_documents"));
+				numColumns = rs.getInt("num_terms");
+				run.setHashingBits(rs.getInt("hashing_bits"));
+				run.setLastDocId(rs.getLong("last_doc_id"));
+				run.setSeed(rs.getLong("seed"));
+				run.setAlignedTo(rs.getLong("aligned_to"));
+				String bounds = rs.getString("bounds");
+				if ( bounds != null ){
+					double[] values = new double[PgArrays.size(bounds)];
+					PgArrays.parseDoubles(bounds, values);
+					run.setBounds(values);
+				}
+
+				if ( run.getHashingBits() == 0 ){
+					String ids = rs.getString("term_ids"), ndocs = rs.getString("term_ndocs");
+					int[] termIds = new int[PgArrays.size(ids)], df = new int[termIds.length];
+					PgArrays.parseInts(ids, termIds);
+					PgArrays.parseInts(ndocs, df);
+					Array stopwords = rs.getArray("stopwords");
+					VocabularySelector selector = new VocabularySelector(rs.getInt("min_df"), rs.getDouble("max_df"), 
+							rs.getInt("top_k"), stopwords != null ? (String[]) stopwords.getArray() : new String[0]);
+					run.setVocabulary(new Vocabulary(termIds, getTerms(conn, termIds), df, 
+							run.getNumberOfDocuments(), selector));
+				}
+			}
+
+			// Pontos de controle
+			List<Long> docIds = new ArrayList<>();
+			List<double[]> ys = new ArrayList<>();
+			SparseMatrixBuilder xs = new SparseMatrixBuilder(numColumns, 128, nonZeroHint(128));
+			try ( PreparedStatement stmt = conn.prepareStatement(CONTROL_POINTS);){
+				stmt.setLong(1, run.getRunId());
+				try ( ResultSet rs = stmt.executeQuery();){
+					int[] columns = new int[0];
+					double[] values = new double[0];
+					while( rs.next() ){
+						docIds.add(rs.getLong(1));
+						ys.add(new double[]{ rs.getDouble(2), rs.getDouble(3) });
+						String cols = rs.getString(4), vals = rs.getString(5);
+						int nnz = PgArrays.size(cols);
+						if ( nnz > columns.length ){
+							columns = new int[nnz];
+							values = new double[nnz];
+						}
+						PgArrays.parseInts(cols, columns);
+						PgArrays.parseDoubles(vals, values);
+						for(int e = 0; e < nnz; e++)
+							xs.add(columns[e], values[e]);
+						xs.endRow();
+					}
+				}
+			}
+
+			long[] ids = new long[docIds.size()];
+			DoubleMatrix2D projection = new DenseDoubleMatrix2D(ids.length, 2);
+			for(int i = 0; i < ids.length; i++){
+				ids[i] = docIds.get(i);
+				projection.setQuick(i, 0, ys.get(i)[0]);
+				projection.setQuick(i, 1, ys.get(i)[1]);
+			}
+			run.setControlPointIds(ids);
+			run.setControlPoints(xs.build());
+			run.setControlPointsProjection(projection);
+			return run;
+		}catch( Exception e){
+			throw e;
+		}
+	}
+
+	/**
+	 * Retorna termos dos term_id's dados (na mesma ordem).
+	 */
+	private String[] getTerms(Connection conn, int[] termIds) throws Exception {
+		Map<Integer, String> terms = new HashMap<>(2 * termIds.length);
+		try ( PreparedStatement stmt = conn.prepareStatement(TERMS_BY_ID);){
+			stmt.setArray(1, conn.createArrayOf("int4", toObjects(termIds)));
+			try ( ResultSet rs = stmt.executeQuery();){
+				while( rs.next() )
+					terms.put(rs.getInt(1), rs.getString(2));
+			}
+		}
+		String[] result = new String[termIds.length];
+		for(int c = 0; c < termIds.length; c++)
+			result[c] = terms.get(termIds[c]);
+		return result;
+	}
+
+	/**
+	 * Atualiza maior doc_id projetado de uma execução (após
+	 * projeção de novos documentos com seus pontos de controle).
+	 * @param runId id da execução.
+	 * @param lastDocId maior doc_id projetado.
+	 * @throws Exception erro ao executar atualização.
+	 */
+	public void updateProjectionRun(long runId, long lastDocId) throws Exception {
+		try ( Connection conn = db.getConnection();
+				PreparedStatement stmt = conn.prepareStatement(UPDATE_PROJECTION_RUN);){
+			stmt.setLong(1, lastDocId);
+			stmt.setLong(2, runId);
+			stmt.executeUpdate();
+		}catch( Exception e){
+			throw e;
+		}
+	}
+
+	/**
+	 * Retorna documentos a serem projetados incrementalmente: inseridos
+	 * após a execução (doc_id maior que o registrado) ou sem projeção
+	 * (<code>documents_data.x/y</code> nulos).
+	 * @param lastDocId maior doc_id projetado na execução.
+	 * @return doc_id's em ordem crescente.
+	 * @throws Exception erro ao executar consulta.
+	 */
+	public long[] getDocumentsToProject(long lastDocId) throws Exception {
+		try ( Connection conn = db.getConnection();
+				PreparedStatement stmt = conn.prepareStatement(DOCUMENTS_TO_PROJECT);){
+			stmt.setLong(1, lastDocId);
+			try ( ResultSet rs = stmt.executeQuery();){
+				return toLongs(rs);
+			}
+		}catch( Exception e){
+			throw e;
+		}
+	}
+
+	/**
+	 * Retorna id's de todos os documentos (ordem das linhas da
+	 * matriz de frequência).
+	 * @return doc_id's em ordem crescente.
+	 * @throws Exception erro ao executar consulta.
+	 */
+	public long[] getDocumentIds() throws Exception {
+		try ( Connection conn = db.getConnection();
+				Statement stmt = conn.createStatement();
+				ResultSet rs = stmt.executeQuery("SELECT doc_id FROM documents ORDER BY doc_id");){
+			return toLongs(rs);
+		}catch( Exception e){
+			throw e;
+		}
+	}
+
+	/**
+	 * Sorteia documentos (amostragem por reservatório sobre os doc_id's
+	 * lidos com cursor no servidor, sem manter todos os id's em memória).
+	 * @param size tamanho da amostra.
+	 * @param rng gerador aleatório.
+	 * @return doc_id's sorteados (no máximo <code>size</code>), em ordem crescente.
+	 * @throws Exception erro ao executar consulta.
+	 */
+	public long[] sampleDocumentIds(int size, Random rng) throws Exception {
+		long[] sample = new long[size];
+		long seen = 0;
+		try ( Connection conn = db.getConnection();){
+			conn.setAutoCommit(false);
+			try ( Statement stmt = conn.createStatement();){
+				stmt.setFetchSize(fetchSize);
+				try ( ResultSet rs = stmt.executeQuery("SELECT doc_id FROM documents ORDER BY doc_id");){
+					while( rs.next() ){
+						if ( seen < size )
+							sample[(int) seen] = rs.getLong(1);
+						else {
+							long r = (long) (rng.nextDouble() * (seen + 1));
+							if ( r < size )
+								sample[(int) r] = rs.getLong(1);
+						}
+						seen++;
+					}
+				}
+			}
+			conn.commit();
+		}catch( Exception e){
+			throw e;
+		}
+		sample = Arrays.copyOf(sample, (int) Math.min(seen, size));
+		Arrays.sort(sample);
+		return sample;
+	}
+
+	private static long[] toLongs(ResultSet rs) throws SQLException {
+		long[] values = new long[1024];
+		int count = 0;
+		while( rs.next() ){
+			if ( count == values.length )
+				values = Arrays.copyOf(values, 2 * count);
+			values[count++] = rs.getLong(1);
+		}
+		return Arrays.copyOf(values, count);
+	}
+
+	private static Integer[] toObjects(int[] values, int size) {
+		Integer[] objects = new Integer[size];
+		for(int i = 0; i < size; i++)
+			objects[i] = values[i];
+		return objects;
+	}
+
+	private static Double[] toObjects(double[] values) {
+		return toObjects(values, values.length);
+	}
+
+	private static Double[] toObjects(double[] values, int size) {
+		Double[] objects = new Double[size];
+		for(int i = 0; i < size; i++)
+			objects[i] = values[i];
+		return objects;
+	}
+
+	private static Integer[] toObjects(int[] values) {
+		return toObjects(values, values.length);
+	}
+
+	/**
+	 * Constroi clausula WHERE para filtragem de documentos por id's.
+	 * @param docIds id's dos documentos ou <code>null</code>.
+	 * @return clausula WHERE ou vazio caso <code>docIds == null</code>.
+	 */
+	private static String whereDocIds(long[] docIds) {
+		StringBuilder sql = new StringBuilder();
+		if ( docIds != null ){
+			sql.append(" WHERE doc_id IN (");
+			sql.append(docIds[0]);
+			for(int i = 1; i < docIds.length; i++){
+				sql.append(",");
+				sql.append(docIds[i]);
+			}
+			sql.append(")");
+		}
+		return sql.toString();
+	}
+
+	/**
+	 * Insere novo documento ao banco de dados ou atualiza campos
+	 * caso já exista na base documento com mesmo DOI.
+	 * @param doc documento a ser inserido.
+	 * @return id do novo documento.
+	 * @throws Exception erro ao executar inserção.
+	 */
+	public long addDocument(Document doc) throws Exception {
+		return addDocument(doc, null);
+	}
+
+	/**
+	 * Insere novo documento, seus autores, suas referências (documentos citados)
+	 * e as citações documento -> referência em uma única transação.
+	 * <p>Todas as inserções são realizadas na mesma conexão, em batch, de forma
+	 * que o número de comunicações com o banco de dados e de commits é constante
+	 * por documento. Em caso de erro nenhum registro é inserido.</p>
+	 * @param doc documento a ser inserido.
+	 * @param references documentos citados ou <code>null</code>.
+	 * @return id do novo documento.
+	 * @throws Exception erro ao executar inserção.
+	 */
+	public long addDocument(Document doc, List<Document> references) throws Exception {
+		List<Document> docs = new ArrayList<>();
+		docs.add(doc);
+		if ( references != null )
+			docs.addAll(references);
+
+		Connection conn = null;
+		try {
+			conn = db.getConnection();
+			conn.setAutoCommit(false);
+
+			insertDocuments(conn, Arrays.asList(doc), false);
+			long docId = doc.getDocId();
+			if ( docId <= 0 ){
+				conn.rollback();
+				return -1;
+			}
+
+			// Referências já conhecidas (cache) não são reenviadas
+			if ( references != null )
+				insertDocuments(conn, references, true);
+
+			// Insere autores na tabela authors e também atribui
+			// aos documentos seus autores na tabela document_authors
+			insertAuthors(conn, docs);
+			insertDocumentAuthors(conn, docs);
+
+			if ( references != null )
+				insertCitations(conn, docId, references);
+
+			conn.commit();
+			cacheIds(docs);
+			return docId;
+
+		}catch( Exception e){
+			if ( conn != null )
+				conn.rollback();
+			throw e;
+		}finally {
+			if ( conn != null )
+				conn.close();
+		}
+	}
+
+	/**
+	 * Insere todos os documentos da lista dada no bando de dados, 
+	 * atualizando campos caso já exista algum documento com mesmo DOI.
+	 * <p>Para inserção de multiplos documentos esse método é mais eficiente do que
+	 * multiplas chamadas do método {@link #addDocument(Document)} uma vez que realiza
+	 * inserção em batch.</p>
+	 * @param documents documentos a serem inseridos.
+	 * @return vetor com id dos documentos inseridos ou atualizados, na mesma ordem
+	 * da lista dada.
+	 * @throws Exception
+	 */
+	public long[] addDocuments(List<Document> documents) throws Exception {
+		Connection conn = null;
+		try {
+			conn = db.getConnection();
+			conn.setAutoCommit(false);
+
+			long[] docIds = insertDocuments(conn, documents, false);
+			insertAuthors(conn, documents);
+			insertDocumentAuthors(conn, documents);
+
+			conn.commit();
+			cacheIds(documents);
+			return docIds;
+
+		}catch( Exception e){
+			if ( conn != null )
+				conn.rollback();
+			throw e;
+		}finally {
+			if ( conn != null )
+				conn.close();
+		}
+	}
+
+	/**
+	 * Insere documentos (sem autores) utilizando a conexão dada.
+	 * <p>Os id's são atribuídos aos documentos a partir dos pares
+	 * (doc_id, doi) retornados pelo banco de dados, e não pela posição
+	 * no batch.</p>
+	 * @param conn conexão com o banco de dados.
+	 * @param documents documentos a serem inseridos.
+	 * @param useCache se <code>true</code> documentos cujo DOI já está no
+	 * cache não são reenviados ao banco de dados (campos não são atualizados).
+	 * @return vetor com id dos documentos, na mesma ordem da lista dada.
+	 * @throws SQLException erro ao executar inserção.
+	 */
+	private long[] insertDocuments(Connection conn, List<Document> documents, boolean useCache) throws SQLException {
+		try ( PreparedStatement stmt = conn.prepareStatement(INSERT_DOC, DOC_KEYS);){
+			List<Document> batch = new ArrayList<>(batchSize);
+
+			for( Document doc: documents ){
+				if ( useCache ){
+					long id = docIdCache.get(doc.getDOI());
+					if ( id > 0 ){
+						doc.setDocId(id);
+						continue;
+					}
+				}
+
+				stmt.setString(1, doc.getTitle());
+				stmt.setString(2, doc.getDOI());
+				stmt.setString(3, doc.getKeywords());
+				stmt.setString(4, doc.getAbstract());
+				stmt.setInt(5, Utils.extractYear(doc.getPublicationDate()));
+				stmt.setString(6, doc.getVolume());
+				stmt.setString(7, doc.getPages());
+				stmt.setString(8, doc.getIssue());
+				stmt.setString(9, doc.getContainer());
+				stmt.setString(10, doc.getISSN());
+				stmt.setString(11, doc.getLanguage());
+				stmt.addBatch();
+				batch.add(doc);
+
+				if ( batch.size() == batchSize ){
+					stmt.executeBatch();
+					resolveDocumentIds(stmt.getGeneratedKeys(), batch);
+				}
+			}
+
+			if ( !batch.isEmpty() ){
+				stmt.executeBatch();
+				resolveDocumentIds(stmt.getGeneratedKeys(), batch);
+			}
+		}
+
+		return documents.stream().mapToLong(Document::getDocId).toArray();
+	}
+
+	/**
+	 * Atribui id's aos documentos de um batch a partir dos pares
+	 * (doc_id, doi) retornados pelo banco de dados. Documentos sem DOI
+	 * nunca conflitam e portanto seus id's são retornados na ordem
+	 * de inserção.
+	 * @param keys {@link ResultSet} com os pares (doc_id, doi).
+	 * @param batch documentos do batch (esvaziado ao final).
+	 * @throws SQLException erro ao recuperar id's do {@link ResultSet}.
+	 */
+	private void resolveDocumentIds(ResultSet keys, List<Document> batch) throws SQLException {
+		Map<String, Long> ids = new HashMap<>();
+		Deque<Long> withoutDOI = new ArrayDeque<>();
+		try ( ResultSet rs = keys ){
+			while ( rs.next() ){
+				String doi = rs.getString(2);
+				if ( doi == null )
+					withoutDOI.add(rs.getLong(1));
+				else
+					ids.put(doi, rs.getLong(1));
+			}
+		}
+
+		for( Document doc : batch ){
+			Long id = doc.getDOI() == null ? withoutDOI.poll() : ids.get(doc.getDOI());
+			if ( id != null )
+				doc.setDocId(id);
+		}
+		batch.clear();
+	}
+
+	/**
+	 * Insere documentos em massa utilizando <code>COPY</code>, atualizando
+	 * campos caso já exista algum documento com mesmo DOI (mesma semântica de
+	 * {@link #addDocuments(List)}). Autores e ligações documento-autor
+	 * também são inseridos.
+	 * <p>Indicado para cargas com grande volume de documentos: todos os registros
+	 * são enviados em uma única transação e incorporados às tabelas com
+	 * comandos baseados em conjuntos.</p>
+	 * @param documents documentos a serem inseridos.
+	 * @return vetor com id dos documentos na mesma ordem da lista dada.
+	 * @throws Exception erro ao executar inserção.
+	 */
+	public long[] addDocumentsBulk(List<Document> documents) throws Exception {
+		return addDocumentsBulk(documents, null, null);
+	}
+
+	/**
+	 * Insere documentos e citações entre eles em massa utilizando <code>COPY</code>.
+	 * @param documents documentos a serem inseridos.
+	 * @param citing índices (na lista <code>documents</code>) dos documentos que
+	 * fazem as citações ou <code>null</code> caso não existam citações.
+	 * @param cited índices (na lista <code>documents</code>) dos documentos citados,
+	 * correspondentes a <code>citing</code>.
+	 * @return vetor com id dos documentos na mesma ordem da lista dada.
+	 * @throws Exception erro ao executar inserção.
+	 * @see #addDocumentsBulk(List)
+	 */
+	public long[] addDocumentsBulk(List<Document> documents, int[] citing, int[] cited) throws Exception {
+		if ( citing != null && (cited == null || cited.length != citing.length) )
+			throw new IllegalArgumentException("citing and cited must have the same length");
+
+		Connection conn = null;
+		try {
+			conn = db.getConnection();
+			conn.setAutoCommit(false);
+
+			long[] docIds = new BulkLoader(conn).load(documents, citing, cited);
+			conn.commit();
+			cacheIds(documents);
+			return docIds;
+
+		}catch( Exception e){
+			if ( conn != null )
+				conn.rollback();
+			throw e;
+		}finally {
+			if ( conn != null )
+				conn.close();
+		}
+	}
+
+	/**
+	 * Adiciona autores dos documentos dados no banco de dados.
+	 * Autores já presentes no cache não são reenviados.
+	 * @param conn conexão com o banco de dados.
+	 * @param documents documentos para quais os autores devem ser inseridos
+	 * ou atualizados no banco de dados.
+	 * @throws SQLException erro ao executar inserção.
+	 */
+	private void insertAuthors(Connection conn, List<Document> documents) throws SQLException {
+		try ( PreparedStatement stmt = conn.prepareStatement(INSERT_AUTHOR, AUTHOR_KEYS);){
+			List<Author> batch = new ArrayList<>(batchSize);
+
+			for( Document doc : documents){
+				if ( doc.getAuthors() == null )
+					continue;
+				for( Author author : doc.getAuthors() ){
+					long id = authorIdCache.get(author.getName());
+					if ( id > 0 ){
+						author.setAuthorId(id);
+						continue;
+					}
+
+					stmt.setString(1, author.getName());
+					stmt.addBatch();
+					batch.add(author);
+
+					if ( batch.size() == batchSize ){
+						stmt.executeBatch();
+						resolveAuthorIds(stmt.getGeneratedKeys(), batch);
+					}
+				}
+			}
+
+			if ( !batch.isEmpty() ){
+				stmt.executeBatch();
+				resolveAuthorIds(stmt.getGeneratedKeys(), batch);
+			}
+		}
+	}
+
+	/**
+	 * Atribui id's aos autores de um batch a partir dos pares
+	 * (aut_id, aut_name) retornados pelo banco de dados.
+	 * @param keys {@link ResultSet} com os pares (aut_id, aut_name).
+	 * @param batch autores do batch (esvaziado ao final).
+	 * @throws SQLException erro ao recuperar id's do {@link ResultSet}.
+	 */
+	private void resolveAuthorIds(ResultSet keys, List<Author> batch) throws SQLException {
+		Map<String, Long> ids = new HashMap<>();
+		Deque<Long> withoutName = new ArrayDeque<>();
+		try ( ResultSet rs = keys ){
+			while ( rs.next() ){
+				String name = rs.getString(2);
+				if ( name == null )
+					withoutName.add(rs.getLong(1));
+				else
+					ids.put(name, rs.getLong(1));
+			}
+		}
+
+		for( Author author : batch ){
+			Long id = author.getName() == null ? withoutName.poll() : ids.get(author.getName());
+			if ( id != null )
+				author.setAuthorId(id);
+		}
+		batch.clear();
+	}
+
+	/**
+	 * Adiciona ao cache os id's dos documentos e autores dados
+	 * (somente após commit da transação).
+	 * @param documents documentos inseridos.
+	 */
+	private void cacheIds(List<Document> documents) {
+		for( Document doc : documents ){
+			docIdCache.put(doc.getDOI(), doc.getDocId());
+			if ( doc.getAuthors() != null ){
+				for( Author author : doc.getAuthors() )
+					authorIdCache.put(author.getName(), author.getAuthorId());
+			}
+		}
+	}
+
+	/**
+	 * Adiciona ligação entre documento e autor no banco de dados.
+	 * @param conn conexão com o banco de dados.
+	 * @param docs documentos para quais as ligações documento-autor serão
+	 * inseridas.
+	 * @throws SQLException erro ao executar inserção.
+	 */
+	private void insertDocumentAuthors(Connection conn, List<Document> docs) throws SQLException {
+		try ( PreparedStatement stmt = conn.prepareStatement(INSERT_DOC_AUTHOR);){
+			int count = 0;
+			for( Document doc : docs ){
+				if ( doc.getAuthors() == null )
+					continue;
+				for( Author aut : doc.getAuthors() ){
+					if ( doc.getDocId() <= 0 || aut.getAuthorId() <= 0 )
+						continue;
+					stmt.setLong(1, doc.getDocId());
+					stmt.setLong(2,aut.getAuthorId());
+					stmt.addBatch();
+
+					if (++count % batchSize == 0){
+						stmt.executeBatch();
+					}
+				}
+			}
+			stmt.executeBatch();
+		}
+	}
+
+	/**
+	 * Adiciona citações docId -> ref para cada referência dada.
+	 * @param conn conexão com o banco de dados.
+	 * @param docId id do documento que faz a citação.
+	 * @param refs documentos citados (já inseridos).
+	 * @throws SQLException erro ao executar inserção.
+	 */
+	private void insertCitations(Connection conn, long docId, List<Document> refs) throws SQLException {
+		try ( PreparedStatement stmt = conn.prepareStatement(INSERT_REFERENCE);){
+			int count = 0;
+			for( Document ref : refs ){
+				if ( ref.getDocId() > 0 && ref.getDocId() != docId ){
+					stmt.setLong(1, docId);
+					stmt.setLong(2, ref.getDocId());
+					stmt.addBatch();
+
+					if (++count % batchSize == 0){
+						stmt.executeBatch();
+					}
+				}
+			}
+			stmt.executeBatch();
+		}
+	}
+
+	/**
+	 * Remove documento da base de dados.
+	 * @param id id do documento a ser removido.
+	 * @throws Exception erro ao executar remoção.
 	 */
 	public void deleteDocument(long id) throws Exception {
 		try ( Connection conn = db.getConnection();){
 			PreparedStatement stmt = conn.prepareStatement(DELETE_DOC);
 			stmt.setLong(1, id);
 			stmt.executeUpdate();
+			docIdCache.removeId(id);
+		}catch( Exception e){
+			throw e;
+		}
+	}
+
+	/**
+	 * Adiciona uma referência ao banco de dados.
+	 * <p>Este método irá adicionar o documento de referência
+	 * caso não exista no bando de dados e adicionar citação
+	 * docId -> ref</p>
+	 * @param docId id do documento que faz a citação.
+	 * @param ref documento citado.
+	 * @throws Exception erro ao executar inserção.
+	 */
+	public void addReference(long docId, Document ref) throws Exception {
+		addReferences(docId, Arrays.asList(ref));
+	}
+
+	/**
+	 * Adiciona todos as referência de um documento ao banco de dados
+	 * em uma única transação. 
+	 * @param docId id do documento que faz a citação
+	 * @param refs documentos citados. 
+	 * @throws Exception erro ao executar inserção.
+	 */
+	public void addReferences(long docId, List<Document> refs) throws Exception {
+		Connection conn = null;
+		try {
+			conn = db.getConnection();
+			conn.setAutoCommit(false);
+
+			insertDocuments(conn, refs, true);
+			insertAuthors(conn, refs);
+			insertDocumentAuthors(conn, refs);
+			insertCitations(conn, docId, refs);
+
+			conn.commit();
+			cacheIds(refs);
+
+		}catch( Exception e){
+			if ( conn != null )
+				conn.rollback();
+			throw e;
+		}finally {
+			if ( conn != null )
+				conn.close();
+		}
+	}
+
+	/**
+	 * Estimativa do número de valores não nulos para o número de
+	 * linhas dado (64 termos por documento), limitada ao tamanho
+	 * máximo de um vetor.
+	 * @param rows número de linhas.
+	 * @return capacidade inicial de valores não nulos.
+	 */
+	private static int nonZeroHint(int rows) {
+		return (int) Math.min(Integer.MAX_VALUE - 8, 64L * rows);
+	}
+
+	/**
+	 * Constroi matrix esparsa de frequência de termos (bag of words). 
+	 * Os vetores de termos dos documentos (<code>term_ids</code>/<code>term_freqs</code>)
+	 * são lidos com cursor no servidor e cada linha é adicionada diretamente
+	 * à matriz ({@link SparseMatrixBuilder}).
+	 * @param conn conexão (transação) utilizada.
+	 * @param where clause WHERE em SQL para filtragem de documentos por id's.
+	 * @param columns mapeamento term_id -&gt; indice da coluna na matrix de frequência.
+	 * @param numberOfColumns número de colunas (termos).
+	 * @param expectedRows número estimado de documentos (linhas).
+	 * @param tfidfCalc cálculo do TF-IDF (IDF pré-calculado por coluna).
+	 * @return linhas da matriz e id's dos documentos, em ordem de doc_id.
+	 * @throws Exception erro ao executar consulta.
+	 */
+	private ShardRows<SparseMatrixBuilder> buildFrequencyMatrix(Connection conn, String where, int[] columns, 
+			int numberOfColumns, int expectedRows, TFIDF tfidfCalc) throws Exception {
+		String sql = "SELECT doc_id, term_ids, term_freqs FROM documents" + where + " ORDER BY doc_id";
+
+		try ( Statement stmt = conn.createStatement();){
+			stmt.setFetchSize(fetchSize);
+			ResultSet rs = stmt.executeQuery(sql);
+			
+			ShardRows<SparseMatrixBuilder> shard = new ShardRows<>(
+					new SparseMatrixBuilder(numberOfColumns, expectedRows, nonZeroHint(expectedRows)), expectedRows);
+			FrequencyParser parser = new FrequencyParser(columns, tfidfCalc);
+			while( rs.next() ){
+				shard.docIds.add(rs.getLong(1));
+				parser.addRow(rs.getString(2), rs.getString(3), shard.rows);
+			}
+			rs.close();
+			
+			return shard;
+			
 		}catch( Exception e){
 			throw e;
 		}
 	}
 
 	/**
-	 * Adiciona uma referência ao banco de dados.
-	 * <p>Este método irá adicionar o documento de referência
-	 * caso não exista no bando de dados e adicionar citação
-	 * docId -> ref</p>
-	 * @param docId id do documento que faz a citação.
-	 * @param ref documento citado.
-	 * @throws Exception erro ao executar inserção.
+	 * Conversão das frequências de um documento (<code>term_ids</code>,
+	 * <code>term_freqs</code>) em uma linha da matriz TF-IDF, com buffers
+	 * reutilizados entre documentos.
 	 */
-	public void addReference(long docId, Document ref) throws Exception {
-		//Insere referencia do banco de dados
-		long refId = addDocument(ref);
-		if ( refId > 0){
-			// Em caso de sucesso, adiciona citação
-			try ( Connection conn = db.getConnection();){
-				PreparedStatement stmt = conn.prepareStatement(INSERT_REFERENCE);
-				stmt.setLong(1, docId);
-				stmt.setLong(2, refId);
-				stmt.executeUpdate();
-			}catch( Exception e){
-				throw e;
+	private static final class FrequencyParser {
+
+		private final int[] columns;
+
+		private final TFIDF tfidfCalc;
+
+		private int[] ids = new int[256];
+
+		private double[] freqs = new double[256];
+
+		FrequencyParser(int[] columns, TFIDF tfidfCalc) {
+			this.columns = columns;
+			this.tfidfCalc = tfidfCalc;
+		}
+
+		void addRow(String idsText, String freqsText, SparseMatrixBuilder matrix) {
+			int size = PgArrays.size(idsText);
+			if ( size > ids.length ){
+				ids = new int[size];
+				freqs = new double[size];
+			}
+			size = PgArrays.parseInts(idsText, ids);
+			PgArrays.parseDoubles(freqsText, freqs);
+			
+			for(int k = 0; k < size; k++){
+				int id = ids[k];
+				if ( id >= columns.length || columns[id] < 0 )
+					continue;
+				int col = columns[id];
+				double freq = freqs[k];
+				
+				double tfidf = tfidfCalc.calculate(freq, col);
+				if ( freq != 0 )
+					tfidf += Logarithms.log(freq);
+				matrix.add(col, tfidf);
 			}
+			matrix.endRow();
 		}
 	}
 
 	/**
-	 * Adiciona todos as referência de um documento ao banco de dados. 
-	 * @param docId id do documento que faz a citação
-	 * @param refs documentos citados. 
-	 * @throws Exception erro ao executar inserção.
+	 * Consumidor dos lotes de documentos lidos por
+	 * {@link DatabaseService#streamFrequencyMatrix(Vocabulary, TFIDF, int, ChunkConsumer)}.
 	 */
-	public void addReferences(long docId, List<Document> refs) throws Exception {
-		long[] refIds = addDocuments(refs);
-		try ( Connection conn = db.getConnection();){
-			PreparedStatement stmt = conn.prepareStatement(INSERT_REFERENCE);
-			for(int i = 0; i < refIds.length; i++){
-				if ( refIds[i] > 0){
-					stmt.setLong(1, docId);
-					stmt.setLong(2, refIds[i]);
-					stmt.addBatch();
-				}
-			}
-			stmt.executeBatch();
-		}catch( Exception e){
-			throw e;
-		}
+	@FunctionalInterface
+	public interface ChunkConsumer {
+
+		/**
+		 * Processa um lote de documentos.
+		 * @param docIds id's dos documentos do lote, em ordem crescente.
+		 * @param matrix matriz de frequência (CSR) do lote: a linha
+		 * <code>i</code> corresponde a <code>docIds[i]</code>.
+		 * @throws Exception erro ao processar lote.
+		 */
+		void accept(long[] docIds, DoubleMatrix2D matrix) throws Exception;
 	}
 
 	/**
-	 * Retorna mapa com contagem do numero de documentos que um termo ocorre, 
-	 * ou seja, numero de documentos que um termo apareceu.
-	 * @param where parte da consultam em SQL indicando id's do documentos a serem
-	 * considerados ou <code>null</code> para todos os documentos.
-	 * @return mapa de termos ordenados pela contagem absoluta.
-	 * @throws Exception
+	 * Matriz de frequência e id's dos documentos de cada linha, lidos
+	 * na mesma consulta (ver {@link DatabaseService#readFrequencyMatrix(Vocabulary, TFIDF)}).
 	 */
-	private TreeMap<String, Integer> getTermsCounts(String where) throws Exception {
-		try ( Connection conn = db.getConnection();){
-
-			String sql = "SELECT word,ndoc FROM ts_stat('SELECT tsv FROM documents";
-			if ( where != null && !where.isEmpty() )
-				sql += where;
-			sql += "') WHERE nentry > 1 AND ndoc > 1";
+	public static final class DocumentMatrix {
+
+		private final long[] docIds;
+
+		private final DoubleMatrix2D matrix;
+
+		/**
+		 * Cria nova instância.
+		 * @param docIds id's dos documentos, em ordem crescente.
+		 * @param matrix matriz de frequência: a linha <code>i</code>
+		 * corresponde a <code>docIds[i]</code>.
+		 * @throws IllegalArgumentException número de linhas diferente do
+		 * número de documentos.
+		 */
+		public DocumentMatrix(long[] docIds, DoubleMatrix2D matrix) {
+			if ( docIds.length != matrix.rows() )
+				throw new IllegalArgumentException("Documents: " + docIds.length + " != rows: " + matrix.rows());
+			this.docIds = docIds;
+			this.matrix = matrix;
+		}
 
-			Statement stmt = conn.createStatement();
-			ResultSet rs = stmt.executeQuery(sql);
-			TreeMap<String,Integer> termsCount = new TreeMap<>();
-			while( rs.next() ){
-				String term = rs.getString("word");
-				int ndoc = rs.getInt("ndoc");
-				termsCount.put(term, ndoc);
-			}
-			return termsCount;
+		public long[] getDocIds() {
+			return docIds;
+		}
 
-		}catch( Exception e){
-			throw e;
+		public DoubleMatrix2D getMatrix() {
+			return matrix;
 		}
 	}
 
 	/**
-	 * Constroi matrix de frequência de termos (bag of words). 
-	 * @param matrix matrix de frequência de termos já inicializada
-	 * @param termsCount mapa com os termos ordenados por frequência. 
-	 * @param termsToColumnMap mapa de termos para indice da coluna na matrix de frequência.
-	 * @param where clause WHERE em SQL para filtragem de documentos por id's.
-	 * @param normalize se <code>true</code> a frequência de cada termo será normalizada,
-	 * caso contrário a frequência absoluta é considerada.
-	 * @throws Exception erro ao executar consulta.
+	 * Lê a matriz de frequência de todos os documentos em lotes de
+	 * <code>chunkSize</code> linhas, em ordem de doc_id, com um único cursor
+	 * no servidor. Somente um lote é mantido em memória: cada lote é
+	 * entregue ao consumidor antes da leitura do próximo.
+	 * @param vocabulary vocabulário (colunas da matriz).
+	 * @param tfidfCalc cálculo do TF-IDF.
+	 * @param chunkSize número de documentos por lote.
+	 * @param consumer processamento de cada lote.
+	 * @return número de documentos lidos.
+	 * @throws Exception erro ao executar consulta ou ao processar lote.
 	 */
-	private void buildFrequencyMatrix(DoubleMatrix2D matrix, Map<String, Integer> termsCount,
-			Map<String, Integer> termsToColumnMap, String where, boolean normalize, TFIDF tfidfCalc) throws Exception {
-		try ( Connection conn = db.getConnection();){
+	public int streamFrequencyMatrix(Vocabulary vocabulary, TFIDF tfidfCalc, int chunkSize, 
+			ChunkConsumer consumer) throws Exception {
+		return streamFrequencyMatrix(DOCUMENT_FREQUENCIES, -1, vocabulary, tfidfCalc, chunkSize, consumer);
+	}
+
+	/**
+	 * Lê em lotes a matriz de frequência dos documentos a serem projetados
+	 * incrementalmente (ver {@link #getDocumentsToProject(long)}).
+	 * @param lastDocId maior doc_id projetado na execução.
+	 * @param vocabulary vocabulário (colunas da matriz).
+	 * @param tfidfCalc cálculo do TF-IDF.
+	 * @param chunkSize número de documentos por lote.
+	 * @param consumer processamento de cada lote.
+	 * @return número de documentos lidos.
+	 * @throws Exception erro ao executar consulta ou ao processar lote.
+	 * @see #streamFrequencyMatrix(Vocabulary, TFIDF, int, ChunkConsumer)
+	 */
+	public int streamFrequencyMatrix(long lastDocId, Vocabulary vocabulary, TFIDF tfidfCalc, int chunkSize, 
+			ChunkConsumer consumer) throws Exception {
+		return streamFrequencyMatrix(NEW_DOCUMENT_FREQUENCIES, lastDocId, vocabulary, tfidfCalc, chunkSize, consumer);
+	}
 
-			String sql = "SELECT freqs FROM documents";
-			if ( where != null)
-				sql += where;
-			sql += " ORDER BY doc_id";
+	private int streamFrequencyMatrix(String sql, long lastDocId, Vocabulary vocabulary, TFIDF tfidfCalc, 
+			int chunkSize, ChunkConsumer consumer) throws Exception {
 
-			Statement stmt = conn.createStatement();
-			ResultSet rs = stmt.executeQuery(sql);
-			int doc = 0;
-			
-			// Numero de documentos
-			int n = matrix.rows();
-			ObjectMapper mapper = new ObjectMapper();
-			
-			while( rs.next() ){
-				String terms = rs.getString("freqs");
-				if ( terms != null && !terms.isEmpty() ){
-					
-					List<Map<String,Object>> t = mapper.readValue(terms, 
-							new TypeReference<List<Map<String,Object>>>(){});
-					
-					for(Map<String,Object> o : t){
-						String term = (String) o.get("word");
-						if ( termsToColumnMap.containsKey(term)){
-							double freq = ((Number) o.get("nentry")).doubleValue();
-							
-							double tfidf = tfidfCalc.calculate(freq, n, term);
-							if ( freq != 0 )
-								tfidf += Math.log(freq);
-							
-							int col = termsToColumnMap.get(term);
-							matrix.setQuick(doc, col, tfidf);	
+		// IDF pré-calculado por coluna (documentos considerados no vocabulário)
+		tfidfCalc.setDocumentFrequencies(vocabulary.getNumberOfDocuments(), vocabulary.getDocumentFrequencies());
+		FrequencyParser parser = new FrequencyParser(vocabulary.getColumnIndex(), tfidfCalc);
+
+		int count = 0;
+		try ( Connection conn = db.getConnection();){
+			conn.setAutoCommit(false);
+			try ( PreparedStatement stmt = conn.prepareStatement(sql);){
+				stmt.setFetchSize(Math.min(fetchSize, chunkSize));
+				if ( lastDocId >= 0 )
+					stmt.setLong(1, lastDocId);
+				try ( ResultSet rs = stmt.executeQuery();){
+					long[] docIds = new long[chunkSize];
+					SparseMatrixBuilder matrix = null;
+					int rows = 0;
+					while( rs.next() ){
+						if ( matrix == null )
+							matrix = new SparseMatrixBuilder(vocabulary.size(), chunkSize, nonZeroHint(chunkSize));
+						docIds[rows++] = rs.getLong(1);
+						parser.addRow(rs.getString(2), rs.getString(3), matrix);
+						if ( rows == chunkSize ){
+							consumer.accept(docIds.clone(), matrix.build(rows));
+							count += rows;
+							matrix = null;
+							rows = 0;
 						}
 					}
+					if ( rows > 0 ){
+						consumer.accept(Arrays.copyOf(docIds, rows), matrix.build(rows));
+						count += rows;
+					}
 				}
-				++doc;
 			}
-			
+			conn.commit();
 		}catch( Exception e){
 			throw e;
 		}
+		return count;
 	}
 
 	/**
 	 * Atualiza projeção dos documentos
 	 * @param y matrix de projeção N x 2, onde N é o 
 	 * número de documentos.
+	 * @throws IllegalArgumentException número de linhas diferente do
+	 * número de documentos.
 	 * @throws Exception erro ao executar atualização.
 	 */
 	public void updateXYProjections(DoubleMatrix2D y) throws Exception {
+		long[] docIds = getDocumentIds();
+		if ( docIds.length != y.rows() )
+			throw new IllegalArgumentException("Documents: " + docIds.length + " != projections: " + y.rows());
+		updateXYProjections(docIds, y);
+	}
+
+	/**
+	 * Atualiza projeção dos documentos dados.
+	 * <p>As coordenadas são copiadas para uma tabela temporária e
+	 * aplicadas em lotes de <code>db.update_batch_size</code> documentos
+	 * ({@link BulkUpdater}).</p>
+	 * @param docIds id's dos documentos.
+	 * @param y matrix de projeção N x 2, onde a linha <code>i</code>
+	 * corresponde ao documento <code>docIds[i]</code>.
+	 * @throws Exception erro ao executar atualização.
+	 */
+	public void updateXYProjections(long[] docIds, DoubleMatrix2D y) throws Exception {
 		Connection conn = null;
 		try { 
 			conn = db.getConnection();
 			conn.setAutoCommit(false);
 
-			PreparedStatement pstmt = conn.prepareStatement(UPDATE_XY);
-			Statement stmt = conn.createStatement();
-			ResultSet rs = stmt.executeQuery("SELECT doc_id FROM documents ORDER BY doc_id");
-			int doc = 0;
-			while( rs.next() ){
-				long id = rs.getLong("doc_id");
-				pstmt.setDouble(1, y.get(doc, 0));
-				pstmt.setDouble(2, y.get(doc, 1));
-				pstmt.setLong(3, id);
-				pstmt.addBatch();
-				++doc;
+			try ( BulkUpdater updater = new BulkUpdater(conn, updateBatchSize, "x", "y");){
+				for(int doc = 0; doc < docIds.length; doc++)
+					updater.add(docIds[doc], y.getQuick(doc, 0), y.getQuick(doc, 1));
+			}
+			conn.commit();
+
+		}catch( Exception e){
+			if ( conn != null )
+				conn.rollback();
+			throw e;
+		}finally {
+			if ( conn != null )
+				conn.close();
+		}
+	}
+
+	/**
+	 * Atualiza projeção somente dos documentos dados cuja projeção foi
+	 * alterada: a projeção atual é lida (cursor no servidor, intervalo de
+	 * doc_id's dos documentos dados) e somente documentos sem projeção ou
+	 * cuja coordenada x ou y (<code>real</code>) difere mais que
+	 * <code>epsilon</code> são atualizados.
+	 * @param docIds id's dos documentos, em ordem crescente.
+	 * @param y matrix de projeção N x 2, onde a linha <code>i</code>
+	 * corresponde ao documento <code>docIds[i]</code>.
+	 * @param epsilon diferença mínima para atualização (0 = somente
+	 * coordenadas diferentes).
+	 * @return número de documentos atualizados.
+	 * @throws Exception erro ao executar atualização.
+	 */
+	public int updateXYProjections(long[] docIds, DoubleMatrix2D y, double epsilon) throws Exception {
+		if ( docIds.length == 0 )
+			return 0;
+
+		Connection conn = null;
+		try { 
+			conn = db.getConnection();
+			conn.setAutoCommit(false);
 
-				if ( doc % 50 == 0)
-					pstmt.executeBatch();
+			// Projeção atual de cada documento (NaN = sem projeção)
+			float[] current = new float[2 * docIds.length];
+			Arrays.fill(current, Float.NaN);
+			try ( PreparedStatement stmt = conn.prepareStatement(XY_PROJECTIONS_RANGE);){
+				stmt.setFetchSize(fetchSize);
+				stmt.setLong(1, docIds[0]);
+				stmt.setLong(2, docIds[docIds.length - 1]);
+				try ( ResultSet rs = stmt.executeQuery();){
+					int doc = 0;
+					while( rs.next() ){
+						long docId = rs.getLong(1);
+						while( doc < docIds.length && docIds[doc] < docId )
+							doc++;
+						if ( doc == docIds.length )
+							break;
+						if ( docIds[doc] != docId )
+							continue;
+						float x = rs.getFloat(2);
+						if ( !rs.wasNull() ){
+							float v = rs.getFloat(3);
+							if ( !rs.wasNull() ){
+								current[2 * doc] = x;
+								current[2 * doc + 1] = v;
+							}
+						}
+					}
+				}
 			}
 
-			pstmt.executeBatch();
+			int count;
+			try ( BulkUpdater updater = new BulkUpdater(conn, updateBatchSize, "x", "y");){
+				for(int doc = 0; doc < docIds.length; doc++){
+					float x = (float) y.getQuick(doc, 0), v = (float) y.getQuick(doc, 1);
+					if ( Float.isNaN(current[2 * doc]) || Math.abs(x - current[2 * doc]) > epsilon 
+							|| Math.abs(v - current[2 * doc + 1]) > epsilon )
+						updater.add(docIds[doc], y.getQuick(doc, 0), y.getQuick(doc, 1));
+				}
+				updater.flush();
+				count = updater.getUpdated();
+			}
 			conn.commit();
+			return count;
 
 		}catch( Exception e){
 			if ( conn != null )
@@ -617,6 +1928,64 @@ public class DatabaseService {
 		}
 	}
 
+	/**
+	 * Retorna projeção atual dos documentos dados.
+	 * @param docIds id's dos documentos.
+	 * @return matriz N x 2, onde a linha <code>i</code> corresponde ao
+	 * documento <code>docIds[i]</code> (<code>NaN</code> para documentos
+	 * sem projeção).
+	 * @throws Exception erro ao executar consulta.
+	 */
+	public DoubleMatrix2D getXYProjections(long[] docIds) throws Exception {
+		Map<Long, Integer> index = new HashMap<>(2 * docIds.length);
+		Long[] ids = new Long[docIds.length];
+		for(int i = 0; i < docIds.length; i++){
+			index.put(docIds[i], i);
+			ids[i] = docIds[i];
+		}
+
+		DoubleMatrix2D y = new DenseDoubleMatrix2D(docIds.length, 2);
+		y.assign(Double.NaN);
+		try ( Connection conn = db.getConnection();
+				PreparedStatement stmt = conn.prepareStatement(XY_PROJECTIONS_BY_ID);){
+			stmt.setArray(1, conn.createArrayOf("int8", ids));
+			try ( ResultSet rs = stmt.executeQuery();){
+				while( rs.next() ){
+					int i = index.get(rs.getLong(1));
+					double x = rs.getDouble(2);
+					if ( rs.wasNull() )
+						continue;
+					double v = rs.getDouble(3);
+					if ( rs.wasNull() )
+						continue;
+					y.setQuick(i, 0, x);
+					y.setQuick(i, 1, v);
+				}
+			}
+		}catch( Exception e){
+			throw e;
+		}
+		return y;
+	}
+
+	/**
+	 * Inicia projeção em lotes cujos limites só são conhecidos ao final:
+	 * as coordenadas dos lotes são mantidas em uma tabela temporária, em
+	 * uma conexão exclusiva, e aplicadas normalizadas em uma única
+	 * transação ({@link ProjectionStaging#apply(double[], double)}).
+	 * @return projeção em lotes, a ser fechada ao final.
+	 * @throws Exception erro ao criar tabela temporária.
+	 */
+	public ProjectionStaging stageXYProjections() throws Exception {
+		Connection conn = db.getConnection();
+		try {
+			return new ProjectionStaging(conn);
+		}catch( Exception e){
+			conn.close();
+			throw e;
+		}
+	}
+
 	/**
 	 * Retorna grafo de citação
 	 * @return grafo direcionado com citações.
@@ -649,6 +2018,267 @@ public class DatabaseService {
 		}
 	}
 
+	/**
+	 * Retorna grafo de citação em formato compacto (CSR/CSC).
+	 * <p>As citações são lidas com cursor no servidor (<code>db.fetch_size</code>
+	 * linhas por vez) e armazenadas em vetores primitivos, sem objetos
+	 * por vértice ou aresta.</p>
+	 * @return grafo de citações.
+	 * @throws Exception erro ao executar consulta.
+	 */
+	public CitationGraph loadCitationGraph() throws Exception {
+		try ( Connection conn = db.getConnection();){
+			// Cursor no servidor requer transação
+			conn.setAutoCommit(false);
+
+			try ( Statement stmt = conn.createStatement();){
+				stmt.setFetchSize(fetchSize);
+				try ( ResultSet rs = stmt.executeQuery("SELECT doc_id, ref_id FROM citations");){
+					CitationGraph.Builder builder = new CitationGraph.Builder(fetchSize);
+					while( rs.next() ){
+						builder.addEdge(rs.getLong(1), rs.getLong(2));
+					}
+					return builder.build();
+				}
+			}
+		}catch( Exception e){
+			throw e;
+		}
+	}
+
+	/**
+	 * Retorna estado atual da tabela de citações.
+	 * @return vetor com maior id e número de citações.
+	 * @throws Exception erro ao executar consulta.
+	 */
+	public long[] getCitationsState() throws Exception {
+		try ( Connection conn = db.getConnection();
+				Statement stmt = conn.createStatement();
+				ResultSet rs = stmt.executeQuery(CITATIONS_STATE);){
+			rs.next();
+			return new long[]{ rs.getLong(1), rs.getLong(2) };
+		}catch( Exception e){
+			throw e;
+		}
+	}
+
+	/**
+	 * Retorna estado da tabela de citações registrado
+	 * na última execução do PageRank.
+	 * @return vetor com maior id e número de citações ou <code>null</code>
+	 * caso o PageRank nunca tenha sido executado.
+	 * @throws Exception erro ao executar consulta.
+	 * @see #addPageRankRun(long[], int, int, double, int)
+	 */
+	public long[] getLastPageRankRun() throws Exception {
+		try ( Connection conn = db.getConnection();
+				Statement stmt = conn.createStatement();
+				ResultSet rs = stmt.executeQuery(LAST_PAGERANK_RUN);){
+			if ( rs.next() )
+				return new long[]{ rs.getLong(1), rs.getLong(2) };
+			return null;
+		}catch( Exception e){
+			throw e;
+		}
+	}
+
+	/**
+	 * Verifica se a tabela dada existe no esquema atual (ex: tabelas
+	 * de registro de execução, ausentes em bases anteriores).
+	 * @param table nome da tabela.
+	 * @return <code>true</code> caso a tabela exista.
+	 * @throws Exception erro ao executar consulta.
+	 */
+	public boolean hasTable(String table) throws Exception {
+		try ( Connection conn = db.getConnection();
+				PreparedStatement stmt = conn.prepareStatement(TABLE_EXISTS);){
+			stmt.setString(1, table);
+			try ( ResultSet rs = stmt.executeQuery();){
+				return rs.next();
+			}
+		}catch( Exception e){
+			throw e;
+		}
+	}
+
+	/**
+	 * Registra execução do PageRank.
+	 * @param citationsState estado da tabela de citações utilizado no cálculo
+	 * ({@link #getCitationsState()}).
+	 * @param numDocuments número de documentos no grafo.
+	 * @param iterations número de iterações realizadas.
+	 * @param delta diferença (norma L1) na última iteração.
+	 * @param updated número de documentos atualizados.
+	 * @throws Exception erro ao executar inserção.
+	 */
+	public void addPageRankRun(long[] citationsState, int numDocuments, int iterations, double delta, 
+			int updated) throws Exception {
+		try ( Connection conn = db.getConnection();
+				PreparedStatement stmt = conn.prepareStatement(INSERT_PAGERANK_RUN);){
+			stmt.setLong(1, citationsState[0]);
+			stmt.setLong(2, citationsState[1]);
+			stmt.setInt(3, numDocuments);
+			stmt.setInt(4, iterations);
+			stmt.setDouble(5, delta);
+			stmt.setInt(6, updated);
+			stmt.executeUpdate();
+		}catch( Exception e){
+			throw e;
+		}
+	}
+
+	/**
+	 * Retorna relevâncias armazenadas para os documentos do grafo.
+	 * @param graph grafo de citações.
+	 * @return relevância de cada vértice do grafo (0 para documentos
+	 * sem relevância calculada).
+	 * @throws Exception erro ao executar consulta.
+	 */
+	public double[] getRelevances(CitationGraph graph) throws Exception {
+		double[] scores = new double[graph.numVertices()];
+		try ( Connection conn = db.getConnection();){
+			conn.setAutoCommit(false);
+			try ( Statement stmt = conn.createStatement();){
+				stmt.setFetchSize(fetchSize);
+				try ( ResultSet rs = stmt.executeQuery("SELECT doc_id, relevance FROM documents_data "
+						+ "WHERE relevance > 0");){
+					while( rs.next() ){
+						int v = graph.indexOf(rs.getLong(1));
+						if ( v >= 0 )
+							scores[v] = rs.getDouble(2);
+					}
+				}
+			}
+		}catch( Exception e){
+			throw e;
+		}
+		return scores;
+	}
+
+	/**
+	 * Retorna relevância armazenada de todos os documentos, em ordem
+	 * de doc_id (mesma ordem das linhas da matriz de frequência).
+	 * @return relevância de cada documento (0 caso não calculada).
+	 * @throws Exception erro ao executar consulta.
+	 */
+	public double[] getRelevances() throws Exception {
+		try ( Connection conn = db.getConnection();){
+			conn.setAutoCommit(false);
+			try ( Statement stmt = conn.createStatement();){
+				stmt.setFetchSize(fetchSize);
+				try ( ResultSet rs = stmt.executeQuery("SELECT coalesce(dd.relevance, 0) FROM documents d "
+						+ "LEFT JOIN documents_data dd ON dd.doc_id = d.doc_id ORDER BY d.doc_id");){
+					double[] scores = new double[1024];
+					int n = 0;
+					while( rs.next() ){
+						if ( n == scores.length )
+							scores = Arrays.copyOf(scores, n * 2);
+						scores[n++] = rs.getDouble(1);
+					}
+					return Arrays.copyOf(scores, n);
+				}
+			}
+		}catch( Exception e){
+			throw e;
+		}
+	}
+
+	/**
+	 * Retorna relevância armazenada dos documentos dados.
+	 * @param docIds id's dos documentos.
+	 * @return relevância de cada documento, na ordem de <code>docIds</code>
+	 * (0 caso não calculada).
+	 * @throws Exception erro ao executar consulta.
+	 */
+	public double[] getRelevances(long[] docIds) throws Exception {
+		Map<Long, Integer> index = new HashMap<>(2 * docIds.length);
+		Long[] ids = new Long[docIds.length];
+		for(int i = 0; i < docIds.length; i++){
+			index.put(docIds[i], i);
+			ids[i] = docIds[i];
+		}
+
+		double[] scores = new double[docIds.length];
+		try ( Connection conn = db.getConnection();
+				PreparedStatement stmt = conn.prepareStatement(RELEVANCES_BY_ID);){
+			stmt.setArray(1, conn.createArrayOf("int8", ids));
+			try ( ResultSet rs = stmt.executeQuery();){
+				while( rs.next() )
+					scores[index.get(rs.getLong(1))] = rs.getDouble(2);
+			}
+		}catch( Exception e){
+			throw e;
+		}
+		return scores;
+	}
+
+	/**
+	 * Atualiza relevância somente dos documentos cuja relevância
+	 * foi alterada.
+	 * @param graph grafo de citações (compacto).
+	 * @param scores relevância de cada vértice do grafo.
+	 * @param previous relevância anterior de cada vértice do grafo.
+	 * @param epsilon diferença mínima para atualização.
+	 * @return número de documentos atualizados.
+	 * @throws Exception erro ao executar atualização.
+	 */
+	public int updatePageRank(CitationGraph graph, double[] scores, double[] previous, double epsilon) 
+			throws Exception {
+		Connection conn = null;
+		try { 
+			conn = db.getConnection(); 
+			conn.setAutoCommit(false);
+
+			int count;
+			try ( BulkUpdater updater = new BulkUpdater(conn, updateBatchSize, "relevance");){
+				for(int v = 0; v < graph.numVertices(); v++){
+					if ( Math.abs(scores[v] - previous[v]) > epsilon )
+						updater.add(graph.getDocId(v), scores[v]);
+				}
+				updater.flush();
+				count = updater.getUpdated();
+			}
+			conn.commit();
+			return count;
+
+		}catch( Exception e){
+			if ( conn != null )
+				conn.rollback();
+			throw e;
+		}finally {
+			if ( conn != null )
+				conn.close();
+		}
+	}
+
+	/**
+	 * Atualiza relevância dos documentos.
+	 * @param graph grafo de citações (compacto).
+	 * @param scores relevância de cada vértice do grafo.
+	 * @throws Exception erro ao executar atualização.
+	 */
+	public void updatePageRank(CitationGraph graph, double[] scores) throws Exception {
+		Connection conn = null;
+		try { 
+			conn = db.getConnection(); 
+			conn.setAutoCommit(false);
+
+			try ( BulkUpdater updater = new BulkUpdater(conn, updateBatchSize, "relevance");){
+				for(int v = 0; v < graph.numVertices(); v++)
+					updater.add(graph.getDocId(v), scores[v]);
+			}
+			conn.commit();
+
+		}catch( Exception e){
+			if ( conn != null )
+				conn.rollback();
+			throw e;
+		}finally {
+			if ( conn != null )
+				conn.close();
+		}
+	}
+
 	/**
 	 * Atualiza relevância dos documentos.
 	 * @param graph grafo de citações.
@@ -661,19 +2291,10 @@ public class DatabaseService {
 			conn = db.getConnection(); 
 			conn.setAutoCommit(false);
 
-			PreparedStatement pstmt = conn.prepareStatement(UPDATE_RELEVANCE);
-			int i = 0;
-			for(Long docId : graph.getVertices()){
-				pstmt.setDouble(1, pageRank.getVertexScore(docId));
-				pstmt.setLong(2, docId);
-				pstmt.addBatch();
-				++i;
-
-				if (i % 50 == 0)
-					pstmt.executeBatch();
+			try ( BulkUpdater updater = new BulkUpdater(conn, updateBatchSize, "relevance");){
+				for(Long docId : graph.getVertices())
+					updater.add(docId, pageRank.getVertexScore(docId));
 			}
-
-			pstmt.executeBatch();
 			conn.commit();
 
 		}catch( Exception e){
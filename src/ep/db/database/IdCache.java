@@ -0,0 +1,76 @@
+package ep.db.database;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache limitado (LRU) de chaves naturais para id's
+ * no banco de dados (ex: DOI -> doc_id, nome do autor -> aut_id).
+ * @version 1.0
+ * @since 2017
+ *
+ */
+class IdCache {
+
+	/**
+	 * Mapa ordenado por acesso
+	 */
+	private final LinkedHashMap<String, Long> map;
+
+	/**
+	 * Cria novo cache com capacidade máxima dada.
+	 * @param capacity número máximo de entradas (valores &lt;= 0
+	 * desabilitam o cache).
+	 */
+	IdCache(final int capacity) {
+		this.map = new LinkedHashMap<String, Long>(16, 0.75f, true){
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * Retorna id associado a chave.
+	 * @param key chave natural.
+	 * @return id ou <code>-1</code> caso não esteja no cache.
+	 */
+	synchronized long get(String key) {
+		if ( key == null )
+			return -1;
+		Long id = map.get(key);
+		return id != null ? id : -1;
+	}
+
+	/**
+	 * Adiciona mapeamento chave -> id ao cache.
+	 * @param key chave natural.
+	 * @param id id no banco de dados.
+	 */
+	synchronized void put(String key, long id) {
+		if ( key != null && id > 0 )
+			map.put(key, id);
+	}
+
+	/**
+	 * Remove todas as entradas com o id dado.
+	 * @param id id removido do banco de dados.
+	 */
+	synchronized void removeId(long id) {
+		for( Iterator<Long> it = map.values().iterator(); it.hasNext(); ){
+			if ( it.next() == id )
+				it.remove();
+		}
+	}
+
+	/**
+	 * Remove todas as entradas.
+	 */
+	synchronized void clear() {
+		map.clear();
+	}
+}
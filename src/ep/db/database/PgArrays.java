@@ -0,0 +1,91 @@
+package ep.db.database;
+
+/**
+ * Leitura de vetores numéricos do PostgreSQL (<code>int4[]</code>,
+ * <code>float4[]</code>) a partir da sua representação textual
+ * (ex: <code>{1,2,3}</code>), sem criação de objetos por elemento
+ * (como ocorre com {@link java.sql.Array}).
+ * @version 1.0
+ * @since 2017
+ *
+ */
+final class PgArrays {
+
+	private PgArrays() {
+	}
+
+	/**
+	 * Retorna número de elementos do vetor.
+	 * @param text vetor no formato texto ou <code>null</code>.
+	 * @return número de elementos.
+	 */
+	static int size(String text) {
+		if ( text == null || text.length() <= 2 )
+			return 0;
+		int count = 1;
+		for( int i = 1; i < text.length() - 1; i++ ){
+			if ( text.charAt(i) == ',' )
+				++count;
+		}
+		return count;
+	}
+
+	/**
+	 * Lê vetor de inteiros.
+	 * @param text vetor no formato texto.
+	 * @param dest destino (com pelo menos {@link #size(String)} posições).
+	 * @return número de elementos lidos.
+	 */
+	static int parseInts(String text, int[] dest) {
+		int count = 0;
+		if ( text == null )
+			return 0;
+		final int end = text.length() - 1;
+		int i = 1;
+		while( i < end ){
+			boolean negative = text.charAt(i) == '-';
+			if ( negative )
+				++i;
+			int value = 0;
+			char c;
+			while( i < end && (c = text.charAt(i)) != ',' ){
+				value = 10 * value + (c - '0');
+				++i;
+			}
+			dest[count++] = negative ? -value : value;
+			++i;
+		}
+		return count;
+	}
+
+	/**
+	 * Lê vetor de números reais.
+	 * @param text vetor no formato texto.
+	 * @param dest destino (com pelo menos {@link #size(String)} posições).
+	 * @return número de elementos lidos.
+	 */
+	static int parseDoubles(String text, double[] dest) {
+		int count = 0;
+		if ( text == null )
+			return 0;
+		final int end = text.length() - 1;
+		int i = 1;
+		while( i < end ){
+			int start = i;
+			boolean integer = true;
+			long value = 0;
+			char c;
+			while( i < end && (c = text.charAt(i)) != ',' ){
+				if ( c >= '0' && c <= '9' && i - start < 18 )
+					value = 10 * value + (c - '0');
+				else
+					integer = false;
+				++i;
+			}
+			// Frequências são, em geral, inteiras: evita Double.parseDouble
+			dest[count++] = integer ? value : Double.parseDouble(text.substring(start, i));
+			++i;
+		}
+		return count;
+	}
+}
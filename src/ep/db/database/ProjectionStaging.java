@@ -0,0 +1,149 @@
+package ep.db.database;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+
+/**
+ * Projeção de documentos em lotes cujos limites só são conhecidos ao
+ * final (ver {@link DatabaseService#stageXYProjections()}).
+ * <p>As coordenadas de cada lote, ainda não normalizadas, são copiadas
+ * (<code>COPY ... FROM STDIN</code>) para uma tabela temporária da
+ * conexão, sem alterar <code>documents_data</code>. Ao final a projeção
+ * é normalizada e aplicada em uma única transação
+ * ({@link #apply(double[], double)}): uma falha durante a projeção não
+ * altera as coordenadas e a projeção em andamento não é visível.</p>
+ * @version 1.0
+ * @since 2017
+ *
+ */
+public class ProjectionStaging implements AutoCloseable {
+
+	/**
+	 * Tamanho do buffer de escrita do COPY
+	 */
+	private static final int COPY_BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * SQL para criação da tabela temporária (mantida entre
+	 * os lotes, descartada em {@link #close()})
+	 */
+	private static final String CREATE_STAGING = "CREATE TEMP TABLE stage_projection ("
+			+ "doc_id bigint, x double precision, y double precision)";
+
+	/**
+	 * SQL para normalização no intervalo [-1,1] (<code>(v - min) * scale - offset</code>)
+	 * e atualização somente das projeções alteradas (mais que epsilon,
+	 * em <code>real</code>)
+	 */
+	private static final String APPLY_STAGING = "UPDATE documents_data d SET x = s.x, y = s.y "
+			+ "FROM (SELECT doc_id, ((x - ?) * ? - ?)::real AS x, ((y - ?) * ? - ?)::real AS y "
+			+ "FROM stage_projection) s WHERE d.doc_id = s.doc_id "
+			+ "AND (d.x IS NULL OR d.y IS NULL OR abs(d.x - s.x) > ? OR abs(d.y - s.y) > ?)";
+
+	/**
+	 * Conexão com banco de dados (exclusiva, com <i>auto-commit</i>
+	 * até {@link #apply(double[], double)})
+	 */
+	private final Connection conn;
+
+	/**
+	 * Cria tabela temporária na conexão dada.
+	 * @param conn conexão com o banco de dados, fechada em {@link #close()}.
+	 * @throws SQLException erro ao criar tabela temporária.
+	 */
+	ProjectionStaging(Connection conn) throws SQLException {
+		this.conn = conn;
+		try (Statement stmt = conn.createStatement()){
+			stmt.execute(CREATE_STAGING);
+		}
+	}
+
+	/**
+	 * Adiciona projeção (não normalizada) de um lote de documentos.
+	 * @param docIds id's dos documentos.
+	 * @param y matrix de projeção N x 2, onde a linha <code>i</code>
+	 * corresponde ao documento <code>docIds[i]</code>.
+	 * @throws SQLException erro ao iniciar COPY.
+	 * @throws IOException erro ao enviar dados ao banco de dados.
+	 */
+	public void add(long[] docIds, DoubleMatrix2D y) throws SQLException, IOException {
+		PGCopyOutputStream out = new PGCopyOutputStream(conn.unwrap(PGConnection.class),
+				"COPY stage_projection (doc_id, x, y) FROM STDIN", COPY_BUFFER_SIZE);
+		try ( Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8),
+				COPY_BUFFER_SIZE);){
+			for(int doc = 0; doc < docIds.length; doc++){
+				writer.write(Long.toString(docIds[doc]));
+				writer.write('\t');
+				writer.write(Double.toString(y.getQuick(doc, 0)));
+				writer.write('\t');
+				writer.write(Double.toString(y.getQuick(doc, 1)));
+				writer.write('\n');
+			}
+		}
+	}
+
+	/**
+	 * Normaliza as projeções adicionadas para o intervalo [-1,1] e
+	 * atualiza, em uma única transação, os documentos cuja projeção
+	 * foi alterada. Eixos sem variação (mínimo igual ao máximo, ex: um
+	 * único documento) são normalizados para 0.
+	 * @param bounds mínimo e máximo de x e de y.
+	 * @param epsilon diferença mínima para atualização (0 = somente
+	 * coordenadas diferentes).
+	 * @return número de documentos atualizados.
+	 * @throws SQLException erro ao executar atualização.
+	 */
+	public int apply(double[] bounds, double epsilon) throws SQLException {
+		conn.setAutoCommit(false);
+		try {
+			int count;
+			try (Statement stmt = conn.createStatement()){
+				// Tabelas temporárias não são analisadas automaticamente
+				stmt.execute("ANALYZE stage_projection");
+			}
+			try (PreparedStatement stmt = conn.prepareStatement(APPLY_STAGING)){
+				double rangeX = bounds[1] - bounds[0], rangeY = bounds[3] - bounds[2];
+				stmt.setDouble(1, bounds[0]);
+				stmt.setDouble(2, rangeX > 0 ? 2 / rangeX : 0);
+				stmt.setDouble(3, rangeX > 0 ? 1 : 0);
+				stmt.setDouble(4, bounds[2]);
+				stmt.setDouble(5, rangeY > 0 ? 2 / rangeY : 0);
+				stmt.setDouble(6, rangeY > 0 ? 1 : 0);
+				stmt.setDouble(7, epsilon);
+				stmt.setDouble(8, epsilon);
+				count = stmt.executeUpdate();
+			}
+			conn.commit();
+			return count;
+		} catch (SQLException e) {
+			conn.rollback();
+			throw e;
+		} finally {
+			conn.setAutoCommit(true);
+		}
+	}
+
+	/**
+	 * Descarta tabela temporária e devolve a conexão.
+	 */
+	@Override
+	public void close() throws SQLException {
+		try (Statement stmt = conn.createStatement()){
+			stmt.execute("DROP TABLE IF EXISTS stage_projection");
+		} finally {
+			conn.close();
+		}
+	}
+}
@@ -167,32 +167,28 @@ public class DocumentParserService {
 			// Processa documento utilizando DocumentParser
 			Document doc = parseDocument(file);
 			if (doc != null){
-				// Em caso de sucesso, adiciona ao banco de dados
-				long docId = dbService.addDocument(doc);
-				if ( docId > 0){
-					// Processa referências do documento recém adicionado
-					List<Document> references = parseReferences(file, doc);
-					if ( references != null && ! references.isEmpty() ){
-						references.parallelStream().forEach((ref) -> {
+				// Processa referências do documento
+				List<Document> references = parseReferences(file, doc);
+				if ( references != null && ! references.isEmpty() ){
+					references.parallelStream().forEach((ref) -> {
+						try {
+							consolidator.consolidate(ref);
+						} catch (Exception e) {
+							logger.error("Error consolidating document: " + ref.getDOI(), e);
+						}
+
+						if ( ref.getAbstract() == null || ref.getAbstract().trim().isEmpty()){
 							try {
-								consolidator.consolidate(ref);
-							} catch (Exception e) {
-								logger.error("Error consolidating document: " + ref.getDOI(), e);
+								htmlParser.process(ref);
+							} catch (IOException e) {
+								logger.error("Error parsing HTML document: " + ref.getDOI(), e);
 							}
-
-							if ( ref.getAbstract() == null || ref.getAbstract().trim().isEmpty()){
-								try {
-									htmlParser.process(ref);
-								} catch (IOException e) {
-									logger.error("Error parsing HTML document: " + ref.getDOI(), e);
-								}
-							}
-						});
-						//Adiciona referências ao banco de dados.
-						dbService.addReferences(docId, references);
-
-					}
+						}
+					});
 				}
+				// Adiciona documento, autores e referências ao banco 
+				// de dados em uma única transação.
+				dbService.addDocument(doc, references);
 			}
 		}catch(Exception e){
 			throw e;
@@ -311,6 +307,8 @@ public class DocumentParserService {
 			System.out.println("Elapsed time: " + ((System.nanoTime() - start)/1e9));
 
 			System.out.println("Consolidated: " + parserService.consolidator.counter);
+			logger.info("Connection pool: " + parserService.dbService.getPoolStatistics());
+			parserService.dbService.close();
 
 		} catch (Exception e) {
 			logger.error("Error adding documents", e);
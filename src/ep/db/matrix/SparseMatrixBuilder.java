@@ -0,0 +1,188 @@
+package ep.db.matrix;
+
+import java.util.Arrays;
+
+import cern.colt.matrix.tdouble.impl.SparseRCDoubleMatrix2D;
+
+/**
+ * Construtor incremental de matrizes esparsas no formato
+ * CSR (<i>compressed sparse row</i>).
+ * <p>As linhas são preenchidas em ordem: os valores da linha atual
+ * são adicionados com {@link #add(int, double)} e a linha é finalizada
+ * com {@link #endRow()}. Os dados são mantidos em vetores primitivos
+ * e a matriz resultante ({@link SparseRCDoubleMatrix2D}) utiliza os
+ * mesmos vetores, sem cópia adicional.</p>
+ * @version 1.0
+ * @since 2017
+ *
+ */
+public class SparseMatrixBuilder {
+
+	/**
+	 * Número de colunas
+	 */
+	private final int columns;
+
+	/**
+	 * Início de cada linha em <code>columnIndexes</code>/<code>values</code>
+	 */
+	private int[] rowPointers;
+
+	/**
+	 * Coluna de cada valor não nulo
+	 */
+	private int[] columnIndexes;
+
+	/**
+	 * Valores não nulos
+	 */
+	private double[] values;
+
+	/**
+	 * Número de linhas finalizadas
+	 */
+	private int rows;
+
+	/**
+	 * Número de valores armazenados
+	 */
+	private int size;
+
+	/**
+	 * Buffer para ordenação dos valores da linha atual
+	 */
+	private long[] order = new long[64];
+
+	/**
+	 * Cria novo construtor.
+	 * @param columns número de colunas da matriz.
+	 * @param expectedRows número estimado de linhas.
+	 * @param expectedNonZeros número estimado de valores não nulos.
+	 */
+	public SparseMatrixBuilder(int columns, int expectedRows, int expectedNonZeros) {
+		this.columns = columns;
+		this.rowPointers = new int[Math.max(16, expectedRows + 1)];
+		this.columnIndexes = new int[Math.max(16, expectedNonZeros)];
+		this.values = new double[columnIndexes.length];
+	}
+
+	/**
+	 * Adiciona valor à linha atual.
+	 * @param column coluna do valor.
+	 * @param value valor (valores nulos são ignorados).
+	 */
+	public void add(int column, double value) {
+		if ( value == 0 )
+			return;
+		if ( column < 0 || column >= columns )
+			throw new IndexOutOfBoundsException("Column: " + column + ", columns: " + columns);
+
+		if ( size == columnIndexes.length ){
+			int capacity = size + (size >> 1);
+			columnIndexes = Arrays.copyOf(columnIndexes, capacity);
+			values = Arrays.copyOf(values, capacity);
+		}
+		columnIndexes[size] = column;
+		values[size] = value;
+		++size;
+	}
+
+	/**
+	 * Finaliza linha atual, ordenando os valores por coluna. Caso
+	 * uma coluna tenha sido informada mais de uma vez prevalece o
+	 * último valor (mesma semântica de <code>setQuick</code>).
+	 * @return índice da linha finalizada.
+	 */
+	public int endRow() {
+		int from = rowPointers[rows];
+		int count = size - from;
+
+		if ( count > 1 ){
+			// Ordena por (coluna, posição de inserção)
+			if ( order.length < count )
+				order = new long[Math.max(count, order.length * 2)];
+			for( int k = 0; k < count; k++ )
+				order[k] = ((long) columnIndexes[from + k] << 32) | k;
+			Arrays.sort(order, 0, count);
+
+			double[] rowValues = Arrays.copyOfRange(values, from, size);
+			int end = from;
+			for( int k = 0; k < count; k++ ){
+				int column = (int) (order[k] >>> 32);
+				double value = rowValues[(int) order[k]];
+				if ( end > from && columnIndexes[end - 1] == column )
+					values[end - 1] = value;
+				else {
+					columnIndexes[end] = column;
+					values[end] = value;
+					++end;
+				}
+			}
+			size = end;
+		}
+
+		if ( rows + 2 > rowPointers.length )
+			rowPointers = Arrays.copyOf(rowPointers, rowPointers.length + (rowPointers.length >> 1));
+		rowPointers[++rows] = size;
+		return rows - 1;
+	}
+
+	/**
+	 * Adiciona ao final as linhas finalizadas de outro construtor
+	 * (ex: construção em paralelo por intervalos de linhas).
+	 * @param other construtor com o mesmo número de colunas.
+	 */
+	public void append(SparseMatrixBuilder other) {
+		if ( other.columns != columns )
+			throw new IllegalArgumentException("Columns: " + other.columns + " != " + columns);
+
+		int count = other.rowPointers[other.rows];
+		if ( size + count > columnIndexes.length ){
+			int capacity = Math.max(size + count, size + (size >> 1));
+			columnIndexes = Arrays.copyOf(columnIndexes, capacity);
+			values = Arrays.copyOf(values, capacity);
+		}
+		System.arraycopy(other.columnIndexes, 0, columnIndexes, size, count);
+		System.arraycopy(other.values, 0, values, size, count);
+
+		if ( rows + other.rows + 1 > rowPointers.length )
+			rowPointers = Arrays.copyOf(rowPointers, rows + other.rows + 1);
+		for( int r = 1; r <= other.rows; r++ )
+			rowPointers[rows + r] = size + other.rowPointers[r];
+		rows += other.rows;
+		size += count;
+	}
+
+	/**
+	 * Retorna número de linhas finalizadas.
+	 * @return número de linhas.
+	 */
+	public int rows() {
+		return rows;
+	}
+
+	/**
+	 * Constroi matriz com as linhas finalizadas.
+	 * @return matriz esparsa.
+	 */
+	public SparseRCDoubleMatrix2D build() {
+		return build(rows);
+	}
+
+	/**
+	 * Constroi matriz com o número de linhas dado, completando
+	 * com linhas vazias caso necessário.
+	 * @param numRows número de linhas da matriz (maior ou igual ao número
+	 * de linhas finalizadas).
+	 * @return matriz esparsa.
+	 */
+	public SparseRCDoubleMatrix2D build(int numRows) {
+		if ( numRows < rows )
+			throw new IllegalArgumentException("Rows: " + numRows + " < " + rows);
+
+		int[] pointers = Arrays.copyOf(rowPointers, numRows + 1);
+		Arrays.fill(pointers, rows + 1, numRows + 1, size);
+		return new SparseRCDoubleMatrix2D(numRows, columns, pointers,
+				Arrays.copyOf(columnIndexes, size), Arrays.copyOf(values, size));
+	}
+}
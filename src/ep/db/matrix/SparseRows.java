@@ -0,0 +1,154 @@
+package ep.db.matrix;
+
+import cern.colt.matrix.tdouble.impl.SparseRCDoubleMatrix2D;
+
+/**
+ * Operações sobre linhas de matrizes esparsas ({@link SparseRCDoubleMatrix2D}),
+ * realizadas diretamente sobre os vetores CSR (sem conversão para
+ * matrizes densas). As colunas de cada linha devem estar ordenadas,
+ * como nas matrizes criadas por {@link SparseMatrixBuilder}.
+ * @version 1.0
+ * @since 2017
+ *
+ */
+public final class SparseRows {
+
+	private SparseRows() {
+	}
+
+	/**
+	 * Retorna nova matriz com as linhas selecionadas.
+	 * @param x matriz esparsa.
+	 * @param rows índices das linhas selecionadas.
+	 * @return matriz esparsa com <code>rows.length</code> linhas.
+	 */
+	public static SparseRCDoubleMatrix2D select(SparseRCDoubleMatrix2D x, int[] rows) {
+		final int[] pointers = x.getRowPointers(), columns = x.getColumnIndexes();
+		final double[] values = x.getValues();
+
+		int nnz = 0;
+		for( int r : rows )
+			nnz += pointers[r + 1] - pointers[r];
+
+		SparseMatrixBuilder builder = new SparseMatrixBuilder(x.columns(), rows.length, nnz);
+		for( int r : rows ){
+			for( int k = pointers[r]; k < pointers[r + 1]; k++ )
+				builder.add(columns[k], values[k]);
+			builder.endRow();
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Retorna produto interno entre duas linhas.
+	 * @param a primeira matriz.
+	 * @param i linha de <code>a</code>.
+	 * @param b segunda matriz.
+	 * @param j linha de <code>b</code>.
+	 * @return produto interno.
+	 */
+	public static double dot(SparseRCDoubleMatrix2D a, int i, SparseRCDoubleMatrix2D b, int j) {
+		final int[] ap = a.getRowPointers(), ac = a.getColumnIndexes();
+		final int[] bp = b.getRowPointers(), bc = b.getColumnIndexes();
+		final double[] av = a.getValues(), bv = b.getValues();
+
+		double sum = 0;
+		int p = ap[i], q = bp[j];
+		final int pEnd = ap[i + 1], qEnd = bp[j + 1];
+		while( p < pEnd && q < qEnd ){
+			if ( ac[p] == bc[q] )
+				sum += av[p++] * bv[q++];
+			else if ( ac[p] < bc[q] )
+				++p;
+			else
+				++q;
+		}
+		return sum;
+	}
+
+	/**
+	 * Retorna produto interno entre uma linha e um vetor denso.
+	 * @param a matriz esparsa.
+	 * @param i linha de <code>a</code>.
+	 * @param v vetor denso com <code>a.columns()</code> posições.
+	 * @return produto interno.
+	 */
+	public static double dot(SparseRCDoubleMatrix2D a, int i, double[] v) {
+		final int[] ap = a.getRowPointers(), ac = a.getColumnIndexes();
+		final double[] av = a.getValues();
+
+		double sum = 0;
+		for( int k = ap[i]; k < ap[i + 1]; k++ )
+			sum += av[k] * v[ac[k]];
+		return sum;
+	}
+
+	/**
+	 * Retorna o quadrado da norma euclidiana de uma linha.
+	 * @param a matriz esparsa.
+	 * @param i linha de <code>a</code>.
+	 * @return quadrado da norma.
+	 */
+	public static double squaredNorm(SparseRCDoubleMatrix2D a, int i) {
+		final int[] ap = a.getRowPointers();
+		final double[] av = a.getValues();
+
+		double sum = 0;
+		for( int k = ap[i]; k < ap[i + 1]; k++ )
+			sum += av[k] * av[k];
+		return sum;
+	}
+
+	/**
+	 * Normaliza as linhas da matriz (norma euclidiana unitária), alterando
+	 * os valores da própria matriz. Linhas nulas não são alteradas.
+	 * @param a matriz esparsa.
+	 */
+	public static void normalize(SparseRCDoubleMatrix2D a) {
+		final int[] ap = a.getRowPointers();
+		final double[] av = a.getValues();
+
+		for( int i = 0; i < a.rows(); i++ ){
+			double norm = Math.sqrt(squaredNorm(a, i));
+			if ( norm > 0 ){
+				for( int k = ap[i]; k < ap[i + 1]; k++ )
+					av[k] /= norm;
+			}
+		}
+	}
+
+	/**
+	 * Retorna o quadrado da distância euclidiana entre duas linhas.
+	 * <p>A distância é calculada sobre a união das colunas não nulas
+	 * (sem cancelamento numérico), de forma que linhas iguais resultam
+	 * exatamente em zero.</p>
+	 * @param a primeira matriz.
+	 * @param i linha de <code>a</code>.
+	 * @param b segunda matriz.
+	 * @param j linha de <code>b</code>.
+	 * @return quadrado da distância.
+	 */
+	public static double squaredDistance(SparseRCDoubleMatrix2D a, int i, SparseRCDoubleMatrix2D b, int j) {
+		final int[] ap = a.getRowPointers(), ac = a.getColumnIndexes();
+		final int[] bp = b.getRowPointers(), bc = b.getColumnIndexes();
+		final double[] av = a.getValues(), bv = b.getValues();
+
+		double sum = 0, d;
+		int p = ap[i], q = bp[j];
+		final int pEnd = ap[i + 1], qEnd = bp[j + 1];
+		while( p < pEnd && q < qEnd ){
+			if ( ac[p] == bc[q] )
+				d = av[p++] - bv[q++];
+			else if ( ac[p] < bc[q] )
+				d = av[p++];
+			else
+				d = bv[q++];
+			sum += d * d;
+		}
+		for( ; p < pEnd; p++ )
+			sum += av[p] * av[p];
+		for( ; q < qEnd; q++ )
+			sum += bv[q] * bv[q];
+		return sum;
+	}
+}
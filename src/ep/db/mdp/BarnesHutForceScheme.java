@@ -0,0 +1,420 @@
+package ep.db.mdp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.SparseRCDoubleMatrix2D;
+import ep.db.matrix.SparseRows;
+
+/**
+ * Projeção multidimensional por forças aproximada, para milhares
+ * ou dezenas de milhares de pontos (ex: pontos de controle do
+ * {@link Lamp}), sem a matriz de distâncias O(n²) do {@link ForceScheme}.
+ * <p>Cada iteração move os pontos no sentido contrário ao gradiente do
+ * <i>stress</i> <code>sum (d_ab - e_ab)^2</code> (<code>d</code> = distância
+ * entre as linhas, <code>e</code> = distância no plano). A força sobre
+ * <code>a</code> é <code>sum_b (d_ab - e_ab) u_ab</code>, com <code>u_ab</code>
+ * o vetor unitário de <code>b</code> para <code>a</code>. Substituindo
+ * <code>d_ab</code> pela distância média <code>D</code> (as distâncias entre
+ * vetores TF-IDF são concentradas em torno da média) a força se decompõe em:</p>
+ * <ul>
+ * <li>repulsão <code>D sum_b u_ab</code>, aproximada com uma {@link QuadTree}
+ * (Barnes-Hut, parâmetro <code>theta</code>) em O(log n) por ponto;</li>
+ * <li>atração <code>-n (y_a - c)</code> ao centro de massa <code>c</code>,
+ * exata;</li>
+ * <li>molas <code>(d_ab - D) u_ab</code> com a distância real, calculadas
+ * somente para os pontos mais próximos encontrados até o momento e para
+ * uma amostra aleatória renovada a cada iteração, e escaladas para
+ * <code>n - 1</code> pares.</li>
+ * </ul>
+ * <p>Cada ponto é movido em relação às posições do início da iteração
+ * (Jacobi) e a amostra de cada ponto depende somente da semente da
+ * iteração e do ponto, portanto o resultado não depende do número
+ * de threads.</p>
+ * @version 1.0
+ * @since 2017
+ *
+ */
+public class BarnesHutForceScheme implements Projection {
+
+	/**
+	 * Número de pontos por bloco (execução paralela)
+	 */
+	private static final int GRAIN = 256;
+
+	/**
+	 * Número de pares utilizados na estimativa da distância média
+	 * (por ponto)
+	 */
+	private static final int MEAN_SAMPLES = 16;
+
+	private final int maxIter;
+
+	private final float theta;
+
+	private final int neighbors;
+
+	private final int samples;
+
+	private final Random rng = new Random();
+
+	/**
+	 * Posições iniciais (<code>null</code> = aleatórias)
+	 */
+	private DoubleMatrix2D initialPositions;
+
+	/**
+	 * Número de threads (0 = número de processadores,
+	 * 1 = execução sequencial)
+	 */
+	private int parallelism = 1;
+
+	public BarnesHutForceScheme() {
+		this(100, 0.5f, 10, 10);
+	}
+
+	/**
+	 * Cria nova projeção.
+	 * @param maxIter número de iterações.
+	 * @param theta critério de abertura dos nós da {@link QuadTree}: lado
+	 * do nó dividido pela distância ao seu centro de massa (0 = repulsão
+	 * exata, O(n²) por iteração).
+	 * @param neighbors número de pontos mais próximos mantidos por ponto.
+	 * @param samples número de pontos aleatórios amostrados por ponto
+	 * em cada iteração.
+	 */
+	public BarnesHutForceScheme(int maxIter, float theta, int neighbors, int samples) {
+		if ( neighbors + samples <= 0 )
+			throw new IllegalArgumentException("At least one neighbor or sample is required");
+		this.maxIter = maxIter;
+		this.theta = theta;
+		this.neighbors = neighbors;
+		this.samples = samples;
+	}
+
+	/**
+	 * Atribui número de threads utilizadas em cada iteração.
+	 * @param parallelism número de threads, 0 para utilizar o número
+	 * de processadores ou 1 para execução sequencial (padrão).
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+
+	@Override
+	public void setInitialPositions(DoubleMatrix2D y) {
+		this.initialPositions = y;
+	}
+
+	/**
+	 * Atribui semente do gerador aleatório (posições iniciais e pontos
+	 * amostrados): projeções com a mesma semente e os mesmos pontos são
+	 * idênticas, independente do número de threads.
+	 * @param seed semente do gerador aleatório.
+	 */
+	public void setSeed(long seed) {
+		rng.setSeed(seed);
+	}
+
+	@Override
+	public DoubleMatrix2D project(DoubleMatrix2D x) {
+		final int n = x.rows();
+		DoubleMatrix2D result = new DenseDoubleMatrix2D(n, 2);
+		if ( n < 2 )
+			return result;
+
+		Rows rows = new Rows(x);
+		final double mean = rows.meanDistance(rng);
+
+		// Coordenadas aleatórias na escala das distâncias
+		double[] y = new double[2 * n], next = new double[2 * n];
+		for(int i = 0; i < y.length; i++)
+			y[i] = rng.nextDouble() * mean;
+		ForceScheme.initialize(initialPositions, y, n);
+
+		// Vizinhos mais próximos encontrados (-1 = vazio) e suas distâncias
+		int[] nearest = new int[n * neighbors];
+		double[] nearestDist = new double[n * neighbors];
+		Arrays.fill(nearest, -1);
+
+		int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+		threads = Math.min(threads, (n + GRAIN - 1) / GRAIN);
+		ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+		List<ForkJoinTask<?>> tasks = new ArrayList<>();
+
+		try {
+			for( int iter = 0; iter < maxIter; iter++ ){
+				final QuadTree tree = new QuadTree(y, n);
+				double cx = 0, cy = 0;
+				for( int i = 0; i < n; i++ ){
+					cx += y[2 * i];
+					cy += y[2 * i + 1];
+				}
+				// Passo decrescente: de 1 (transformação de Guttman) a 0.1
+				final Step step = new Step(y, next, tree, rows, nearest, nearestDist, mean,
+						cx / n, cy / n, Math.max(0.1, 1 - (double) iter / maxIter), rng.nextLong());
+
+				if ( pool == null )
+					step.move(0, n);
+				else {
+					tasks.clear();
+					for( int from = 0; from < n; from += GRAIN ){
+						final int start = from, end = Math.min(n, from + GRAIN);
+						tasks.add(pool.submit(() -> step.move(start, end)));
+					}
+					for( ForkJoinTask<?> task : tasks )
+						task.get();
+				}
+
+				double[] t = y;
+				y = next;
+				next = t;
+			}
+		}catch( InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		}catch( ExecutionException e){
+			throw new IllegalStateException(e.getCause());
+		}finally {
+			if ( pool != null )
+				pool.shutdown();
+		}
+
+		for(int i = 0; i < n; i++){
+			result.setQuick(i, 0, y[2 * i]);
+			result.setQuick(i, 1, y[2 * i + 1]);
+		}
+		return result;
+	}
+
+	/**
+	 * Uma iteração: calcula novas posições a partir das posições
+	 * do início da iteração.
+	 */
+	private final class Step {
+
+		private final double[] y, next;
+
+		private final QuadTree tree;
+
+		private final Rows rows;
+
+		private final int[] nearest;
+
+		private final double[] nearestDist;
+
+		private final double mean, cx, cy, eta;
+
+		private final long seed;
+
+		Step(double[] y, double[] next, QuadTree tree, Rows rows, int[] nearest, double[] nearestDist,
+				double mean, double cx, double cy, double eta, long seed) {
+			this.y = y;
+			this.next = next;
+			this.tree = tree;
+			this.rows = rows;
+			this.nearest = nearest;
+			this.nearestDist = nearestDist;
+			this.mean = mean;
+			this.cx = cx;
+			this.cy = cy;
+			this.eta = eta;
+			this.seed = seed;
+		}
+
+		/**
+		 * Move os pontos <code>[from, to)</code>. Somente as posições e os
+		 * vizinhos desses pontos são alterados.
+		 */
+		void move(int from, int to) {
+			final int n = rows.size();
+			final int[] stack = new int[4 * QuadTree.MAX_DEPTH + 1];
+			final double[] repulsion = new double[2];
+			final int[] sampled = new int[samples];
+			final double[] sampledDist = new double[samples];
+			final double[] force = new double[2];
+			final double[] dense = rows.buffer();
+
+			for( int a = from; a < to; a++ ){
+				final double ax = y[2 * a], ay = y[2 * a + 1];
+				tree.repulsion(a, theta, stack, repulsion);
+
+				// Amostra aleatória (splitmix64 a partir da semente e do ponto)
+				long state = seed + a * 0x9E3779B97F4A7C15L;
+				rows.expand(a, dense);
+				for( int s = 0; s < samples; s++ ){
+					state += 0x9E3779B97F4A7C15L;
+					int b = (int) (((mix(state) >>> 33) * (n - 1)) >>> 31);
+					if ( b >= a )
+						b++;
+					sampled[s] = b;
+					sampledDist[s] = rows.distance(a, b, dense);
+				}
+				rows.clear(a, dense);
+
+				// Molas: vizinhos e amostra
+				force[0] = force[1] = 0;
+				int pairs = 0;
+				final int row = a * neighbors;
+				for( int k = row; k < row + neighbors && nearest[k] >= 0; k++, pairs++ )
+					spring(ax, ay, nearest[k], nearestDist[k], force);
+				for( int s = 0; s < samples; s++, pairs++ )
+					spring(ax, ay, sampled[s], sampledDist[s], force);
+				final double scale = (double) (n - 1) / pairs;
+
+				double gx = mean * repulsion[0] - n * (ax - cx) + scale * force[0];
+				double gy = mean * repulsion[1] - n * (ay - cy) + scale * force[1];
+				next[2 * a] = ax + eta * gx / (n - 1);
+				next[2 * a + 1] = ay + eta * gy / (n - 1);
+
+				for( int s = 0; s < samples; s++ )
+					offer(row, sampled[s], sampledDist[s]);
+			}
+		}
+
+		/**
+		 * Soma a força da mola entre <code>a</code> e <code>b</code>,
+		 * <code>(d_ab - D) u_ab</code>, a <code>force</code>.
+		 */
+		private void spring(double ax, double ay, int b, double d, double[] force) {
+			double dx = ax - y[2 * b], dy = ay - y[2 * b + 1];
+			double e = Math.sqrt(dx * dx + dy * dy);
+			if ( e > 0 ){
+				force[0] += (d - mean) * dx / e;
+				force[1] += (d - mean) * dy / e;
+			}
+		}
+
+		/**
+		 * Inclui <code>b</code> entre os vizinhos mais próximos (posições
+		 * <code>[row, row + neighbors)</code>) caso esteja mais próximo
+		 * que o mais distante deles.
+		 */
+		private void offer(int row, int b, double d) {
+			int worst = -1;
+			for( int k = row; k < row + neighbors; k++ ){
+				if ( nearest[k] == b )
+					return;
+				if ( nearest[k] < 0 ){
+					worst = k;
+					break;
+				}
+				if ( worst < 0 || nearestDist[k] > nearestDist[worst] )
+					worst = k;
+			}
+			if ( worst >= 0 && (nearest[worst] < 0 || d < nearestDist[worst]) ){
+				nearest[worst] = b;
+				nearestDist[worst] = d;
+			}
+		}
+	}
+
+	/**
+	 * Finalizador do splitmix64.
+	 */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Distâncias entre as linhas de uma matriz, calculadas sob demanda
+	 * (produto interno percorrendo somente os valores não nulos em matrizes
+	 * esparsas).
+	 */
+	private static final class Rows {
+
+		private final DoubleMatrix2D x;
+
+		private final SparseRCDoubleMatrix2D sparse;
+
+		private final double[] norms;
+
+		Rows(DoubleMatrix2D x) {
+			this.x = x;
+			this.sparse = x instanceof SparseRCDoubleMatrix2D ? (SparseRCDoubleMatrix2D) x : null;
+			this.norms = new double[x.rows()];
+			for( int i = 0; i < norms.length; i++ )
+				norms[i] = dot(i, i);
+		}
+
+		int size() {
+			return norms.length;
+		}
+
+		double distance(int i, int j) {
+			return DistanceMetric.EUCLIDEAN.distance(dot(i, j), norms[i], norms[j]);
+		}
+
+		/**
+		 * Retorna vetor denso para {@link #expand(int, double[])} (matrizes
+		 * esparsas) ou <code>null</code>.
+		 */
+		double[] buffer() {
+			return sparse != null ? new double[sparse.columns()] : null;
+		}
+
+		/**
+		 * Copia a linha <code>i</code> (esparsa) para o vetor denso.
+		 */
+		void expand(int i, double[] row) {
+			if ( sparse == null )
+				return;
+			final int[] rp = sparse.getRowPointers(), ci = sparse.getColumnIndexes();
+			final double[] v = sparse.getValues();
+			for( int k = rp[i]; k < rp[i + 1]; k++ )
+				row[ci[k]] = v[k];
+		}
+
+		/**
+		 * Zera no vetor denso as posições da linha <code>i</code>.
+		 */
+		void clear(int i, double[] row) {
+			if ( sparse == null )
+				return;
+			final int[] rp = sparse.getRowPointers(), ci = sparse.getColumnIndexes();
+			for( int k = rp[i]; k < rp[i + 1]; k++ )
+				row[ci[k]] = 0;
+		}
+
+		/**
+		 * Distância entre <code>i</code> e <code>j</code>, com a linha
+		 * <code>i</code> expandida em <code>row</code>.
+		 */
+		double distance(int i, int j, double[] row) {
+			double dot = sparse != null ? SparseRows.dot(sparse, j, row) : dot(i, j);
+			return DistanceMetric.EUCLIDEAN.distance(dot, norms[i], norms[j]);
+		}
+
+		private double dot(int i, int j) {
+			if ( sparse != null )
+				return SparseRows.dot(sparse, i, sparse, j);
+			double sum = 0;
+			for( int c = 0; c < x.columns(); c++ )
+				sum += x.getQuick(i, c) * x.getQuick(j, c);
+			return sum;
+		}
+
+		/**
+		 * Estima a distância média a partir de pares aleatórios.
+		 */
+		double meanDistance(Random rng) {
+			int n = size();
+			long pairs = Math.min((long) n * (n - 1) / 2, (long) MEAN_SAMPLES * n);
+			double sum = 0;
+			for( long p = 0; p < pairs; p++ ){
+				int i = rng.nextInt(n), j = rng.nextInt(n - 1);
+				sum += distance(i, j >= i ? j + 1 : j);
+			}
+			return sum > 0 ? sum / pairs : 1;
+		}
+	}
+}
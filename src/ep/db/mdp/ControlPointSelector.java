@@ -0,0 +1,24 @@
+package ep.db.mdp;
+
+import java.util.Random;
+
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+
+/**
+ * Estratégia de seleção dos pontos de controle do {@link Lamp}.
+ * @version 1.0
+ * @since 2017
+ *
+ */
+public interface ControlPointSelector {
+
+	/**
+	 * Seleciona pontos de controle.
+	 * @param x matriz com valores a serem projetados (N x M).
+	 * @param numControlPoints número de pontos de controle
+	 * (no máximo N).
+	 * @param rng gerador aleatório.
+	 * @return índices (distintos) dos pontos de controle em <code>x</code>.
+	 */
+	public int[] select(DoubleMatrix2D x, int numControlPoints, Random rng);
+}
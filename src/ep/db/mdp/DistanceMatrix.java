@@ -0,0 +1,210 @@
+package ep.db.mdp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.SparseRCDoubleMatrix2D;
+import ep.db.matrix.SparseRows;
+
+/**
+ * Matriz de distâncias entre as linhas de uma matriz (ex: pontos de
+ * controle do {@link Lamp}), armazenada como triângulo superior
+ * compactado: a distância entre <code>i &lt; j</code> fica na posição
+ * <code>i (2n - i - 1) / 2 + (j - i - 1)</code>.
+ * <p>As distâncias são calculadas uma única vez, em paralelo por
+ * blocos de linhas. Em matrizes esparsas (CSR) cada linha é expandida
+ * em um vetor denso e multiplicada pelas linhas seguintes percorrendo
+ * somente seus valores não nulos; em matrizes densas os produtos internos
+ * são calculados por blocos de linhas e colunas.</p>
+ * @version 1.0
+ * @since 2017
+ *
+ */
+public final class DistanceMatrix {
+
+	/**
+	 * Número de linhas por bloco
+	 */
+	private static final int BLOCK = 64;
+
+	/**
+	 * Número de colunas por bloco (matrizes densas)
+	 */
+	private static final int COLUMN_BLOCK = 256;
+
+	/**
+	 * Número de linhas
+	 */
+	private final int n;
+
+	/**
+	 * Triângulo superior (sem diagonal), por linha
+	 */
+	private final double[] values;
+
+	private DistanceMatrix(int n) {
+		if ( (long) n * (n - 1) / 2 > Integer.MAX_VALUE - 8 )
+			throw new IllegalArgumentException("Too many rows for a distance matrix: " + n);
+		this.n = n;
+		this.values = new double[(int) ((long) n * (n - 1) / 2)];
+	}
+
+	/**
+	 * Cria matriz a partir de distâncias já calculadas.
+	 * @param distances matriz de distâncias (n x n, somente o triângulo
+	 * superior é utilizado).
+	 * @return matriz de distâncias.
+	 */
+	public static DistanceMatrix of(DoubleMatrix2D distances) {
+		DistanceMatrix matrix = new DistanceMatrix(distances.rows());
+		int k = 0;
+		for( int i = 0; i < matrix.n; i++ )
+			for( int j = i + 1; j < matrix.n; j++ )
+				matrix.values[k++] = distances.getQuick(i, j);
+		return matrix;
+	}
+
+	/**
+	 * Calcula distâncias entre as linhas da matriz dada.
+	 * @param x matriz (N x M), esparsa (CSR) ou densa.
+	 * @param metric métrica de distância.
+	 * @param parallelism número de threads, 0 para utilizar o número de
+	 * processadores ou 1 para execução sequencial.
+	 * @return matriz de distâncias N x N.
+	 */
+	public static DistanceMatrix compute(DoubleMatrix2D x, DistanceMetric metric, int parallelism) {
+		DistanceMatrix matrix = new DistanceMatrix(x.rows());
+		final int n = matrix.n;
+		final double[] norms = new double[n];
+		final SparseRCDoubleMatrix2D sparse = x instanceof SparseRCDoubleMatrix2D ?
+				(SparseRCDoubleMatrix2D) x : null;
+		for( int i = 0; i < n; i++ )
+			norms[i] = sparse != null ? SparseRows.squaredNorm(sparse, i) : dot(x, i, i, 0, x.columns());
+
+		int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+		int blocks = (n + BLOCK - 1) / BLOCK;
+		if ( threads <= 1 || blocks <= 1 ){
+			for( int from = 0; from < n; from += BLOCK )
+				matrix.computeBlock(x, sparse, norms, metric, from, Math.min(n, from + BLOCK));
+			return matrix;
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(Math.min(threads, blocks));
+		try {
+			List<ForkJoinTask<?>> tasks = new ArrayList<>(blocks);
+			for( int from = 0; from < n; from += BLOCK ){
+				final int start = from, end = Math.min(n, from + BLOCK);
+				tasks.add(pool.submit(() -> matrix.computeBlock(x, sparse, norms, metric, start, end)));
+			}
+			for( ForkJoinTask<?> task : tasks )
+				task.get();
+		}catch( InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		}catch( ExecutionException e){
+			throw new IllegalStateException(e.getCause());
+		}finally {
+			pool.shutdown();
+		}
+		return matrix;
+	}
+
+	/**
+	 * Calcula distâncias das linhas <code>[from, to)</code> às linhas seguintes.
+	 */
+	private void computeBlock(DoubleMatrix2D x, SparseRCDoubleMatrix2D sparse, double[] norms,
+			DistanceMetric metric, int from, int to) {
+		if ( sparse != null ){
+			final int[] rp = sparse.getRowPointers(), ci = sparse.getColumnIndexes();
+			final double[] v = sparse.getValues();
+			final double[] row = new double[x.columns()];
+			for( int i = from; i < to; i++ ){
+				for( int k = rp[i]; k < rp[i + 1]; k++ )
+					row[ci[k]] = v[k];
+				int offset = index(i, i + 1);
+				for( int j = i + 1; j < n; j++ )
+					values[offset++] = metric.distance(SparseRows.dot(sparse, j, row), norms[i], norms[j]);
+				for( int k = rp[i]; k < rp[i + 1]; k++ )
+					row[ci[k]] = 0;
+			}
+			return;
+		}
+
+		// Produtos internos por blocos de linhas (j) e colunas
+		final int dim = x.columns();
+		for( int j0 = from; j0 < n; j0 += BLOCK ){
+			final int j1 = Math.min(n, j0 + BLOCK);
+			for( int c0 = 0; c0 < dim; c0 += COLUMN_BLOCK ){
+				final int c1 = Math.min(dim, c0 + COLUMN_BLOCK);
+				for( int i = from; i < to; i++ ){
+					for( int j = Math.max(j0, i + 1); j < j1; j++ )
+						values[index(i, j)] += dot(x, i, j, c0, c1);
+				}
+			}
+			for( int i = from; i < to; i++ ){
+				for( int j = Math.max(j0, i + 1); j < j1; j++ ){
+					int k = index(i, j);
+					values[k] = metric.distance(values[k], norms[i], norms[j]);
+				}
+			}
+		}
+	}
+
+	private static double dot(DoubleMatrix2D x, int i, int j, int from, int to) {
+		double sum = 0;
+		for( int c = from; c < to; c++ )
+			sum += x.getQuick(i, c) * x.getQuick(j, c);
+		return sum;
+	}
+
+	/**
+	 * Retorna posição da distância entre <code>i &lt; j</code>.
+	 */
+	private int index(int i, int j) {
+		return (int) ((long) i * (2 * n - i - 1) / 2) + (j - i - 1);
+	}
+
+	/**
+	 * Retorna posição inicial de cada linha: a distância entre
+	 * <code>i &lt; j</code> fica na posição <code>offsets[i] + j</code>.
+	 * @return posição inicial (deslocada) de cada linha.
+	 */
+	int[] offsets() {
+		int[] offsets = new int[n];
+		for( int i = 0; i < n; i++ )
+			offsets[i] = index(i, i + 1) - (i + 1);
+		return offsets;
+	}
+
+	/**
+	 * Retorna número de linhas.
+	 * @return número de linhas (e colunas).
+	 */
+	public int size() {
+		return n;
+	}
+
+	/**
+	 * Retorna distância entre duas linhas.
+	 * @param i primeira linha.
+	 * @param j segunda linha.
+	 * @return distância (0 se <code>i == j</code>).
+	 */
+	public double get(int i, int j) {
+		if ( i == j )
+			return 0;
+		return i < j ? values[index(i, j)] : values[index(j, i)];
+	}
+
+	/**
+	 * Retorna triângulo superior compactado (não deve ser alterado).
+	 * @return distâncias por linha.
+	 */
+	double[] values() {
+		return values;
+	}
+}
@@ -0,0 +1,28 @@
+package ep.db.mdp;
+
+/**
+ * Métrica de distância entre linhas de uma matriz, expressa em função
+ * do produto interno e das normas das linhas (calculados por
+ * {@link DistanceMatrix} percorrendo somente os valores não nulos
+ * em matrizes esparsas).
+ * @version 1.0
+ * @since 2017
+ *
+ */
+@FunctionalInterface
+public interface DistanceMetric {
+
+	/**
+	 * Distância euclidiana: <code>sqrt(|a|^2 + |b|^2 - 2 a.b)</code>.
+	 */
+	DistanceMetric EUCLIDEAN = (dot, a, b) -> Math.sqrt(Math.max(0, a + b - 2 * dot));
+
+	/**
+	 * Retorna distância entre duas linhas.
+	 * @param dot produto interno entre as linhas.
+	 * @param squaredNormA quadrado da norma da primeira linha.
+	 * @param squaredNormB quadrado da norma da segunda linha.
+	 * @return distância.
+	 */
+	double distance(double dot, double squaredNormA, double squaredNormB);
+}
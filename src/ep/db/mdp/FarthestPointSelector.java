@@ -0,0 +1,48 @@
+package ep.db.mdp;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+
+/**
+ * Seleção de pontos de controle por amostragem do ponto mais
+ * distante (<i>farthest-point sampling</i>): o primeiro ponto é
+ * escolhido aleatoriamente e cada ponto seguinte é o mais distante
+ * dos pontos já selecionados, maximizando a cobertura do espaço.
+ * @version 1.0
+ * @since 2017
+ *
+ */
+public class FarthestPointSelector implements ControlPointSelector {
+
+	@Override
+	public int[] select(DoubleMatrix2D x, int numControlPoints, Random rng) {
+		final int n = x.rows();
+		RowDistances distances = new RowDistances(x);
+		double[] nearest = new double[n], dist = new double[n];
+		Arrays.fill(nearest, Double.POSITIVE_INFINITY);
+		boolean[] selected = new boolean[n];
+
+		int[] cpoints = new int[numControlPoints];
+		int c = rng.nextInt(n);
+		for( int s = 0; s < numControlPoints; s++ ){
+			cpoints[s] = c;
+			selected[c] = true;
+			if ( s == numControlPoints - 1 )
+				break;
+
+			// Atualiza distância ao ponto de controle mais próximo
+			// e seleciona o ponto mais distante
+			distances.squaredDistances(c, dist);
+			c = -1;
+			for( int r = 0; r < n; r++ ){
+				if ( dist[r] < nearest[r] )
+					nearest[r] = dist[r];
+				if ( !selected[r] && (c < 0 || nearest[r] > nearest[c]) )
+					c = r;
+			}
+		}
+		return cpoints;
+	}
+}
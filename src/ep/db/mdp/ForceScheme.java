@@ -1,18 +1,45 @@
 package ep.db.mdp;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
-import cern.colt.matrix.tdouble.DoubleMatrix1D;
 import cern.colt.matrix.tdouble.DoubleMatrix2D;
-import cern.colt.matrix.tdouble.algo.DenseDoubleAlgebra;
 import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix2D;
-import cern.jet.math.tdouble.DoubleFunctions;
 
+/**
+ * Projeção multidimensional Force Scheme (utilizada na projeção
+ * dos pontos de controle do {@link Lamp}) a partir das distâncias
+ * entre os pontos ({@link DistanceMatrix}, calculada uma única vez).
+ * <p>As coordenadas são mantidas em um vetor <code>double[]</code>
+ * (x e y de cada ponto) e a ordem aleatória dos pontos em um
+ * <code>int[]</code> (Fisher-Yates com {@link SplittableRandom}), sem
+ * alocação por passo.</p>
+ * <p>Na execução sequencial (padrão) cada ponto <code>b</code> é movido
+ * imediatamente em relação a cada ponto <code>a</code> (Gauss-Seidel).
+ * Na execução paralela ({@link #setParallelism(int)}) a iteração é um
+ * Gauss-Seidel por blocos em fases: os pontos são divididos em tantos
+ * blocos quanto threads e, em cada fase, cada bloco é movido em relação
+ * às posições de outro bloco no início da fase (na fase 0, em relação a
+ * si mesmo, com as posições atualizadas imediatamente). A ordem das
+ * atualizações depende do número de blocos, portanto o resultado depende
+ * do número de threads (<code>mdp.force_scheme.threads</code>; com 0, do
+ * número de processadores da máquina): a mesma semente só reproduz a
+ * projeção com o mesmo número de threads.</p>
+ * @version 1.0
+ * @since 2017
+ *
+ */
+public class ForceScheme implements Projection {
 
-public class ForceScheme {
+	/**
+	 * Número mínimo de pontos por bloco (execução paralela)
+	 */
+	private static final int GRAIN = 64;
 
 	private final int maxIter;
 
@@ -24,10 +51,35 @@ public class ForceScheme {
 
 	private final Random rng = new Random();
 
+	/**
+	 * Posições iniciais (<code>null</code> = aleatórias)
+	 */
+	private DoubleMatrix2D initialPositions;
+
+	/**
+	 * Número de iterações da última projeção
+	 */
+	private int iterations;
+
+	/**
+	 * Número de threads (0 = número de processadores,
+	 * 1 = execução sequencial)
+	 */
+	private int parallelism = 1;
+
 	public ForceScheme() {
 		this(50, 0f, 8.0f, 1e-5f);
 	}
 
+	/**
+	 * Cria nova projeção.
+	 * @param maxIter número máximo de iterações.
+	 * @param tol variação relativa mínima da soma dos deslocamentos
+	 * entre duas iterações (0 = executa todas as iterações).
+	 * @param fraction fração da diferença de distância aplicada
+	 * a cada passo (inverso).
+	 * @param eps distância mínima entre dois pontos.
+	 */
 	public ForceScheme(int maxIter, float tol, float fraction, float eps) {
 		this.maxIter = maxIter;
 		this.tol = tol;
@@ -35,49 +87,247 @@ public class ForceScheme {
 		this.eps = eps;
 	}
 
-	public DoubleMatrix2D project(DoubleMatrix2D xs) {
-		// Gera matrix y aleatoriamente
-		int n = xs.rows();
-		DoubleMatrix2D y = new DenseDoubleMatrix2D(n, 2);
-		for(int i = 0; i < n; i++)
-			for(int j = 0; j < 2; j++)
-				y.setQuick(i, j, rng.nextDouble());
-
-		// Listas para iteração aleatoria nas linhas e colunas
-		List<Integer> i = new ArrayList<>(n), j = new ArrayList<>(n);
-		for (int k = 0; k < n; k++){
-			i.add(k);
-			j.add(k);
+	/**
+	 * Atribui número de threads utilizadas em cada iteração.
+	 * @param parallelism número de threads, 0 para utilizar o número
+	 * de processadores ou 1 para execução sequencial (padrão).
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+
+	@Override
+	public void setInitialPositions(DoubleMatrix2D y) {
+		this.initialPositions = y;
+	}
+
+	/**
+	 * Atribui semente do gerador aleatório (posições iniciais e ordem
+	 * dos pontos): projeções com a mesma semente e as mesmas distâncias
+	 * são idênticas.
+	 * @param seed semente do gerador aleatório.
+	 */
+	public void setSeed(long seed) {
+		rng.setSeed(seed);
+	}
+
+	/**
+	 * Retorna número de iterações realizadas na última projeção.
+	 * @return número de iterações.
+	 */
+	public int getIterations() {
+		return iterations;
+	}
+
+	/**
+	 * Projeta as linhas da matriz dada: as distâncias entre as linhas
+	 * são calculadas uma única vez ({@link DistanceMatrix}), com o mesmo
+	 * número de threads da projeção ({@link #setParallelism(int)}; as
+	 * distâncias não dependem do número de threads).
+	 * @param x pontos a serem projetados (N x M).
+	 * @return projeção (N x 2).
+	 */
+	@Override
+	public DoubleMatrix2D project(DoubleMatrix2D x) {
+		return project(DistanceMatrix.compute(x, DistanceMetric.EUCLIDEAN, parallelism));
+	}
+
+	/**
+	 * Projeta pontos dadas as distâncias entre eles.
+	 * @param distances distâncias entre os pontos.
+	 * @return projeção (N x 2).
+	 */
+	public DoubleMatrix2D project(DistanceMatrix distances) {
+		int n = distances.size();
+		double[] y = project(distances.values(), distances.offsets(), n);
+
+		DoubleMatrix2D result = new DenseDoubleMatrix2D(n, 2);
+		for(int i = 0; i < n; i++){
+			result.setQuick(i, 0, y[2 * i]);
+			result.setQuick(i, 1, y[2 * i + 1]);
 		}
+		return result;
+	}
+
+	/**
+	 * Projeta pontos dadas as distâncias entre eles.
+	 * @param distances triângulo superior das distâncias.
+	 * @param offsets posição de cada linha ({@link DistanceMatrix#offsets()}).
+	 * @param n número de pontos.
+	 * @return coordenadas x e y de cada ponto.
+	 */
+	private double[] project(double[] distances, int[] offsets, int n) {
+		// Gera coordenadas aleatoriamente
+		double[] y = new double[2 * n];
+		for(int i = 0; i < y.length; i++)
+			y[i] = rng.nextDouble();
+		initialize(initialPositions, y, n);
+
+		// Ordem aleatória das linhas
+		SplittableRandom random = new SplittableRandom(rng.nextLong());
+		int[] order = new int[n];
+		for(int i = 0; i < n; i++)
+			order[i] = i;
+
+		int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+		threads = Math.min(threads, Math.max(1, n / GRAIN));
+		ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+		double[] previous = pool != null ? new double[2 * n] : null;
 
 		// Gradiente Descendente
-		final DenseDoubleAlgebra alg = new DenseDoubleAlgebra();
-		double prevDeltaSum = Double.POSITIVE_INFINITY;
-		for (int iter = 0; iter < maxIter; iter++) {
-			double deltaSum = 0;
-
-			Collections.shuffle(i);
-			for (int a : i) {
-				Collections.shuffle(j);
-				for (int b : j) {
-					if (a == b)
-						continue;
-
-					DoubleMatrix1D direction = y.viewRow(b).copy().assign(y.viewRow(a), DoubleFunctions.minus);
-					double d2 = Math.max(alg.norm2(direction), eps);
-					double delta = (xs.getQuick(a, b) - d2) / fraction;
-					deltaSum += Math.abs(delta);
-					direction.assign(DoubleFunctions.mult(delta/d2));
-					y.viewRow(b).assign(direction, DoubleFunctions.plus);
+		iterations = 0;
+		try {
+			double prevDeltaSum = Double.POSITIVE_INFINITY;
+			while (iterations < maxIter) {
+				shuffle(order, random);
+
+				double deltaSum;
+				if ( pool != null )
+					deltaSum = sweep(pool, threads, distances, offsets, n, order, previous, y);
+				else
+					deltaSum = sweep(distances, offsets, n, order, y);
+				++iterations;
+
+				// Variação relativa da soma dos deslocamentos
+				if (iterations > 1 && Math.abs(prevDeltaSum - deltaSum) <= tol * prevDeltaSum)
+					break;
+				prevDeltaSum = deltaSum;
+			}
+		}finally {
+			if ( pool != null )
+				pool.shutdown();
+		}
+
+		return y;
+	}
+
+	/**
+	 * Substitui coordenadas aleatórias pelas posições iniciais dadas.
+	 * @param initial posições iniciais (N x 2, <code>NaN</code> = aleatória)
+	 * ou <code>null</code>.
+	 * @param y coordenadas x e y de cada ponto.
+	 * @param n número de pontos.
+	 */
+	static void initialize(DoubleMatrix2D initial, double[] y, int n) {
+		if ( initial == null )
+			return;
+		if ( initial.rows() != n )
+			throw new IllegalArgumentException("Initial positions: " + initial.rows() + " rows, expected " + n);
+		for(int i = 0; i < n; i++){
+			double x0 = initial.getQuick(i, 0), y0 = initial.getQuick(i, 1);
+			if ( !Double.isNaN(x0) && !Double.isNaN(y0) ){
+				y[2 * i] = x0;
+				y[2 * i + 1] = y0;
+			}
+		}
+	}
+
+	/**
+	 * Iteração sequencial: para cada ponto <code>a</code> (em ordem aleatória)
+	 * move os demais pontos em direção à distância desejada.
+	 * @return soma dos deslocamentos.
+	 */
+	private double sweep(double[] distances, int[] offsets, int n, int[] order, double[] y) {
+		double deltaSum = 0;
+		for (int a : order) {
+			final double ax = y[2 * a], ay = y[2 * a + 1];
+			final int row = offsets[a];
+			for (int b = 0; b < n; b++) {
+				if (a == b)
+					continue;
+
+				double dx = y[2 * b] - ax, dy = y[2 * b + 1] - ay;
+				double d2 = Math.max(Math.sqrt(dx * dx + dy * dy), eps);
+				double delta = ((b > a ? distances[row + b] : distances[offsets[b] + a]) - d2) / fraction;
+				deltaSum += Math.abs(delta);
+				double scale = delta / d2;
+				y[2 * b] += scale * dx;
+				y[2 * b + 1] += scale * dy;
+			}
+		}
+		return deltaSum;
+	}
+
+	/**
+	 * Iteração paralela: os pontos (em ordem aleatória) são divididos em
+	 * <code>T</code> blocos e a iteração em <code>T</code> fases. Na fase
+	 * <code>p</code> a tarefa <code>t</code> move os pontos do bloco
+	 * <code>(t + p) mod T</code> em relação aos pontos do bloco <code>t</code>,
+	 * cujas posições são as do início da fase (exceto na fase 0, em que os
+	 * dois blocos são o mesmo). Cada tarefa altera somente o seu bloco de
+	 * destino, portanto não há escrita concorrente.
+	 * @return soma dos deslocamentos.
+	 */
+	private double sweep(ForkJoinPool pool, int threads, double[] distances, int[] offsets, int n, 
+			int[] order, double[] previous, double[] y) {
+		int blockSize = (n + threads - 1) / threads;
+		int blocks = (n + blockSize - 1) / blockSize;
+		List<ForkJoinTask<Double>> tasks = new ArrayList<>(blocks);
+
+		double deltaSum = 0;
+		try {
+			for( int phase = 0; phase < blocks; phase++ ){
+				System.arraycopy(y, 0, previous, 0, y.length);
+				final double[] pivots = phase == 0 ? y : previous;
+				tasks.clear();
+				for( int block = 0; block < blocks; block++ ){
+					final int from = block * blockSize, to = Math.min(n, from + blockSize);
+					final int target = ((block + phase) % blocks) * blockSize;
+					final int targetEnd = Math.min(n, target + blockSize);
+					tasks.add(pool.submit(() -> 
+						sweep(distances, offsets, order, from, to, pivots, target, targetEnd, y)));
 				}
+				for( ForkJoinTask<Double> task : tasks )
+					deltaSum += task.get();
 			}
+		}catch( InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		}catch( ExecutionException e){
+			throw new IllegalStateException(e.getCause());
+		}
+		return deltaSum;
+	}
 
-			if (Math.abs(prevDeltaSum - deltaSum) < tol)
-				break;
-			prevDeltaSum = deltaSum;
+	/**
+	 * Move os pontos <code>order[target..targetEnd)</code> em relação aos
+	 * pontos <code>order[from..to)</code>.
+	 * @return soma dos deslocamentos.
+	 */
+	private double sweep(double[] distances, int[] offsets, int[] order, int from, int to, double[] pivots,
+			int target, int targetEnd, double[] y) {
+		double deltaSum = 0;
+		for (int p = from; p < to; p++) {
+			final int a = order[p];
+			final double ax = pivots[2 * a], ay = pivots[2 * a + 1];
+			final int row = offsets[a];
+			for (int q = target; q < targetEnd; q++) {
+				final int b = order[q];
+				if (a == b)
+					continue;
+
+				double dx = y[2 * b] - ax, dy = y[2 * b + 1] - ay;
+				double d2 = Math.max(Math.sqrt(dx * dx + dy * dy), eps);
+				double delta = ((b > a ? distances[row + b] : distances[offsets[b] + a]) - d2) / fraction;
+				deltaSum += Math.abs(delta);
+				double scale = delta / d2;
+				y[2 * b] += scale * dx;
+				y[2 * b + 1] += scale * dy;
+			}
 		}
+		return deltaSum;
+	}
 
-		return y;
+	/**
+	 * Embaralha vetor (Fisher-Yates).
+	 */
+	private static void shuffle(int[] values, SplittableRandom random) {
+		for( int i = values.length - 1; i > 0; i-- ){
+			int j = random.nextInt(i + 1);
+			int t = values[i];
+			values[i] = values[j];
+			values[j] = t;
+		}
 	}
 
 }
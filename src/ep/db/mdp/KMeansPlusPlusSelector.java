@@ -0,0 +1,66 @@
+package ep.db.mdp;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+
+/**
+ * Seleção de pontos de controle pela inicialização do k-means++
+ * <i>(D. Arthur & S. Vassilvitskii, 2007)</i>: o primeiro ponto é
+ * escolhido aleatoriamente e cada ponto seguinte com probabilidade
+ * proporcional ao quadrado da distância ao ponto de controle mais
+ * próximo, cobrindo regiões esparsas do espaço sem se restringir
+ * a <i>outliers</i>.
+ * @version 1.0
+ * @since 2017
+ *
+ */
+public class KMeansPlusPlusSelector implements ControlPointSelector {
+
+	@Override
+	public int[] select(DoubleMatrix2D x, int numControlPoints, Random rng) {
+		final int n = x.rows();
+		RowDistances distances = new RowDistances(x);
+		double[] nearest = new double[n], dist = new double[n];
+		Arrays.fill(nearest, Double.POSITIVE_INFINITY);
+		boolean[] selected = new boolean[n];
+
+		int[] cpoints = new int[numControlPoints];
+		int c = rng.nextInt(n);
+		for( int s = 0; s < numControlPoints; s++ ){
+			cpoints[s] = c;
+			selected[c] = true;
+			if ( s == numControlPoints - 1 )
+				break;
+
+			// Atualiza distância ao ponto de controle mais próximo
+			distances.squaredDistances(c, dist);
+			double total = 0;
+			for( int r = 0; r < n; r++ ){
+				if ( dist[r] < nearest[r] )
+					nearest[r] = dist[r];
+				if ( !selected[r] )
+					total += nearest[r];
+			}
+
+			// Sorteia próximo ponto com probabilidade D^2
+			c = -1;
+			if ( total > 0 ){
+				double target = rng.nextDouble() * total;
+				for( int r = 0; r < n; r++ ){
+					if ( selected[r] )
+						continue;
+					c = r;
+					target -= nearest[r];
+					if ( target < 0 )
+						break;
+				}
+			}
+			// Pontos restantes coincidem com os selecionados
+			while( c < 0 || selected[c] )
+				c = rng.nextInt(n);
+		}
+		return cpoints;
+	}
+}
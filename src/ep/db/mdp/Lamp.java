@@ -3,10 +3,11 @@ package ep.db.mdp;
 import java.awt.Color;
 import java.awt.Shape;
 import java.io.IOException;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.Arrays;
 import java.util.Random;
-import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntToDoubleFunction;
 
 import org.jblas.DoubleMatrix;
 import org.jblas.ranges.RangeUtils;
@@ -27,8 +28,11 @@ import cern.colt.matrix.tdouble.DoubleMatrix1D;
 import cern.colt.matrix.tdouble.DoubleMatrix2D;
 import cern.colt.matrix.tdouble.algo.DenseDoubleAlgebra;
 import cern.colt.matrix.tdouble.algo.decomposition.DenseDoubleSingularValueDecomposition;
+import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix1D;
 import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.SparseRCDoubleMatrix2D;
 import cern.jet.math.tdouble.DoubleFunctions;
+import ep.db.matrix.SparseRows;
 
 /**
  * Implmentação do algoritmo LAMP para
@@ -40,36 +44,164 @@ import cern.jet.math.tdouble.DoubleFunctions;
  * @since 2017
  *
  */
-public class Lamp {
+public class Lamp implements AutoCloseable {
 
 	/**
 	 * Tolerância mínima padrão
 	 */
 	private static final double TOL = 1e-6;
 
+	/**
+	 * Número mínimo de pontos por tarefa (execução paralela)
+	 */
+	private static final int GRAIN = 256;
+
 	/**
 	 * Gerador aleatório.
 	 */
 	private final Random rng;
 
+	/**
+	 * Número de threads (0 = número de processadores,
+	 * 1 = execução sequencial)
+	 */
+	private int parallelism = 0;
+
+	/**
+	 * Pool de threads da projeção paralela (criado na primeira projeção
+	 * paralela e reutilizado pelas seguintes, ex: lotes de documentos)
+	 */
+	private ForkJoinPool pool;
+
+	/**
+	 * Seleção dos pontos de controle
+	 */
+	private ControlPointSelector selector = new RandomSelector();
+
+	/**
+	 * Número de pontos de controle (0 = raiz quadrada do
+	 * número de pontos)
+	 */
+	private int numControlPoints = 0;
+
+	/**
+	 * Número de pontos de controle mais próximos utilizados
+	 * na projeção de cada ponto (0 = todos)
+	 */
+	private int neighbors = 0;
+
+	/**
+	 * Projeção dos pontos de controle
+	 */
+	private Projection controlPointProjection = new ForceScheme();
+
+	/**
+	 * Pontos de controle da última projeção
+	 */
+	private int[] controlPoints;
+
+	/**
+	 * Projeção dos pontos de controle da última projeção
+	 */
+	private DoubleMatrix2D controlPointsProjection;
+
 	/**
 	 * Cria uma novo objeto para projeção multidimensional,
 	 * inicialize gerador aleatório.
 	 */
 	public Lamp() {
-		this(0);
+		rng = new Random();
 	}
 	
 	/**
 	 * Cria um novo objeto para projeção multidimensional,
 	 * inicializando o gerador aletória com a semente
-	 * dada. 
+	 * dada (qualquer valor, inclusive 0). A projeção padrão dos pontos
+	 * de controle ({@link ForceScheme}) recebe uma semente derivada,
+	 * portanto projeções com a mesma semente e os mesmos pontos são
+	 * idênticas.
 	 * @param seed semente do gerador aleatório.
 	 */
 	public Lamp(long seed) {
-		rng = new Random();
-		if (seed > 0)
-			rng.setSeed(seed);
+		rng = new Random(seed);
+		ForceScheme forceScheme = new ForceScheme();
+		forceScheme.setSeed(rng.nextLong());
+		controlPointProjection = forceScheme;
+	}
+
+	/**
+	 * Atribui número de threads utilizadas na projeção dos pontos.
+	 * Cada ponto é projetado de forma independente (linhas disjuntas
+	 * da matriz de projeção), portanto o resultado é idêntico ao da
+	 * execução sequencial.
+	 * @param parallelism número de threads, 0 para utilizar
+	 * o número de processadores ou 1 para execução sequencial.
+	 */
+	public void setParallelism(int parallelism) {
+		if ( parallelism != this.parallelism )
+			close();
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Encerra o pool de threads da projeção paralela (recriado caso
+	 * uma nova projeção seja realizada).
+	 */
+	@Override
+	public void close() {
+		if ( pool != null ){
+			pool.shutdown();
+			pool = null;
+		}
+	}
+
+	/**
+	 * Atribui estratégia de seleção dos pontos de controle.
+	 * @param selector seleção dos pontos de controle (padrão: aleatória).
+	 */
+	public void setSelector(ControlPointSelector selector) {
+		this.selector = selector;
+	}
+
+	/**
+	 * Atribui número de pontos de controle.
+	 * @param numControlPoints número de pontos de controle ou 0 para
+	 * utilizar a raiz quadrada do número de pontos.
+	 */
+	public void setNumberOfControlPoints(int numControlPoints) {
+		this.numControlPoints = numControlPoints;
+	}
+
+	/**
+	 * Atribui projeção utilizada para os pontos de controle, com a
+	 * sua métrica de distância (o LAMP utiliza a distância euclidiana
+	 * para os demais pontos).
+	 * @param controlPointProjection projeção dos pontos de controle
+	 * (padrão: {@link ForceScheme}, distância euclidiana).
+	 */
+	public void setControlPointProjection(Projection controlPointProjection) {
+		this.controlPointProjection = controlPointProjection;
+	}
+
+	/**
+	 * Retorna projeção utilizada para os pontos de controle.
+	 * @return projeção dos pontos de controle.
+	 */
+	public Projection getControlPointProjection() {
+		return controlPointProjection;
+	}
+
+	/**
+	 * Atribui número de pontos de controle utilizados na projeção
+	 * de cada ponto: somente os <code>m</code> pontos de controle mais
+	 * próximos (encontrados com uma {@link VantagePointTree} construída
+	 * sobre os pontos de controle) são considerados no mapeamento local,
+	 * reduzindo o custo por ponto de O(k.dim) para O(m.dim) mais a busca.
+	 * @param neighbors número de pontos de controle mais próximos
+	 * ou 0 para utilizar todos.
+	 */
+	public void setNeighbors(int neighbors) {
+		this.neighbors = neighbors;
 	}
 
 	/**
@@ -79,49 +211,110 @@ public class Lamp {
 	 * @return matriz de projeção multimensional (N x 2).
 	 */
 	public DoubleMatrix2D project(DoubleMatrix2D x){
-		DoubleMatrix2D xs, ys;
+		DoubleMatrix2D ys = projectControlPoints(x);
 
-		// Seleciona control points aleatoriamente
-		int n = (int) Math.sqrt( x.rows() );
-		Set<Integer> sample = new HashSet<>(n);
-		while( sample.size() < n ){
-			Integer next = rng.nextInt( x.rows() );
-			sample.add(next);
-		}
+		// Projeta restante dos pontos
+		return project(x, controlPoints, ys);
+	}
 
-		// Salva control points em vetor de inteiros.
-		int[] cpoints = new int[n];
-		Iterator<Integer> iter = sample.iterator();
-		for(int j = 0; j < n && iter.hasNext(); j++){
-			cpoints[j] = iter.next();
-		}
+	/**
+	 * Seleciona e projeta somente os pontos de controle entre as linhas
+	 * da matriz dada (ex: uma amostra dos pontos, que são projetados
+	 * depois em lotes com {@link #project(DoubleMatrix2D, DoubleMatrix2D, DoubleMatrix2D)}).
+	 * @param x matriz com os candidatos a pontos de controle (N x M).
+	 * @return projeção dos pontos de controle (k x 2), cujos índices
+	 * são retornados por {@link #getControlPoints()}.
+	 */
+	public DoubleMatrix2D projectControlPoints(DoubleMatrix2D x){
+		DoubleMatrix2D xs, ys;
+
+		// Seleciona control points
+		int[] cpoints = selectControlPoints(x);
 
 		// Projeta control points usando MDS
-		ForceScheme forceScheme = new ForceScheme();
-		xs = x.viewSelection(cpoints, null).copy();
-		ys = forceScheme.project(xs);
+		if ( x instanceof SparseRCDoubleMatrix2D )
+			xs = SparseRows.select((SparseRCDoubleMatrix2D) x, cpoints);
+		else
+			xs = x.viewSelection(cpoints, null).copy();
+		ys = controlPointProjection.project(xs);
+		controlPoints = cpoints;
+		controlPointsProjection = ys;
+		return ys;
+	}
 
-		// Projeta restante dos pontos
-		return project(x, cpoints, ys);
+	/**
+	 * Seleciona pontos de controle entre as linhas da matriz dada, sem
+	 * projetá-los.
+	 * @param x matriz com os candidatos a pontos de controle (N x M).
+	 * @return índices dos pontos de controle (linhas de <code>x</code>).
+	 */
+	public int[] selectControlPoints(DoubleMatrix2D x){
+		int n = numControlPoints > 0 ? Math.min(numControlPoints, x.rows()) : (int) Math.sqrt( x.rows() );
+		return selector.select(x, n, rng);
+	}
+
+	/**
+	 * Retorna pontos de controle selecionados na última execução
+	 * de {@link #project(DoubleMatrix2D)}.
+	 * @return índices dos pontos de controle (linhas da matriz projetada)
+	 * ou <code>null</code> caso nenhuma projeção tenha sido realizada.
+	 */
+	public int[] getControlPoints() {
+		return controlPoints;
+	}
+
+	/**
+	 * Retorna projeção dos pontos de controle da última execução
+	 * de {@link #project(DoubleMatrix2D)}, utilizada para projetar
+	 * novos pontos com {@link #project(DoubleMatrix2D, DoubleMatrix2D, DoubleMatrix2D)}.
+	 * @return projeção dos pontos de controle (k x 2) ou <code>null</code>
+	 * caso nenhuma projeção tenha sido realizada.
+	 */
+	public DoubleMatrix2D getControlPointsProjection() {
+		return controlPointsProjection;
 	}
 
 	/**
 	 * Realiza projeção multidimensional para a matriz informada.
+	 * <p>Para projeções no plano (<code>p = 2</code>) a transformação ortogonal
+	 * (eq. 7) é calculada em forma fechada ({@link PlanarProcrustes}), sem SVD
+	 * e sem alocação por ponto; a SVD é utilizada somente quando a solução
+	 * não é única.</p>
 	 * @param x matriz com valores a serem projetados (N x M).
 	 * @param cpoints índices dos pontos de controle na matriz <code>x</code>
 	 * a serem utilizados na projeção.
 	 * @param ys projeção muldimensional para os pontos de controle 
 	 * (<code>cpoints.length</code> x 2). 
-	 * @return
+	 * @return matriz de projeção multimensional (N x 2).
 	 */
 	public DoubleMatrix2D project(DoubleMatrix2D x, int[] cpoints, DoubleMatrix2D ys){
 
 		// Seleciona valores dos pontos de controle
-		DoubleMatrix2D xs = x.viewSelection(cpoints, null).copy();
+		if ( x instanceof SparseRCDoubleMatrix2D )
+			return project(x, SparseRows.select((SparseRCDoubleMatrix2D) x, cpoints), ys);
+		return project(x, x.viewSelection(cpoints, null).copy(), ys);
+	}
+
+	/**
+	 * Realiza projeção multidimensional para a matriz informada a partir
+	 * de pontos de controle dados, que não precisam pertencer à matriz
+	 * (ex: pontos de controle de uma projeção anterior, para posicionar
+	 * somente novos pontos).
+	 * @param x matriz com valores a serem projetados (N x M).
+	 * @param xs valores dos pontos de controle (k x M), esparsa (CSR) 
+	 * caso <code>x</code> seja esparsa.
+	 * @param ys projeção muldimensional para os pontos de controle 
+	 * (k x 2). 
+	 * @return matriz de projeção multimensional (N x 2).
+	 */
+	public DoubleMatrix2D project(DoubleMatrix2D x, DoubleMatrix2D xs, DoubleMatrix2D ys){
+
+		if ( x instanceof SparseRCDoubleMatrix2D )
+			return project((SparseRCDoubleMatrix2D) x, (SparseRCDoubleMatrix2D) xs, ys);
 
 		int ninst = x.rows(),
 				dim = x.columns();
-		int k = cpoints.length,
+		int k = xs.rows(),
 				a = xs.columns();
 		int p = ys.columns();
 
@@ -132,73 +325,402 @@ public class Lamp {
 		
 		DoubleMatrix2D Y = DoubleFactory2D.dense.make(ninst, p, 0.0);
 
-		for (int pt = 0; pt < ninst; pt++){
-			// Calculo dos alfas
-			DoubleMatrix1D alpha = DoubleFactory1D.dense.make(k, 0.0);
-			boolean skip = false;
-			for( int i = 0; i < k; i++){
-				// Verifica se o ponto a ser projetado é um ponto de controle
-				// para evitar divisão por zero.
-				double norm2 = alg.norm2( xs.viewRow(i).copy().assign(x.viewRow(pt), DoubleFunctions.minus)); 
-				if ( norm2 < TOL ){
-					// ponto muito próximo ao ponto amostrado
-					// posicionando de forma similar.
-					Y.viewRow(pt).assign(ys.viewRow(i));
-					skip = true;
-					break;
-				}
+		// Produtos internos entre pontos de controle (solução fechada, p = 2)
+		final double[] gram = p == 2 ? PlanarProcrustes.gram(xs) : null;
+		final double[] ysValues = p == 2 ? PlanarProcrustes.flatten(ys) : null;
 
-				alpha.setQuick(i, 1.0 / norm2);
+		// Índice dos pontos de controle (k vizinhos mais próximos)
+		final VantagePointTree tree = createTree(k, (i, j) -> {
+			double sum = 0;
+			for( int e = 0; e < dim; e++ ){
+				double d = xs.getQuick(i, e) - xs.getQuick(j, e);
+				sum += d * d;
 			}
+			return Math.sqrt(sum);
+		});
+
+		forEachRange(ninst, (from, to) -> {
+			// Buffers da tarefa
+			PlanarProcrustes procrustes = p == 2 ? new PlanarProcrustes(gram, ysValues, k) : null;
+			double[] alphas = new double[k], dots = new double[k], y = new double[p];
+			VantagePointTree.Search search = tree != null ? tree.new Search(neighbors) : null;
+			int[] nearest = new int[k];
+			double[] weights = new double[k];
+			final int[] current = new int[1];
+			IntToDoubleFunction distance = (i) -> {
+				double sum = 0;
+				for( int e = 0; e < dim; e++ ){
+					double d = xs.getQuick(i, e) - x.getQuick(current[0], e);
+					sum += d * d;
+				}
+				return Math.sqrt(sum);
+			};
+
+			for (int pt = from; pt < to; pt++){
+				// Calculo dos alfas
+				boolean skip = false;
+				double alphaSum = 0;
+				int count = k;
+				int[] index = null;
+				if ( search != null ){
+					// Somente os pontos de controle mais próximos
+					current[0] = pt;
+					count = search.nearest(distance, neighbors, nearest, alphas);
+					index = nearest;
+					if ( alphas[0] < TOL ){
+						for( int j = 0; j < p; j++ )
+							Y.setQuick(pt, j, ys.getQuick(nearest[0], j));
+						continue;
+					}
+					for( int q = 0; q < count; q++ ){
+						int i = nearest[q];
+						double dot = 0;
+						for( int j = 0; j < dim; j++ )
+							dot += xs.getQuick(i, j) * x.getQuick(pt, j);
+						alphas[q] = 1.0 / alphas[q];
+						dots[q] = dot;
+						alphaSum += alphas[q];
+					}
+				}
+				else for( int i = 0; i < k; i++){
+					double dist = 0, dot = 0;
+					for( int j = 0; j < dim; j++ ){
+						double xv = x.getQuick(pt, j), sv = xs.getQuick(i, j);
+						dist += (sv - xv) * (sv - xv);
+						dot += sv * xv;
+					}
+					// Verifica se o ponto a ser projetado é um ponto de controle
+					// para evitar divisão por zero.
+					double norm2 = Math.sqrt(dist);
+					if ( norm2 < TOL ){
+						// ponto muito próximo ao ponto amostrado
+						// posicionando de forma similar.
+						for( int j = 0; j < p; j++ )
+							Y.setQuick(pt, j, ys.getQuick(i, j));
+						skip = true;
+						break;
+					}
+
+					alphas[i] = 1.0 / norm2;
+					dots[i] = dot;
+					alphaSum += alphas[i];
+				}
+
+				if ( skip )
+					continue;
+
+				if ( procrustes != null && procrustes.project(index, count, alphas, alphaSum, dots, y) ){
+					Y.setQuick(pt, 0, y[0]);
+					Y.setQuick(pt, 1, y[1]);
+					continue;
+				}
+
+				DoubleMatrix1D alpha = new DenseDoubleMatrix1D(expand(index, count, alphas, weights));
 
-			if ( skip )
-				continue;
+				// Computa x~ e y~ (eq. 3)
+				DoubleMatrix1D xtilde = DoubleFactory1D.dense.make(dim, 0.0);
+				DoubleMatrix1D ytilde = DoubleFactory1D.dense.make(p, 0.0);
 
-			double alphaSum = alpha.zSum();
+				xtilde = alg.mult(xs.viewDice(), alpha).assign(DoubleFunctions.div(alphaSum));
+				ytilde = alg.mult(ys.viewDice(), alpha).assign(DoubleFunctions.div(alphaSum));
 
-			// Computa x~ e y~ (eq. 3)
-			DoubleMatrix1D xtilde = DoubleFactory1D.dense.make(dim, 0.0);
-			DoubleMatrix1D ytilde = DoubleFactory1D.dense.make(p, 0.0);
+				DoubleMatrix2D xhat = xs.copy(), yhat = ys.copy();
 
-			xtilde = alg.mult(xs.viewDice(), alpha).assign(DoubleFunctions.div(alphaSum));
-			ytilde = alg.mult(ys.viewDice(), alpha).assign(DoubleFunctions.div(alphaSum));
+				// Computa x^ e y^ (eq. 6)
+				for( int i = 0; i < xs.rows(); i++){
+					xhat.viewRow(i).assign(xtilde, DoubleFunctions.minus);
+					yhat.viewRow(i).assign(ytilde, DoubleFunctions.minus);
+				}
+
+				DoubleMatrix2D At, B;
+
+				// Sqrt(alpha)
+				alpha.assign(DoubleFunctions.sqrt);
+				for(int i = 0; i < xhat.columns(); i++ )
+					xhat.viewColumn(i).assign(alpha, DoubleFunctions.mult);
+				for(int i = 0; i < yhat.columns(); i++ )
+					yhat.viewColumn(i).assign(alpha, DoubleFunctions.mult);
+
+				At = xhat.viewDice();
+				B = yhat;
+
+				DenseDoubleSingularValueDecomposition svd = new DenseDoubleSingularValueDecomposition( 
+						At.zMult(B, null), true , false  );
+				DoubleMatrix2D U = svd.getU(), V = svd.getV();
 
-			DoubleMatrix2D xhat = xs.copy(), yhat = ys.copy();
+				// eq. 7: M = UV
+				DoubleMatrix2D M = U.zMult(V.viewDice(), null); 
 
-			// Computa x^ e y^ (eq. 6)
-			for( int i = 0; i < xs.rows(); i++){
-				xhat.viewRow(i).assign(xtilde, DoubleFunctions.minus);
-				yhat.viewRow(i).assign(ytilde, DoubleFunctions.minus);
+				//eq. 8: y = (x - xtil) * M + ytil
+				DoubleMatrix1D rowX = x.viewRow(pt).copy();
+				rowX = M.viewDice().zMult(rowX.assign(xtilde, DoubleFunctions.minus),null).assign(ytilde, DoubleFunctions.plus);
+				Y.viewRow(pt).assign(rowX);
 			}
+		});
 
-			DoubleMatrix2D At, B;
+		return Y;
+	}
 
-			// Sqrt(alpha)
-			alpha.assign(DoubleFunctions.sqrt);
-			for(int i = 0; i < xhat.columns(); i++ )
-				xhat.viewColumn(i).assign(alpha, DoubleFunctions.mult);
-			for(int i = 0; i < yhat.columns(); i++ )
-				yhat.viewColumn(i).assign(alpha, DoubleFunctions.mult);
+	/**
+	 * Realiza projeção multidimensional para uma matriz esparsa
+	 * (CSR), sem conversão para matriz densa.
+	 * <p>Como <code>sum(alpha_i * (ys_i - y~)) = 0</code>, o produto
+	 * <code>A'B</code> (eq. 7) é igual a <code>sum(alpha_i * xs_i' * (ys_i - y~))</code>
+	 * e a eq. 8 pode ser calculada como <code>x*M - x~*M + y~</code>,
+	 * envolvendo somente os valores não nulos de <code>x</code> e dos pontos de
+	 * controle. Colunas sem valores nos pontos de controle não contribuem
+	 * para <code>M</code> e são descartadas.</p>
+	 * <p>Para projeções no plano (<code>p = 2</code>) a SVD é substituída pela
+	 * solução fechada de {@link PlanarProcrustes}, sem alocação por ponto.</p>
+	 * @param x matriz esparsa com valores a serem projetados (N x M).
+	 * @param xs valores dos pontos de controle (k x M).
+	 * @param ys projeção muldimensional para os pontos de controle 
+	 * (k x 2).
+	 * @return matriz de projeção multimensional (N x 2).
+	 */
+	private DoubleMatrix2D project(SparseRCDoubleMatrix2D x, SparseRCDoubleMatrix2D xs, DoubleMatrix2D ys){
 
-			At = xhat.viewDice();
-			B = yhat;
+		int ninst = x.rows();
+		int k = xs.rows();
+		int p = ys.columns();
 
-			DenseDoubleSingularValueDecomposition svd = new DenseDoubleSingularValueDecomposition( 
-					At.zMult(B, null), true , false  );
-			DoubleMatrix2D U = svd.getU(), V = svd.getV();
+		final int[] xp = x.getRowPointers(), xc = x.getColumnIndexes();
+		final double[] xv = x.getValues();
+		final int[] sp = xs.getRowPointers(), sc = xs.getColumnIndexes();
+		final double[] sv = xs.getValues();
+
+		// Mapeamento coluna -> linha de A'B (somente colunas presentes
+		// nos pontos de controle)
+		int[] local = new int[x.columns()];
+		Arrays.fill(local, -1);
+		int ncols = 0;
+		for( int e = 0; e < sc.length; e++ ){
+			if ( local[sc[e]] < 0 )
+				local[sc[e]] = ncols++;
+		}
 
-			// eq. 7: M = UV
-			DoubleMatrix2D M = U.zMult(V.viewDice(), null); 
+		final int rowsAtB = Math.max(ncols, p);
+		DoubleMatrix2D Y = DoubleFactory2D.dense.make(ninst, p, 0.0);
 
-			//eq. 8: y = (x - xtil) * M + ytil
-			DoubleMatrix1D rowX = x.viewRow(pt).copy();
-			rowX = M.viewDice().zMult(rowX.assign(xtilde, DoubleFunctions.minus),null).assign(ytilde, DoubleFunctions.plus);
-			Y.viewRow(pt).assign(rowX);
+		// Produtos internos entre pontos de controle (solução fechada, p = 2)
+		final double[] gram = p == 2 ? new double[k * k] : null;
+		if ( gram != null ){
+			for( int i = 0; i < k; i++ )
+				for( int j = i; j < k; j++ )
+					gram[i * k + j] = gram[j * k + i] = SparseRows.dot(xs, i, xs, j);
 		}
+		final double[] ysValues = p == 2 ? PlanarProcrustes.flatten(ys) : null;
+
+		// Índice dos pontos de controle (k vizinhos mais próximos)
+		final VantagePointTree tree = createTree(k, (i, j) -> Math.sqrt(SparseRows.squaredDistance(xs, i, xs, j)));
+
+		forEachRange(ninst, (from, to) -> {
+			// Buffers da tarefa
+			PlanarProcrustes procrustes = p == 2 ? new PlanarProcrustes(gram, ysValues, k) : null;
+			DoubleMatrix2D AtB = null;
+			double[] alpha = new double[k], dots = new double[k];
+			double[] ytilde = new double[p], y = new double[p];
+			VantagePointTree.Search search = tree != null ? tree.new Search(neighbors) : null;
+			int[] nearest = new int[k];
+			double[] weights = new double[k];
+			final int[] current = new int[1];
+			IntToDoubleFunction distance = (i) -> Math.sqrt(SparseRows.squaredDistance(xs, i, x, current[0]));
+
+			for (int pt = from; pt < to; pt++){
+				// Calculo dos alfas
+				boolean skip = false;
+				double alphaSum = 0;
+				int count = k;
+				int[] index = null;
+				if ( search != null ){
+					// Somente os pontos de controle mais próximos
+					current[0] = pt;
+					count = search.nearest(distance, neighbors, nearest, alpha);
+					index = nearest;
+					if ( alpha[0] < TOL ){
+						Y.viewRow(pt).assign(ys.viewRow(nearest[0]));
+						continue;
+					}
+					for( int q = 0; q < count; q++ ){
+						alpha[q] = 1.0 / alpha[q];
+						alphaSum += alpha[q];
+					}
+				}
+				else for( int i = 0; i < k; i++){
+					double norm2 = Math.sqrt(SparseRows.squaredDistance(xs, i, x, pt));
+					if ( norm2 < TOL ){
+						// ponto muito próximo ao ponto amostrado
+						// posicionando de forma similar.
+						Y.viewRow(pt).assign(ys.viewRow(i));
+						skip = true;
+						break;
+					}
+					alpha[i] = 1.0 / norm2;
+					alphaSum += alpha[i];
+				}
+
+				if ( skip )
+					continue;
+
+				if ( procrustes != null ){
+					for( int q = 0; q < count; q++ )
+						dots[q] = SparseRows.dot(xs, index != null ? index[q] : q, x, pt);
+					if ( procrustes.project(index, count, alpha, alphaSum, dots, y) ){
+						Y.setQuick(pt, 0, y[0]);
+						Y.setQuick(pt, 1, y[1]);
+						continue;
+					}
+				}
+
+				// Pesos de todos os pontos de controle (0 para os não utilizados)
+				double[] a = expand(index, count, alpha, weights);
+
+				// Computa y~ (eq. 3)
+				for( int j = 0; j < p; j++ ){
+					double sum = 0;
+					for( int i = 0; i < k; i++ )
+						sum += a[i] * ys.getQuick(i, j);
+					ytilde[j] = sum / alphaSum;
+				}
+
+				// A'B = sum(alpha_i * xs_i' * (ys_i - y~))
+				if ( AtB == null )
+					AtB = new DenseDoubleMatrix2D(rowsAtB, p);
+				AtB.assign(0);
+				for( int i = 0; i < k; i++ ){
+					for( int j = 0; j < p; j++ ){
+						double w = a[i] * (ys.getQuick(i, j) - ytilde[j]);
+						for( int e = sp[i]; e < sp[i + 1]; e++ ){
+							int r = local[sc[e]];
+							AtB.setQuick(r, j, AtB.getQuick(r, j) + sv[e] * w);
+						}
+					}
+				}
+
+				DenseDoubleSingularValueDecomposition svd = new DenseDoubleSingularValueDecomposition( 
+						AtB, true , false  );
+				DoubleMatrix2D U = svd.getU(), V = svd.getV();
+
+				// eq. 7: M = UV
+				DoubleMatrix2D M = U.zMult(V.viewDice(), null); 
+
+				//eq. 8: y = x * M - x~ * M + y~
+				for( int j = 0; j < p; j++ ){
+					double xM = 0;
+					for( int e = xp[pt]; e < xp[pt + 1]; e++ ){
+						int r = local[xc[e]];
+						if ( r >= 0 )
+							xM += xv[e] * M.getQuick(r, j);
+					}
+
+					double xtildeM = 0;
+					for( int i = 0; i < k; i++ ){
+						double sum = 0;
+						for( int e = sp[i]; e < sp[i + 1]; e++ )
+							sum += sv[e] * M.getQuick(local[sc[e]], j);
+						xtildeM += a[i] * sum;
+					}
+
+					Y.setQuick(pt, j, xM - xtildeM / alphaSum + ytilde[j]);
+				}
+			}
+		});
 
 		return Y;
 	}
 
+	/**
+	 * Cria índice sobre os pontos de controle caso somente os
+	 * mais próximos sejam utilizados.
+	 * @param k número de pontos de controle.
+	 * @param metric distância entre pontos de controle.
+	 * @return índice ou <code>null</code> se todos os pontos de controle
+	 * são utilizados.
+	 */
+	private VantagePointTree createTree(int k, VantagePointTree.Metric metric) {
+		if ( neighbors <= 0 || neighbors >= k )
+			return null;
+		return new VantagePointTree(k, metric, rng);
+	}
+
+	/**
+	 * Retorna pesos de todos os pontos de controle.
+	 * @param index pontos de controle utilizados ou <code>null</code> (todos).
+	 * @param count número de pontos de controle utilizados.
+	 * @param alpha pesos dos pontos de controle utilizados.
+	 * @param weights buffer com k posições.
+	 * @return <code>alpha</code> caso todos os pontos de controle sejam
+	 * utilizados, caso contrário <code>weights</code> com os pesos e 0
+	 * para os pontos não utilizados.
+	 */
+	private static double[] expand(int[] index, int count, double[] alpha, double[] weights) {
+		if ( index == null )
+			return alpha;
+		Arrays.fill(weights, 0);
+		for( int q = 0; q < count; q++ )
+			weights[index[q]] = alpha[q];
+		return weights;
+	}
+
+	/**
+	 * Projeção de um intervalo de pontos.
+	 */
+	@FunctionalInterface
+	private interface RangeProjection {
+
+		/**
+		 * Projeta pontos do intervalo [from, to).
+		 */
+		void project(int from, int to);
+	}
+
+	/**
+	 * Executa projeção dos pontos [0, n), dividindo-os em intervalos
+	 * projetados em paralelo (no mesmo {@link ForkJoinPool} em todas as
+	 * projeções, até {@link #close()}) ou sequencialmente caso
+	 * <code>parallelism == 1</code>.
+	 * @param n número de pontos.
+	 * @param projection projeção de um intervalo de pontos.
+	 */
+	private void forEachRange(int n, RangeProjection projection) {
+		if ( parallelism == 1 || n <= GRAIN ){
+			projection.project(0, n);
+			return;
+		}
+
+		if ( pool == null )
+			pool = parallelism > 0 ? new ForkJoinPool(parallelism) : new ForkJoinPool();
+		pool.invoke(new Range(projection, 0, n));
+	}
+
+	/**
+	 * Divide intervalo de pontos recursivamente até {@link #GRAIN} pontos.
+	 */
+	private static class Range extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final RangeProjection projection;
+
+		private final int from, to;
+
+		Range(RangeProjection projection, int from, int to) {
+			this.projection = projection;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if ( to - from > GRAIN ){
+				int mid = (from + to) >>> 1;
+				invokeAll(new Range(projection, from, mid), new Range(projection, mid, to));
+			}
+			else
+				projection.project(from, to);
+		}
+	}
+
 	public static void main(String[] args) throws IOException {
 
 		DoubleMatrix data = DoubleMatrix.loadCSVFile("/Users/jose/Documents/freelancer/petricaep/lamp-python/iris.data");
@@ -1,12 +1,22 @@
 package ep.db.mdp;
 
 import java.io.FileInputStream;
+import java.util.Arrays;
 import java.util.Properties;
+import java.util.Random;
 
 import org.apache.log4j.Logger;
 
 import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.SparseRCDoubleMatrix2D;
+import cern.jet.math.tdouble.DoubleFunctions;
 import ep.db.database.DatabaseService;
+import ep.db.database.DatabaseService.DocumentMatrix;
+import ep.db.database.ProjectionStaging;
+import ep.db.matrix.SparseRows;
+import ep.db.model.ProjectionRun;
+import ep.db.tfidf.LogaritmicTFIDF;
+import ep.db.tfidf.Vocabulary;
 
 /**
  * Classe para realizar projeção multidimensional
@@ -37,6 +47,106 @@ public class MultidimensionalProjection {
 	 */
 	private  boolean normalize;
 
+	/**
+	 * Número de threads da projeção LAMP
+	 * (0 = número de processadores)
+	 */
+	private final int threads;
+
+	/**
+	 * Seleção dos pontos de controle: random, kmeans++, farthest
+	 * ou relevance
+	 */
+	private final String selector;
+
+	/**
+	 * Número de pontos de controle (0 = raiz quadrada do
+	 * número de documentos)
+	 */
+	private final int controlPoints;
+
+	/**
+	 * Número de pontos de controle mais próximos utilizados na
+	 * projeção de cada documento (0 = todos)
+	 */
+	private final int neighbors;
+
+	/**
+	 * Número de threads do Force Scheme (projeção dos pontos
+	 * de controle, 1 = sequencial)
+	 */
+	private final int forceSchemeThreads;
+
+	/**
+	 * Variação relativa mínima do Force Scheme entre iterações
+	 * (0 = todas as iterações, somente exact)
+	 */
+	private final float forceSchemeTol;
+
+	/**
+	 * Número máximo de iterações da projeção dos pontos de controle
+	 * (0 = 50 no exact, 100 no barnes_hut)
+	 */
+	private final int forceSchemeMaxIter;
+
+	/**
+	 * Número de vizinhos mais próximos e de pontos amostrados por
+	 * ponto em cada iteração da projeção aproximada (Barnes-Hut)
+	 */
+	private final int forceSchemeNeighbors, forceSchemeSamples;
+
+	/**
+	 * Projeção dos pontos de controle: exact (Force Scheme) ou
+	 * barnes_hut (aproximada)
+	 */
+	private final String forceScheme;
+
+	/**
+	 * Critério de abertura dos nós da projeção aproximada
+	 * (Barnes-Hut)
+	 */
+	private final float forceSchemeTheta;
+
+	/**
+	 * Distância do cosseno (<code>mdp.distance=cosine</code>): linhas
+	 * normalizadas antes do LAMP
+	 */
+	private final boolean cosine;
+
+	/**
+	 * Projeção incremental (somente novos documentos, com os
+	 * pontos de controle da última execução)
+	 */
+	private final boolean incremental;
+
+	/**
+	 * Número de documentos por lote na projeção em lotes
+	 * (0 = todos os documentos em memória)
+	 */
+	private final int chunkSize;
+
+	/**
+	 * Número de documentos da amostra utilizada na seleção dos
+	 * pontos de controle (projeção em lotes)
+	 */
+	private final int sampleSize;
+
+	/**
+	 * Semente da projeção: as sementes da amostra, do LAMP e da
+	 * projeção dos pontos de controle são derivadas dela
+	 */
+	private final long seed;
+
+	/**
+	 * Alinhar projeção à execução anterior (Procrustes)
+	 */
+	private final boolean align;
+
+	/**
+	 * Diferença mínima para atualizar a projeção de um documento
+	 */
+	private final double epsilon;
+
 	/**
 	 * Cria novo objeto para projeção multidimensional
 	 * com a configuração dada.
@@ -54,54 +164,640 @@ public class MultidimensionalProjection {
 	public MultidimensionalProjection( Properties config, boolean normalize ) {
 		this.dbService = new DatabaseService(config);
 		this.normalize = normalize;
+		this.threads = Integer.parseInt(config.getProperty("mdp.threads", "0"));
+		this.selector = config.getProperty("mdp.selector", "random");
+		this.controlPoints = Integer.parseInt(config.getProperty("mdp.control_points", "0"));
+		this.neighbors = Integer.parseInt(config.getProperty("mdp.neighbors", "0"));
+		this.forceSchemeThreads = Integer.parseInt(config.getProperty("mdp.force_scheme.threads", "1"));
+		this.forceSchemeTol = Float.parseFloat(config.getProperty("mdp.force_scheme.tol", "0"));
+		this.forceScheme = config.getProperty("mdp.force_scheme", "exact");
+		this.forceSchemeTheta = Float.parseFloat(config.getProperty("mdp.force_scheme.theta", "0.5"));
+		this.forceSchemeMaxIter = Integer.parseInt(config.getProperty("mdp.force_scheme.max_iter", "0"));
+		this.forceSchemeNeighbors = Integer.parseInt(config.getProperty("mdp.force_scheme.neighbors", "10"));
+		this.forceSchemeSamples = Integer.parseInt(config.getProperty("mdp.force_scheme.samples", "10"));
+		this.cosine = isCosine(config.getProperty("mdp.distance", "euclidean"));
+		this.incremental = "incremental".equalsIgnoreCase(config.getProperty("mdp.mode", "full"));
+		this.chunkSize = Integer.parseInt(config.getProperty("mdp.chunk_size", "0"));
+		this.sampleSize = Integer.parseInt(config.getProperty("mdp.sample_size", "10000"));
+		String seed = config.getProperty("mdp.seed", "0");
+		this.seed = "random".equalsIgnoreCase(seed) ? new Random().nextLong() : Long.parseLong(seed);
+		this.align = Boolean.parseBoolean(config.getProperty("mdp.align", "false"));
+		this.epsilon = Double.parseDouble(config.getProperty("mdp.epsilon", "0"));
 	}
 
 	/**
 	 * Realiza projeção multidimensional dos documentos
 	 * no banco de dados.
+	 * <p>No modo incremental (<code>mdp.mode=incremental</code>) somente os
+	 * documentos inseridos após a última execução ou sem projeção são
+	 * projetados, a partir dos pontos de controle, do vocabulário e da
+	 * normalização registrados na última execução completa
+	 * ({@link #projectNewDocuments()}).</p>
+	 * <p>Com <code>mdp.chunk_size</code> maior que zero os documentos são
+	 * lidos, projetados e atualizados em lotes, com memória limitada pelo
+	 * tamanho do lote e não pelo número de documentos.</p>
+	 * <p>Na projeção completa a semente (<code>mdp.seed</code>) determina a
+	 * amostra, os pontos de controle e a sua projeção: execuções com a mesma
+	 * semente sobre os mesmos documentos produzem a mesma projeção, e somente
+	 * documentos cuja projeção foi alterada (mais que <code>mdp.epsilon</code>)
+	 * são atualizados. Com <code>mdp.align=true</code> a projeção parte da
+	 * projeção anterior e é alinhada a ela (ver
+	 * {@link #projectControlPoints(Lamp, DoubleMatrix2D, long[], ProjectionRun)}).</p>
 	 * @throws Exception erro ao realizar projeção.
 	 */
 	public void project() throws Exception {
+		if ( incremental )
+			projectNewDocuments();
+		else if ( chunkSize > 0 )
+			projectAllInChunks();
+		else
+			projectAll();
+	}
+
+	/**
+	 * Realiza projeção multidimensional de todos os documentos,
+	 * registrando vocabulário, pontos de controle e normalização
+	 * utilizados.
+	 * @throws Exception erro ao realizar projeção.
+	 */
+	private void projectAll() throws Exception {
+		ProjectionRun run = new ProjectionRun();
+		run.setSeed(seed);
+		Random seeds = new Random(seed);
 
 		// Constroi matriz de frequência de termos
 		DoubleMatrix2D matrix = null;
+		Vocabulary vocabulary = null;
+		long[] docIds = null;
+		final int hashingBits = dbService.getHashingBits();
+		long start = System.nanoTime();
 		try {
-			 matrix = dbService.buildFrequencyMatrix(null);
+			// Linhas e id's lidos na mesma consulta
+			DocumentMatrix documents;
+			if ( hashingBits > 0 ){
+				logger.info("Feature hashing: " + (1 << hashingBits) + " columns");
+				documents = dbService.readHashedFrequencyMatrix(hashingBits, new LogaritmicTFIDF());
+			}
+			else {
+				vocabulary = dbService.getVocabulary(null);
+				logger.info("Vocabulary: " + vocabulary.size() + " terms");
+				documents = dbService.readFrequencyMatrix(vocabulary, new LogaritmicTFIDF());
+			}
+			matrix = normalizeRows(documents.getMatrix());
+			docIds = documents.getDocIds();
 		} catch (Exception e) {
 			logger.error("Error building frequency matrix", e);
 			throw e;
 		}
+		run.addTiming("matrix", elapsed(start));
 		
-		// Realiza projeção multidimensional utilizando LAMP
-		Lamp lamp = new Lamp();
-		DoubleMatrix2D y = lamp.project(matrix);
+		DoubleMatrix2D y;
+		try ( Lamp lamp = createLamp(seeds);){
+			// Seleciona e projeta pontos de controle
+			lamp.setSelector(createSelector(null));
+			projectControlPoints(lamp, matrix, docIds, run);
+
+			// Realiza projeção multidimensional utilizando LAMP
+			start = System.nanoTime();
+			y = lamp.project(matrix, run.getControlPoints(), run.getControlPointsProjection());
+			run.addTiming("projection", elapsed(start));
+		}
+
+		// Execução alinhada mantém a normalização da execução anterior
+		double[] bounds = run.getAlignedTo() > 0 ? run.getBounds() : null;
 		
 //		 Normaliza projeção para intervalo [-1,1]
+		start = System.nanoTime();
 		if ( normalize ){
-			normalizeProjections(y);
+			if ( bounds == null )
+				bounds = getBounds(y);
+			normalizeProjections(y, bounds);
 		}
-		// Atualiza projeções no banco de dados.
-		updateProjections(y);
+		else
+			bounds = null;
+		// Atualiza no banco de dados somente projeções alteradas
+		run.setUpdated(updateProjections(docIds, y, epsilon));
+		run.addTiming("update", elapsed(start));
+		logger.info(run.getUpdated() + " of " + docIds.length + " projections updated");
+		
+		// Registra execução com o vocabulário e os pontos de controle utilizados
+		run.setNumberOfDocuments(matrix.rows());
+		run.setVocabulary(vocabulary);
+		run.setHashingBits(hashingBits);
+		run.setLastDocId(docIds.length > 0 ? docIds[docIds.length - 1] : 0);
+		run.setBounds(bounds);
+		dbService.addProjectionRun(run);
+		logger.info("Projection run " + run.getRunId() + " (seed " + seed + "): " + run.getTimings());
 	}
-	
-	private void normalizeProjections(DoubleMatrix2D y) {
-		final double maxX = y.viewColumn(0).getMaxLocation()[0], 
-				maxY = y.viewColumn(1).getMaxLocation()[0];
-		final double minX = y.viewColumn(0).getMinLocation()[0],
-				minY = y.viewColumn(1).getMinLocation()[0];
+
+	/**
+	 * Realiza projeção multidimensional de todos os documentos em lotes
+	 * de <code>mdp.chunk_size</code> documentos:
+	 * <ol>
+	 * <li>os pontos de controle são selecionados e projetados em uma amostra
+	 * aleatória de <code>mdp.sample_size</code> documentos;</li>
+	 * <li>os documentos são lidos em lotes (cursor no servidor) e projetados
+	 * com o LAMP a partir dos pontos de controle;</li>
+	 * <li>a projeção dos lotes é copiada para uma tabela temporária e, ao
+	 * final, normalizada com os limites acumulados nos lotes e aplicada em
+	 * uma única transação ({@link ProjectionStaging}).</li>
+	 * </ol>
+	 * <p>Somente a amostra, os pontos de controle e um lote são mantidos
+	 * em memória. Requer o vocabulário de termos (com <i>feature hashing</i>
+	 * os documentos são projetados em memória).</p>
+	 * <p>Caso a projeção seja alinhada à execução anterior (ou não seja
+	 * normalizada) os limites já são conhecidos: cada lote é normalizado
+	 * e atualizado diretamente. Em ambos os casos somente documentos cuja
+	 * projeção foi alterada (mais que <code>mdp.epsilon</code>) são
+	 * atualizados.</p>
+	 * @throws Exception erro ao realizar projeção.
+	 */
+	private void projectAllInChunks() throws Exception {
+		if ( dbService.getHashingBits() > 0 ){
+			logger.info("Chunked projection requires a term vocabulary: projecting all documents in memory");
+			projectAll();
+			return;
+		}
+
+		ProjectionRun run = new ProjectionRun();
+		run.setSeed(seed);
+		Random seeds = new Random(seed);
+		Random rng = new Random(seeds.nextLong());
+
+		// Amostra dos documentos para seleção dos pontos de controle
+		Lamp lamp = createLamp(seeds);
+		Vocabulary vocabulary;
+		long[] sampleIds;
+		DoubleMatrix2D sample;
+		long start = System.nanoTime();
+		try {
+			vocabulary = dbService.getVocabulary(null);
+			logger.info("Vocabulary: " + vocabulary.size() + " terms");
+			int numberOfDocuments = dbService.getNumberOfDocuments();
+			if ( numberOfDocuments == 0 )
+				return;
+			int k = controlPoints > 0 ? controlPoints : (int) Math.sqrt(numberOfDocuments);
+			sampleIds = dbService.sampleDocumentIds(Math.max(k, sampleSize), rng);
+			sample = normalizeRows(dbService.buildFrequencyMatrix(sampleIds, vocabulary, new LogaritmicTFIDF()));
+			lamp.setNumberOfControlPoints(k);
+			lamp.setSelector(createSelector(sampleIds));
+		} catch (Exception e) {
+			logger.error("Error building frequency matrix", e);
+			throw e;
+		}
+		run.addTiming("sample", elapsed(start));
+
+		// Seleciona e projeta pontos de controle
+		projectControlPoints(lamp, sample, sampleIds, run);
+		final DoubleMatrix2D xs = run.getControlPoints(), ys = run.getControlPointsProjection();
+		logger.info(xs.rows() + " control points selected from " + sampleIds.length + " documents");
+		sample = null;
+
+		// Execução alinhada mantém a normalização da execução anterior
+		final double[] knownBounds = run.getAlignedTo() > 0 ? run.getBounds() : null;
+		final boolean normalizeChunks = normalize && knownBounds != null;
+		final boolean stageChunks = normalize && knownBounds == null;
+
+		// Projeta documentos em lotes, acumulando os limites da projeção
+		final double[] bounds = { Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, 
+				Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY };
+		final long[] lastDocId = { 0 };
+		final int[] updated = { 0 };
+		int numberOfDocuments;
+		start = System.nanoTime();
+		try ( ProjectionStaging staging = stageChunks ? dbService.stageXYProjections() : null;){
+			numberOfDocuments = dbService.streamFrequencyMatrix(vocabulary, new LogaritmicTFIDF(), chunkSize, 
+					(docIds, matrix) -> {
+				long time = System.nanoTime();
+				DoubleMatrix2D y = lamp.project(normalizeRows(matrix), xs, ys);
+				double[] b = getBounds(y);
+				bounds[0] = Math.min(bounds[0], b[0]);
+				bounds[1] = Math.max(bounds[1], b[1]);
+				bounds[2] = Math.min(bounds[2], b[2]);
+				bounds[3] = Math.max(bounds[3], b[3]);
+				run.addTiming("projection", elapsed(time));
+
+				// Limites desconhecidos: projeção não normalizada fora de documents_data
+				time = System.nanoTime();
+				if ( staging != null )
+					staging.add(docIds, y);
+				else {
+					if ( normalizeChunks )
+						normalizeProjections(y, knownBounds);
+					updated[0] += updateProjections(docIds, y, epsilon);
+				}
+				run.addTiming("update", elapsed(time));
+				lastDocId[0] = docIds[docIds.length - 1];
+				logger.debug("Projected documents up to doc_id " + lastDocId[0]);
+			});
+			run.addTiming("matrix", elapsed(start) - run.getTimings().getOrDefault("projection", 0L)
+					- run.getTimings().getOrDefault("update", 0L));
+
+			// Normaliza projeção para intervalo [-1,1] e atualiza em uma única transação
+			if ( staging != null && numberOfDocuments > 0 ){
+				start = System.nanoTime();
+				updated[0] = staging.apply(bounds, epsilon);
+				run.addTiming("normalization", elapsed(start));
+			}
+		} catch (Exception e) {
+			logger.error("Error projecting documents in chunks", e);
+			throw e;
+		} finally {
+			lamp.close();
+		}
+		logger.info("Projected " + numberOfDocuments + " documents in chunks of " + chunkSize + ", " 
+				+ updated[0] + " projections updated");
+
+		// Registra execução com o vocabulário e os pontos de controle utilizados
+		run.setNumberOfDocuments(numberOfDocuments);
+		run.setVocabulary(vocabulary);
+		run.setLastDocId(lastDocId[0]);
+		run.setBounds(normalizeChunks ? knownBounds : normalize ? bounds : null);
+		run.setUpdated(updated[0]);
+		dbService.addProjectionRun(run);
+		logger.info("Projection run " + run.getRunId() + " (seed " + seed + "): " + run.getTimings());
+	}
+
+	/**
+	 * Projeta somente documentos inseridos após a última execução
+	 * (doc_id maior que o registrado) ou sem projeção, posicionando-os
+	 * com o LAMP a partir dos pontos de controle registrados. Os documentos
+	 * já projetados e os pontos de controle não são alterados.
+	 * <p>A matriz dos novos documentos é construída com o vocabulário e o
+	 * IDF da última execução completa, portanto termos novos são ignorados
+	 * até a próxima projeção completa. Caso não exista execução com pontos
+	 * de controle (ou o vetorizador seja <i>feature hashing</i>, cujo IDF
+	 * não é registrado) todos os documentos são projetados.</p>
+	 * @throws Exception erro ao realizar projeção.
+	 */
+	public void projectNewDocuments() throws Exception {
+		ProjectionRun run;
+		long[] docIds;
+		DoubleMatrix2D matrix;
+		try {
+			run = dbService.getLastProjectionRun();
+			if ( run == null || run.getVocabulary() == null || dbService.getHashingBits() > 0 ){
+				logger.info("No projection run with control points and vocabulary: projecting all documents");
+				if ( chunkSize > 0 )
+					projectAllInChunks();
+				else
+					projectAll();
+				return;
+			}
+
+			if ( chunkSize > 0 ){
+				projectNewDocumentsInChunks(run);
+				return;
+			}
+
+			docIds = dbService.getDocumentsToProject(run.getLastDocId());
+			if ( docIds.length == 0 ){
+				logger.info("No new documents to project since run " + run.getRunId());
+				return;
+			}
+			logger.info("Projecting " + docIds.length + " new documents with control points of run " 
+					+ run.getRunId());
+			matrix = normalizeRows(dbService.buildFrequencyMatrix(docIds, run.getVocabulary(), new LogaritmicTFIDF()));
+		} catch (Exception e) {
+			logger.error("Error building frequency matrix", e);
+			throw e;
+		}
+
+		// Projeta novos documentos com os pontos de controle registrados
+		DoubleMatrix2D y;
+		try ( Lamp lamp = createLamp(new Random(run.getSeed()));){
+			y = lamp.project(matrix, run.getControlPoints(), run.getControlPointsProjection());
+		}
+
+		// Mesma normalização da execução completa
+		if ( run.getBounds() != null )
+			normalizeProjections(y, run.getBounds());
+		updateProjections(docIds, y);
+
+		dbService.updateProjectionRun(run.getRunId(), Math.max(run.getLastDocId(), docIds[docIds.length - 1]));
+	}
+
+	/**
+	 * Projeta em lotes de <code>mdp.chunk_size</code> documentos os
+	 * documentos inseridos após a execução dada ou sem projeção.
+	 * @param run última execução, com pontos de controle e vocabulário.
+	 * @throws Exception erro ao realizar projeção.
+	 * @see #projectNewDocuments()
+	 */
+	private void projectNewDocumentsInChunks(ProjectionRun run) throws Exception {
+		Lamp lamp = createLamp(new Random(run.getSeed()));
+		final long[] lastDocId = { run.getLastDocId() };
+		int numberOfDocuments;
+		try {
+			numberOfDocuments = dbService.streamFrequencyMatrix(run.getLastDocId(), run.getVocabulary(), 
+					new LogaritmicTFIDF(), chunkSize, (docIds, matrix) -> {
+				DoubleMatrix2D y = lamp.project(normalizeRows(matrix), run.getControlPoints(), 
+						run.getControlPointsProjection());
+
+				// Mesma normalização da execução completa
+				if ( run.getBounds() != null )
+					normalizeProjections(y, run.getBounds());
+				updateProjections(docIds, y);
+				lastDocId[0] = Math.max(lastDocId[0], docIds[docIds.length - 1]);
+			});
+		} catch (Exception e) {
+			logger.error("Error projecting documents in chunks", e);
+			throw e;
+		} finally {
+			lamp.close();
+		}
+
+		if ( numberOfDocuments == 0 ){
+			logger.info("No new documents to project since run " + run.getRunId());
+			return;
+		}
+		logger.info("Projected " + numberOfDocuments + " new documents with control points of run " 
+				+ run.getRunId());
+		dbService.updateProjectionRun(run.getRunId(), lastDocId[0]);
+	}
+
+	/**
+	 * Cria LAMP com a configuração (<code>mdp.*</code>), exceto
+	 * a seleção dos pontos de controle.
+	 * @param seeds gerador das sementes do LAMP e da projeção
+	 * dos pontos de controle.
+	 * @return LAMP configurado.
+	 */
+	private Lamp createLamp(Random seeds) {
+		Lamp lamp = new Lamp(seeds.nextLong());
+		lamp.setParallelism(threads);
+		lamp.setNumberOfControlPoints(controlPoints);
+		lamp.setNeighbors(neighbors);
+		lamp.setControlPointProjection(createControlPointProjection(seeds.nextLong()));
+		return lamp;
+	}
+
+	/**
+	 * Cria projeção dos pontos de controle configurada, com a distância
+	 * euclidiana: o LAMP posiciona os documentos pelas diferenças
+	 * euclidianas em relação aos pontos de controle, portanto a projeção
+	 * dos pontos de controle deve preservar as mesmas distâncias (com
+	 * <code>mdp.distance=cosine</code> as linhas são normalizadas, ver
+	 * {@link #normalizeRows(DoubleMatrix2D)}).
+	 * @param seed semente do gerador aleatório da projeção.
+	 * @return projeção dos pontos de controle.
+	 */
+	private Projection createControlPointProjection(long seed) {
+		switch( forceScheme ){
+		case "exact":
+			ForceScheme exact = new ForceScheme(forceSchemeMaxIter > 0 ? forceSchemeMaxIter : 50, 
+					forceSchemeTol, 8.0f, 1e-5f);
+			exact.setParallelism(forceSchemeThreads);
+			exact.setSeed(seed);
+			return exact;
+		case "barnes_hut":
+			// Passo decrescente ao longo de todas as iterações: tol não se aplica
+			BarnesHutForceScheme approximate = new BarnesHutForceScheme(
+					forceSchemeMaxIter > 0 ? forceSchemeMaxIter : 100, forceSchemeTheta, 
+					forceSchemeNeighbors, forceSchemeSamples);
+			approximate.setParallelism(forceSchemeThreads);
+			approximate.setSeed(seed);
+			return approximate;
+		default:
+			throw new IllegalArgumentException("Unknown force scheme: " + forceScheme);
+		}
+	}
+
+	/**
+	 * Verifica distância configurada (<code>mdp.distance</code>).
+	 * @param distance <code>euclidean</code> ou <code>cosine</code>.
+	 * @return <code>true</code> para a distância do cosseno.
+	 */
+	private static boolean isCosine(String distance) {
+		switch( distance ){
+		case "euclidean":
+			return false;
+		case "cosine":
+			return true;
+		default:
+			throw new IllegalArgumentException("Unknown distance metric: " + distance);
+		}
+	}
+
+	/**
+	 * Com a distância do cosseno (<code>mdp.distance=cosine</code>)
+	 * normaliza as linhas da matriz (norma euclidiana unitária), alterando
+	 * a própria matriz. Entre linhas normalizadas a distância euclidiana é
+	 * <code>sqrt(2 (1 - cos))</code>, função crescente da distância do
+	 * cosseno, e a mesma métrica é utilizada na projeção dos pontos de
+	 * controle e no LAMP.
+	 * @param matrix matriz de frequência.
+	 * @return a própria matriz.
+	 */
+	private DoubleMatrix2D normalizeRows(DoubleMatrix2D matrix) {
+		if ( !cosine )
+			return matrix;
+		if ( matrix instanceof SparseRCDoubleMatrix2D )
+			SparseRows.normalize((SparseRCDoubleMatrix2D) matrix);
+		else {
+			for( int i = 0; i < matrix.rows(); i++ ){
+				double norm = Math.sqrt(matrix.viewRow(i).zDotProduct(matrix.viewRow(i)));
+				if ( norm > 0 )
+					matrix.viewRow(i).assign(DoubleFunctions.div(norm));
+			}
+		}
+		return matrix;
+	}
+
+	/**
+	 * Cria seletor de pontos de controle configurado.
+	 * @param docIds id's dos documentos candidatos (linhas da matriz) ou
+	 * <code>null</code> para todos os documentos.
+	 * @return seletor de pontos de controle.
+	 * @throws Exception erro ao recuperar relevância dos documentos.
+	 */
+	private ControlPointSelector createSelector(long[] docIds) throws Exception {
+		switch( selector ){
+		case "random":
+			return new RandomSelector();
+		case "kmeans++":
+			return new KMeansPlusPlusSelector();
+		case "farthest":
+			return new FarthestPointSelector();
+		case "relevance":
+			return new RelevanceStratifiedSelector(docIds == null ? dbService.getRelevances() 
+					: dbService.getRelevances(docIds));
+		default:
+			throw new IllegalArgumentException("Unknown control point selector: " + selector);
+		}
+	}
+
+	/**
+	 * Retorna limites da projeção.
+	 * @param y projeção (N x 2).
+	 * @return mínimo e máximo de x e de y.
+	 */
+	private double[] getBounds(DoubleMatrix2D y) {
+		return new double[]{ y.viewColumn(0).getMinLocation()[0], y.viewColumn(0).getMaxLocation()[0],
+				y.viewColumn(1).getMinLocation()[0], y.viewColumn(1).getMaxLocation()[0] };
+	}
+
+	/**
+	 * Normaliza projeção para o intervalo [-1,1] dados os limites
+	 * (novos documentos projetados incrementalmente podem ficar
+	 * fora do intervalo). Eixos sem variação (mínimo igual ao máximo)
+	 * são normalizados para 0, como em {@link ProjectionStaging}.
+	 * @param y projeção (N x 2).
+	 * @param bounds mínimo e máximo de x e de y ({@link #getBounds(DoubleMatrix2D)}).
+	 */
+	private void normalizeProjections(DoubleMatrix2D y, double[] bounds) {
+		final double minX = bounds[0], rangeX = bounds[1] - bounds[0];
+		final double minY = bounds[2], rangeY = bounds[3] - bounds[2];
+		final double scaleX = rangeX > 0 ? 2 / rangeX : 0, offsetX = rangeX > 0 ? 1 : 0;
+		final double scaleY = rangeY > 0 ? 2 / rangeY : 0, offsetY = rangeY > 0 ? 1 : 0;
 		
-		y.viewColumn(0).assign( (v) -> 2 * (v - minX)/(maxX - minX) - 1 );
-		y.viewColumn(1).assign( (v) -> 2 * (v - minY)/(maxY - minY) - 1 );
+		y.viewColumn(0).assign( (v) -> (v - minX) * scaleX - offsetX );
+		y.viewColumn(1).assign( (v) -> (v - minY) * scaleY - offsetY );
+	}
+
+	/**
+	 * Seleciona e projeta pontos de controle entre as linhas da matriz
+	 * dada, atribuindo a <code>run</code> os seus doc_id's, valores e projeção.
+	 * <p>Com <code>mdp.align=true</code>:</p>
+	 * <ul>
+	 * <li>caso os pontos de controle e os seus valores sejam os mesmos da
+	 * execução anterior, a projeção registrada é reutilizada (os documentos
+	 * não alterados mantêm exatamente a mesma projeção);</li>
+	 * <li>senão a projeção parte das posições atuais dos documentos
+	 * selecionados (registradas pela execução anterior, convertidas para as
+	 * coordenadas anteriores à normalização) e é depois alinhada a elas
+	 * ({@link PlanarProcrustes#align(DoubleMatrix2D, DoubleMatrix2D)}).</li>
+	 * </ul>
+	 * <p>A execução anterior e os seus limites, que devem ser reutilizados
+	 * na normalização, são atribuídos a <code>run</code>.</p>
+	 * @param lamp LAMP configurado.
+	 * @param x matriz com os candidatos a pontos de controle (N x M).
+	 * @param docIds doc_id de cada linha da matriz.
+	 * @param run execução atual.
+	 * @throws Exception erro ao recuperar execução anterior.
+	 */
+	private void projectControlPoints(Lamp lamp, DoubleMatrix2D x, long[] docIds, ProjectionRun run) 
+			throws Exception {
+		long start = System.nanoTime();
+		int[] cpoints = lamp.selectControlPoints(x);
+		long[] cpointIds = new long[cpoints.length];
+		for(int i = 0; i < cpoints.length; i++)
+			cpointIds[i] = docIds[cpoints[i]];
+		DoubleMatrix2D xs;
+		if ( x instanceof SparseRCDoubleMatrix2D )
+			xs = SparseRows.select((SparseRCDoubleMatrix2D) x, cpoints);
+		else
+			xs = x.viewSelection(cpoints, null).copy();
+		run.setControlPointIds(cpointIds);
+		run.setControlPoints(xs);
+
+		ProjectionRun previous = align ? dbService.getLastProjectionRun() : null;
+		if ( align && previous == null )
+			logger.info("No previous projection run: projection not aligned");
+
+		// Mesmos pontos de controle: reutiliza projeção anterior
+		if ( previous != null && Arrays.equals(cpointIds, previous.getControlPointIds()) 
+				&& xs.equals(previous.getControlPoints()) ){
+			logger.info("Control points unchanged since run " + previous.getRunId());
+			run.setControlPointsProjection(previous.getControlPointsProjection());
+			run.setAlignedTo(previous.getRunId());
+			run.setBounds(previous.getBounds());
+			run.addTiming("control_points", elapsed(start));
+			return;
+		}
+
+		// Posições atuais dos pontos de controle
+		DoubleMatrix2D target = null;
+		if ( previous != null )
+			target = previousPositions(dbService.getXYProjections(cpointIds), cpointIds, 
+					previous.getLastDocId(), previous.getBounds());
+
+		Projection projection = lamp.getControlPointProjection();
+		projection.setInitialPositions(target);
+		DoubleMatrix2D ys = projection.project(xs);
+		run.setControlPointsProjection(ys);
+		run.addTiming("control_points", elapsed(start));
+
+		if ( target != null ){
+			start = System.nanoTime();
+			if ( PlanarProcrustes.align(ys, target) ){
+				logger.info("Projection aligned to run " + previous.getRunId());
+				run.setAlignedTo(previous.getRunId());
+				run.setBounds(previous.getBounds());
+			}
+			else
+				logger.info("Too few control points projected by run " + previous.getRunId() 
+						+ ": projection not aligned");
+			run.addTiming("alignment", elapsed(start));
+		}
+	}
+
+	/**
+	 * Converte a projeção atual dos pontos de controle para as coordenadas
+	 * da execução anterior antes da normalização. Documentos inseridos após
+	 * a execução anterior (doc_id maior que o último projetado) ou sem
+	 * projeção não têm posição anterior (<code>NaN</code>): não são
+	 * utilizados como posição inicial nem no alinhamento.
+	 * @param current projeção atual (N x 2, <code>NaN</code> para
+	 * documentos sem projeção), alterada.
+	 * @param cpointIds doc_id de cada ponto de controle.
+	 * @param lastDocId maior doc_id projetado pela execução anterior
+	 * (0 = desconhecido).
+	 * @param bounds normalização da execução anterior ou <code>null</code>.
+	 * @return a própria matriz <code>current</code>.
+	 */
+	static DoubleMatrix2D previousPositions(DoubleMatrix2D current, long[] cpointIds, long lastDocId, 
+			double[] bounds) {
+		for(int i = 0; i < cpointIds.length; i++){
+			if ( lastDocId > 0 && cpointIds[i] > lastDocId ){
+				current.setQuick(i, 0, Double.NaN);
+				current.setQuick(i, 1, Double.NaN);
+			}
+		}
+		if ( bounds != null ){
+			final double minX = bounds[0], maxX = bounds[1];
+			final double minY = bounds[2], maxY = bounds[3];
+			current.viewColumn(0).assign( (v) -> (v + 1) * (maxX - minX) / 2 + minX );
+			current.viewColumn(1).assign( (v) -> (v + 1) * (maxY - minY) / 2 + minY );
+		}
+		return current;
+	}
+
+	/**
+	 * Retorna tempo decorrido em milisegundos.
+	 * @param start início ({@link System#nanoTime()}).
+	 * @return tempo decorrido (ms).
+	 */
+	private static long elapsed(long start) {
+		return (System.nanoTime() - start) / 1000000;
+	}
+
+	/**
+	 * Atualiza somente projeções alteradas no banco de dados.
+	 * @param docIds id's dos documentos projetados, em ordem crescente.
+	 * @param y projeção (linha <code>i</code> corresponde a <code>docIds[i]</code>).
+	 * @param epsilon diferença mínima para atualização.
+	 * @return número de documentos atualizados.
+	 * @throws Exception 
+	 */
+	private int updateProjections(long[] docIds, DoubleMatrix2D y, double epsilon) throws Exception {
+		try {
+			return dbService.updateXYProjections(docIds, y, epsilon);
+		} catch (Exception e) {
+			logger.error("Error updating projections in database", e);
+			throw e;
+		}
 	}
 
 	/**
 	 * Atualiza projeções no banco de dados.
-	 * @param y
+	 * @param docIds id's dos documentos projetados.
+	 * @param y projeção (linha <code>i</code> corresponde a <code>docIds[i]</code>).
 	 * @throws Exception 
 	 */
-	private void updateProjections(DoubleMatrix2D y) throws Exception {
+	private void updateProjections(long[] docIds, DoubleMatrix2D y) throws Exception {
 		try {
-			dbService.updateXYProjections(y);
+			dbService.updateXYProjections(docIds, y);
 		} catch (Exception e) {
 			logger.error("Error updating projections in database", e);
 			throw e;
@@ -0,0 +1,271 @@
+package ep.db.mdp;
+
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+
+/**
+ * Solução fechada do problema de Procrustes ortogonal do LAMP
+ * (eq. 7 e 8) para projeções no plano (<code>p = 2</code>), sem SVD e
+ * sem alocação por ponto.
+ * <p>Com <code>w_i = alpha_i * (ys_i - y~)</code> tem-se
+ * <code>C = A'B = sum(xs_i' * w_i)</code> e, sendo <code>C = U S V'</code>,
+ * <code>M = UV' = C (C'C)^(-1/2)</code> (decomposição polar). Dados os
+ * produtos internos entre os pontos de controle (<code>K = xs * xs'</code>,
+ * calculado uma única vez) e entre o ponto e os pontos de controle
+ * (<code>d_i = x * xs_i'</code>, obtidos junto com as distâncias):</p>
+ * <ul>
+ * <li><code>C'C = sum_i sum_j K_ij * w_i' * w_j</code> (matriz 2 x 2);</li>
+ * <li><code>(x - x~) C = sum_i d_i * w_i - sum_j alpha_j * (K w)_j / sum(alpha)</code>;</li>
+ * <li><code>y = (x - x~) C (C'C)^(-1/2) + y~</code>.</li>
+ * </ul>
+ * <p>A raiz inversa de <code>C'C</code> é calculada em forma fechada. Caso
+ * <code>C</code> seja (quase) singular a solução não é única e o ponto deve
+ * ser projetado com a SVD ({@link #project(double[], double, double[], double[])}
+ * retorna <code>false</code>).</p>
+ * <p>Não é seguro para uso concorrente: cada thread deve utilizar sua
+ * própria instância (os vetores compartilhados não são alterados).</p>
+ * @version 1.0
+ * @since 2017
+ *
+ */
+final class PlanarProcrustes {
+
+	/**
+	 * Razão mínima entre os autovalores de C'C
+	 */
+	private static final double MIN_CONDITION = 1e-6;
+
+	/**
+	 * Número de pontos de controle
+	 */
+	private final int k;
+
+	/**
+	 * Produtos internos entre pontos de controle (k x k)
+	 */
+	private final double[] gram;
+
+	/**
+	 * Projeção dos pontos de controle (k x 2)
+	 */
+	private final double[] ys;
+
+	/**
+	 * Buffer: w_i = alpha_i * (ys_i - y~) (k x 2)
+	 */
+	private final double[] w;
+
+	/**
+	 * Buffer: (K w)_i (k x 2)
+	 */
+	private final double[] kw;
+
+	/**
+	 * Cria nova instância.
+	 * @param gram produtos internos entre os pontos de controle
+	 * (k x k, por linha, ver {@link #gram(DoubleMatrix2D)}).
+	 * @param ys projeção dos pontos de controle (k x 2, por linha).
+	 * @param k número de pontos de controle.
+	 */
+	PlanarProcrustes(double[] gram, double[] ys, int k) {
+		this.k = k;
+		this.gram = gram;
+		this.ys = ys;
+		this.w = new double[2 * k];
+		this.kw = new double[2 * k];
+	}
+
+	/**
+	 * Projeta ponto.
+	 * @param alpha pesos de cada ponto de controle (eq. 2).
+	 * @param alphaSum soma dos pesos.
+	 * @param dots produto interno entre o ponto e cada ponto de controle.
+	 * @param y projeção do ponto (saída, 2 posições).
+	 * @return <code>true</code> se o ponto foi projetado, <code>false</code>
+	 * caso <code>C</code> seja singular (SVD deve ser utilizada).
+	 */
+	boolean project(double[] alpha, double alphaSum, double[] dots, double[] y) {
+		return project(null, k, alpha, alphaSum, dots, y);
+	}
+
+	/**
+	 * Projeta ponto utilizando somente um subconjunto dos pontos
+	 * de controle (ex: os mais próximos).
+	 * @param index pontos de controle utilizados ou <code>null</code> para
+	 * todos os pontos.
+	 * @param count número de pontos de controle utilizados.
+	 * @param alpha pesos de cada ponto de controle utilizado (eq. 2), na
+	 * ordem de <code>index</code>.
+	 * @param alphaSum soma dos pesos.
+	 * @param dots produto interno entre o ponto e cada ponto de controle
+	 * utilizado, na ordem de <code>index</code>.
+	 * @param y projeção do ponto (saída, 2 posições).
+	 * @return <code>true</code> se o ponto foi projetado, <code>false</code>
+	 * caso <code>C</code> seja singular (SVD deve ser utilizada).
+	 */
+	boolean project(int[] index, int count, double[] alpha, double alphaSum, double[] dots, double[] y) {
+		// y~ (eq. 3)
+		double yt0 = 0, yt1 = 0;
+		for( int q = 0; q < count; q++ ){
+			int i = index != null ? index[q] : q;
+			yt0 += alpha[q] * ys[2 * i];
+			yt1 += alpha[q] * ys[2 * i + 1];
+		}
+		yt0 /= alphaSum;
+		yt1 /= alphaSum;
+
+		for( int q = 0; q < count; q++ ){
+			int i = index != null ? index[q] : q;
+			w[2 * q] = alpha[q] * (ys[2 * i] - yt0);
+			w[2 * q + 1] = alpha[q] * (ys[2 * i + 1] - yt1);
+		}
+
+		// K w, C'C e (x - x~) C
+		double a = 0, b = 0, c = 0;
+		double z0 = 0, z1 = 0, t0 = 0, t1 = 0;
+		for( int q = 0; q < count; q++ ){
+			int row = (index != null ? index[q] : q) * k;
+			double s0 = 0, s1 = 0;
+			if ( index == null ){
+				for( int j = 0; j < count; j++ ){
+					double g = gram[row + j];
+					s0 += g * w[2 * j];
+					s1 += g * w[2 * j + 1];
+				}
+			}
+			else {
+				for( int r = 0; r < count; r++ ){
+					double g = gram[row + index[r]];
+					s0 += g * w[2 * r];
+					s1 += g * w[2 * r + 1];
+				}
+			}
+			kw[2 * q] = s0;
+			kw[2 * q + 1] = s1;
+
+			double w0 = w[2 * q], w1 = w[2 * q + 1];
+			a += w0 * s0;
+			b += w0 * s1;
+			c += w1 * s1;
+
+			z0 += dots[q] * w0;
+			z1 += dots[q] * w1;
+			t0 += alpha[q] * s0;
+			t1 += alpha[q] * s1;
+		}
+		z0 -= t0 / alphaSum;
+		z1 -= t1 / alphaSum;
+
+		// (C'C)^(-1/2) = [[c + d, -b], [-b, a + d]] / (d * t),
+		// d = sqrt(det), t = sqrt(a + c + 2d)
+		double trace = a + c;
+		double det = a * c - b * b;
+		if ( !(trace > 0) || det <= MIN_CONDITION * trace * trace )
+			return false;
+
+		double d = Math.sqrt(det);
+		double scale = 1.0 / (d * Math.sqrt(trace + 2 * d));
+
+		// eq. 8: y = (x - x~) M + y~
+		y[0] = (z0 * (c + d) - z1 * b) * scale + yt0;
+		y[1] = (z1 * (a + d) - z0 * b) * scale + yt1;
+		return true;
+	}
+
+	/**
+	 * Retorna projeção dos pontos de controle por linha.
+	 * @param ys projeção dos pontos de controle (k x 2).
+	 * @return vetor k x 2.
+	 */
+	static double[] flatten(DoubleMatrix2D ys) {
+		double[] values = new double[2 * ys.rows()];
+		for( int i = 0; i < ys.rows(); i++ ){
+			values[2 * i] = ys.getQuick(i, 0);
+			values[2 * i + 1] = ys.getQuick(i, 1);
+		}
+		return values;
+	}
+
+	/**
+	 * Calcula produtos internos entre os pontos de controle (densos).
+	 * @param xs pontos de controle (k x M).
+	 * @return matriz k x k por linha.
+	 */
+	static double[] gram(DoubleMatrix2D xs) {
+		int k = xs.rows(), dim = xs.columns();
+		double[] gram = new double[k * k];
+		for( int i = 0; i < k; i++ ){
+			for( int j = i; j < k; j++ ){
+				double sum = 0;
+				for( int e = 0; e < dim; e++ )
+					sum += xs.getQuick(i, e) * xs.getQuick(j, e);
+				gram[i * k + j] = gram[j * k + i] = sum;
+			}
+		}
+		return gram;
+	}
+
+	/**
+	 * Alinha projeção a uma projeção de referência (ex: da execução
+	 * anterior) por uma transformação rígida: rotação ou reflexão
+	 * (<code>R = H (H'H)^(-1/2)</code>, <code>H = sum((y_i - y~)' (t_i - t~))</code>)
+	 * e translação, sem escala, que minimiza <code>sum |y_i R + t - t_i|^2</code>
+	 * sobre os pontos presentes nas duas projeções. O LAMP é invariante a
+	 * essas transformações: alinhar a projeção dos pontos de controle
+	 * alinha a projeção de todos os pontos.
+	 * @param y projeção (N x 2), alterada.
+	 * @param target projeção de referência (N x 2, <code>NaN</code> para
+	 * pontos sem referência).
+	 * @return <code>true</code> se a projeção foi alinhada, <code>false</code>
+	 * caso existam menos de 3 pontos com referência ou estes sejam
+	 * (quase) colineares.
+	 */
+	static boolean align(DoubleMatrix2D y, DoubleMatrix2D target) {
+		int count = 0;
+		double my0 = 0, my1 = 0, mt0 = 0, mt1 = 0;
+		for( int i = 0; i < y.rows(); i++ ){
+			if ( Double.isNaN(target.getQuick(i, 0)) || Double.isNaN(target.getQuick(i, 1)) )
+				continue;
+			my0 += y.getQuick(i, 0);
+			my1 += y.getQuick(i, 1);
+			mt0 += target.getQuick(i, 0);
+			mt1 += target.getQuick(i, 1);
+			count++;
+		}
+		if ( count < 3 )
+			return false;
+		my0 /= count;
+		my1 /= count;
+		mt0 /= count;
+		mt1 /= count;
+
+		double h00 = 0, h01 = 0, h10 = 0, h11 = 0;
+		for( int i = 0; i < y.rows(); i++ ){
+			if ( Double.isNaN(target.getQuick(i, 0)) || Double.isNaN(target.getQuick(i, 1)) )
+				continue;
+			double y0 = y.getQuick(i, 0) - my0, y1 = y.getQuick(i, 1) - my1;
+			double t0 = target.getQuick(i, 0) - mt0, t1 = target.getQuick(i, 1) - mt1;
+			h00 += y0 * t0;
+			h01 += y0 * t1;
+			h10 += y1 * t0;
+			h11 += y1 * t1;
+		}
+
+		// (H'H)^(-1/2) em forma fechada (ver project)
+		double a = h00 * h00 + h10 * h10, b = h00 * h01 + h10 * h11, c = h01 * h01 + h11 * h11;
+		double trace = a + c;
+		double det = a * c - b * b;
+		if ( !(trace > 0) || det <= MIN_CONDITION * trace * trace )
+			return false;
+		double d = Math.sqrt(det);
+		double scale = 1.0 / (d * Math.sqrt(trace + 2 * d));
+		double r00 = (h00 * (c + d) - h01 * b) * scale, r01 = (h01 * (a + d) - h00 * b) * scale;
+		double r10 = (h10 * (c + d) - h11 * b) * scale, r11 = (h11 * (a + d) - h10 * b) * scale;
+
+		for( int i = 0; i < y.rows(); i++ ){
+			double y0 = y.getQuick(i, 0) - my0, y1 = y.getQuick(i, 1) - my1;
+			y.setQuick(i, 0, y0 * r00 + y1 * r10 + mt0);
+			y.setQuick(i, 1, y0 * r01 + y1 * r11 + mt1);
+		}
+		return true;
+	}
+}
@@ -0,0 +1,29 @@
+package ep.db.mdp;
+
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+
+/**
+ * Projeção multidimensional das linhas de uma matriz no plano
+ * (ex: projeção dos pontos de controle do {@link Lamp}).
+ * @version 1.0
+ * @since 2017
+ *
+ */
+public interface Projection {
+
+	/**
+	 * Projeta as linhas da matriz dada.
+	 * @param x pontos a serem projetados (N x M).
+	 * @return projeção (N x 2).
+	 */
+	public DoubleMatrix2D project(DoubleMatrix2D x);
+
+	/**
+	 * Atribui posições iniciais dos pontos nas projeções seguintes
+	 * (ex: posições da projeção anterior, mantendo a nova projeção
+	 * próxima a ela).
+	 * @param y posições iniciais (N x 2, <code>NaN</code> para posição
+	 * aleatória) ou <code>null</code> para posições aleatórias.
+	 */
+	public void setInitialPositions(DoubleMatrix2D y);
+}
@@ -0,0 +1,223 @@
+package ep.db.mdp;
+
+/**
+ * Árvore quaternária (<i>quadtree</i>) sobre pontos no plano, utilizada
+ * na aproximação de Barnes-Hut da repulsão entre os pontos do
+ * {@link BarnesHutForceScheme}.
+ * <p>Cada nó guarda o número de pontos (massa) e o seu centro de massa.
+ * Na consulta, um nó cujo lado dividido pela distância ao seu centro de
+ * massa é menor que <code>theta</code> é tratado como um único ponto;
+ * os demais são abertos até as folhas, somadas de forma exata.
+ * A árvore é imutável após a construção e pode ser consultada por
+ * várias threads, cada uma com sua pilha.</p>
+ * @version 1.0
+ * @since 2017
+ *
+ */
+final class QuadTree {
+
+	/**
+	 * Número máximo de pontos por folha
+	 */
+	private static final int LEAF = 8;
+
+	/**
+	 * Profundidade máxima (pontos coincidentes permanecem na mesma folha)
+	 */
+	static final int MAX_DEPTH = 48;
+
+	/**
+	 * Coordenadas x e y de cada ponto
+	 */
+	private final double[] y;
+
+	/**
+	 * Pontos, agrupados por nó
+	 */
+	private final int[] items;
+
+	/**
+	 * Intervalo de pontos de cada nó: <code>items[lo[k]..hi[k])</code>
+	 */
+	private int[] lo, hi;
+
+	/**
+	 * Primeiro filho de cada nó (-1 = folha); os filhos não vazios são
+	 * consecutivos, <code>children[k]</code> é o número de filhos
+	 */
+	private int[] first, children;
+
+	/**
+	 * Centro de massa e canto inferior de cada nó
+	 */
+	private double[] comX, comY, minX, minY;
+
+	/**
+	 * Lado de cada nó
+	 */
+	private double[] size;
+
+	private int nodes;
+
+	/**
+	 * Constroi árvore sobre os pontos dados.
+	 * @param y coordenadas x e y de cada ponto (não devem ser alteradas
+	 * enquanto a árvore for utilizada).
+	 * @param n número de pontos.
+	 */
+	QuadTree(double[] y, int n) {
+		this.y = y;
+		this.items = new int[n];
+		for( int i = 0; i < n; i++ )
+			items[i] = i;
+		allocate(Math.max(16, n / 2));
+
+		double x0 = Double.POSITIVE_INFINITY, y0 = Double.POSITIVE_INFINITY;
+		double x1 = Double.NEGATIVE_INFINITY, y1 = Double.NEGATIVE_INFINITY;
+		for( int i = 0; i < n; i++ ){
+			x0 = Math.min(x0, y[2 * i]);
+			x1 = Math.max(x1, y[2 * i]);
+			y0 = Math.min(y0, y[2 * i + 1]);
+			y1 = Math.max(y1, y[2 * i + 1]);
+		}
+		// Lado ligeiramente maior: o ponto máximo fica no interior
+		double side = Math.max(x1 - x0, y1 - y0);
+		side = side > 0 ? side * (1 + 1e-9) : 1;
+		build(newNode(0, n, x0, y0, side), 0);
+	}
+
+	private int newNode(int from, int to, double x0, double y0, double side) {
+		if ( nodes == lo.length )
+			allocate(2 * nodes);
+		int k = nodes++;
+		lo[k] = from;
+		hi[k] = to;
+		first[k] = -1;
+		minX[k] = x0;
+		minY[k] = y0;
+		size[k] = side;
+		double sx = 0, sy = 0;
+		for( int i = from; i < to; i++ ){
+			sx += y[2 * items[i]];
+			sy += y[2 * items[i] + 1];
+		}
+		comX[k] = sx / (to - from);
+		comY[k] = sy / (to - from);
+		return k;
+	}
+
+	private void build(int k, int depth) {
+		if ( hi[k] - lo[k] <= LEAF || depth >= MAX_DEPTH )
+			return;
+
+		// Divide pontos em quadrantes: x e depois y
+		final double half = size[k] / 2;
+		final double mx = minX[k] + half, my = minY[k] + half;
+		int split = partition(lo[k], hi[k], 0, mx);
+		int[] bounds = { lo[k], partition(lo[k], split, 1, my), split, partition(split, hi[k], 1, my), hi[k] };
+
+		int child = -1, count = 0;
+		for( int q = 0; q < 4; q++ ){
+			if ( bounds[q] == bounds[q + 1] )
+				continue;
+			int c = newNode(bounds[q], bounds[q + 1], (q & 2) == 0 ? minX[k] : mx,
+					(q & 1) == 0 ? minY[k] : my, half);
+			if ( child < 0 )
+				child = c;
+			count++;
+		}
+		first[k] = child;
+		children[k] = count;
+		for( int c = child; c < child + count; c++ )
+			build(c, depth + 1);
+	}
+
+	/**
+	 * Particiona <code>items[from..to)</code> pela coordenada dada.
+	 * @return início dos pontos com coordenada maior ou igual a <code>pivot</code>.
+	 */
+	private int partition(int from, int to, int axis, double pivot) {
+		int i = from, j = to - 1;
+		while( i <= j ){
+			if ( y[2 * items[i] + axis] < pivot )
+				i++;
+			else {
+				int t = items[i];
+				items[i] = items[j];
+				items[j--] = t;
+			}
+		}
+		return i;
+	}
+
+	private void allocate(int capacity) {
+		lo = grow(lo, capacity);
+		hi = grow(hi, capacity);
+		first = grow(first, capacity);
+		children = grow(children, capacity);
+		comX = grow(comX, capacity);
+		comY = grow(comY, capacity);
+		minX = grow(minX, capacity);
+		minY = grow(minY, capacity);
+		size = grow(size, capacity);
+	}
+
+	private static int[] grow(int[] a, int capacity) {
+		int[] b = new int[capacity];
+		if ( a != null )
+			System.arraycopy(a, 0, b, 0, a.length);
+		return b;
+	}
+
+	private static double[] grow(double[] a, int capacity) {
+		double[] b = new double[capacity];
+		if ( a != null )
+			System.arraycopy(a, 0, b, 0, a.length);
+		return b;
+	}
+
+	/**
+	 * Soma os vetores unitários dos demais pontos em direção ao ponto
+	 * <code>a</code>: <code>sum_b (y_a - y_b) / |y_a - y_b|</code>.
+	 * @param a ponto.
+	 * @param theta critério de abertura dos nós (0 = soma exata).
+	 * @param stack pilha de nós (ao menos <code>4 * MAX_DEPTH + 1</code>).
+	 * @param out soma (x e y).
+	 */
+	void repulsion(int a, double theta, int[] stack, double[] out) {
+		final double ax = y[2 * a], ay = y[2 * a + 1];
+		double rx = 0, ry = 0;
+		int top = 0;
+		stack[top++] = 0;
+		while( top > 0 ){
+			int k = stack[--top];
+			if ( first[k] < 0 ){
+				for( int i = lo[k]; i < hi[k]; i++ ){
+					int b = items[i];
+					double dx = ax - y[2 * b], dy = ay - y[2 * b + 1];
+					double e = Math.sqrt(dx * dx + dy * dy);
+					if ( e > 0 ){
+						rx += dx / e;
+						ry += dy / e;
+					}
+				}
+				continue;
+			}
+
+			double dx = ax - comX[k], dy = ay - comY[k];
+			double e = Math.sqrt(dx * dx + dy * dy);
+			boolean inside = ax >= minX[k] && ax < minX[k] + size[k] && ay >= minY[k] && ay < minY[k] + size[k];
+			if ( !inside && size[k] < theta * e ){
+				int mass = hi[k] - lo[k];
+				rx += mass * dx / e;
+				ry += mass * dy / e;
+			}
+			else {
+				for( int c = first[k]; c < first[k] + children[k]; c++ )
+					stack[top++] = c;
+			}
+		}
+		out[0] = rx;
+		out[1] = ry;
+	}
+}
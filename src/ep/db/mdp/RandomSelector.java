@@ -0,0 +1,35 @@
+package ep.db.mdp;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.Set;
+
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+
+/**
+ * Seleção de pontos de controle aleatória (uniforme).
+ * @version 1.0
+ * @since 2017
+ *
+ */
+public class RandomSelector implements ControlPointSelector {
+
+	@Override
+	public int[] select(DoubleMatrix2D x, int numControlPoints, Random rng) {
+		int n = numControlPoints;
+		Set<Integer> sample = new HashSet<>(n);
+		while( sample.size() < n ){
+			Integer next = rng.nextInt( x.rows() );
+			sample.add(next);
+		}
+
+		// Salva control points em vetor de inteiros.
+		int[] cpoints = new int[n];
+		Iterator<Integer> iter = sample.iterator();
+		for(int j = 0; j < n && iter.hasNext(); j++){
+			cpoints[j] = iter.next();
+		}
+		return cpoints;
+	}
+}
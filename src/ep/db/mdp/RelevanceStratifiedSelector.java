@@ -0,0 +1,55 @@
+package ep.db.mdp;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+
+/**
+ * Seleção de pontos de controle estratificada pela relevância
+ * (PageRank) dos documentos: os documentos são ordenados por
+ * relevância e divididos em estratos de mesmo tamanho, sendo um ponto
+ * de controle sorteado em cada estrato. Assim os pontos de controle
+ * cobrem tanto os documentos mais relevantes quanto os demais.
+ * @version 1.0
+ * @since 2017
+ *
+ */
+public class RelevanceStratifiedSelector implements ControlPointSelector {
+
+	/**
+	 * Relevância de cada linha da matriz
+	 */
+	private final double[] relevance;
+
+	/**
+	 * Cria novo seletor.
+	 * @param relevance relevância de cada linha da matriz
+	 * (mesma ordem das linhas).
+	 */
+	public RelevanceStratifiedSelector(double[] relevance) {
+		this.relevance = relevance;
+	}
+
+	@Override
+	public int[] select(DoubleMatrix2D x, int numControlPoints, Random rng) {
+		final int n = x.rows();
+		if ( relevance.length < n )
+			throw new IllegalArgumentException("Relevance scores: " + relevance.length + " < " + n);
+
+		// Ordena linhas por relevância (decrescente)
+		Integer[] order = new Integer[n];
+		for( int r = 0; r < n; r++ )
+			order[r] = r;
+		Arrays.sort(order, Comparator.comparingDouble((Integer r) -> -relevance[r]));
+
+		int[] cpoints = new int[numControlPoints];
+		for( int s = 0; s < numControlPoints; s++ ){
+			int from = (int) ((long) s * n / numControlPoints);
+			int to = (int) ((long) (s + 1) * n / numControlPoints);
+			cpoints[s] = order[from + rng.nextInt(to - from)];
+		}
+		return cpoints;
+	}
+}
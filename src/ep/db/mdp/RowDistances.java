@@ -0,0 +1,84 @@
+package ep.db.mdp;
+
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.SparseRCDoubleMatrix2D;
+import ep.db.matrix.SparseRows;
+
+/**
+ * Distâncias euclidianas (ao quadrado) de todas as linhas de uma
+ * matriz a uma de suas linhas, utilizada pelos seletores de pontos
+ * de controle.
+ * <p>Para matrizes esparsas (CSR) a linha de referência é expandida
+ * em um vetor denso e a distância é obtida por
+ * <code>|a|^2 + |b|^2 - 2 a.b</code>, percorrendo somente os valores não
+ * nulos de cada linha.</p>
+ * @version 1.0
+ * @since 2017
+ *
+ */
+final class RowDistances {
+
+	private final DoubleMatrix2D x;
+
+	/**
+	 * Matriz esparsa (ou <code>null</code>)
+	 */
+	private final SparseRCDoubleMatrix2D sparse;
+
+	/**
+	 * Quadrado da norma de cada linha (matriz esparsa)
+	 */
+	private final double[] norms;
+
+	/**
+	 * Linha de referência expandida (matriz esparsa)
+	 */
+	private final double[] row;
+
+	RowDistances(DoubleMatrix2D x) {
+		this.x = x;
+		if ( x instanceof SparseRCDoubleMatrix2D ){
+			sparse = (SparseRCDoubleMatrix2D) x;
+			norms = new double[x.rows()];
+			for( int r = 0; r < norms.length; r++ )
+				norms[r] = SparseRows.squaredNorm(sparse, r);
+			row = new double[x.columns()];
+		}
+		else {
+			sparse = null;
+			norms = null;
+			row = null;
+		}
+	}
+
+	/**
+	 * Calcula quadrado da distância de cada linha à linha dada.
+	 * @param c linha de referência.
+	 * @param dist distâncias (saída, <code>x.rows()</code> posições).
+	 */
+	void squaredDistances(int c, double[] dist) {
+		final int n = x.rows();
+		if ( sparse == null ){
+			final int dim = x.columns();
+			for( int r = 0; r < n; r++ ){
+				double sum = 0;
+				for( int j = 0; j < dim; j++ ){
+					double d = x.getQuick(r, j) - x.getQuick(c, j);
+					sum += d * d;
+				}
+				dist[r] = sum;
+			}
+			return;
+		}
+
+		final int[] rp = sparse.getRowPointers(), ci = sparse.getColumnIndexes();
+		final double[] v = sparse.getValues();
+		for( int k = rp[c]; k < rp[c + 1]; k++ )
+			row[ci[k]] = v[k];
+		for( int r = 0; r < n; r++ )
+			dist[r] = Math.max(0, norms[r] + norms[c] - 2 * SparseRows.dot(sparse, r, row));
+		dist[c] = 0;
+		for( int k = rp[c]; k < rp[c + 1]; k++ )
+			row[ci[k]] = 0;
+	}
+}
@@ -0,0 +1,239 @@
+package ep.db.mdp;
+
+import java.util.Random;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * Árvore de pontos de vantagem (<i>vantage-point tree</i>) sobre um
+ * conjunto pequeno de itens (pontos de controle do {@link Lamp}) para
+ * busca dos <code>m</code> itens mais próximos de um ponto.
+ * <p>A árvore é armazenada de forma implícita no vetor de itens: o nó
+ * do intervalo <code>[lo, hi)</code> tem o ponto de vantagem na posição
+ * <code>lo</code>, os itens a distância menor ou igual ao raio em
+ * <code>[lo + 1, split)</code> e os demais em <code>[split, hi)</code>.
+ * A árvore é imutável após a construção e pode ser consultada por
+ * várias threads, cada uma com seu {@link Search}.</p>
+ * @version 1.0
+ * @since 2017
+ *
+ */
+final class VantagePointTree {
+
+	/**
+	 * Distância entre dois itens.
+	 */
+	@FunctionalInterface
+	interface Metric {
+		double distance(int i, int j);
+	}
+
+	/**
+	 * Itens (ordem da árvore)
+	 */
+	private final int[] items;
+
+	/**
+	 * Raio de cada nó (indexado pela posição do ponto de vantagem)
+	 */
+	private final double[] radius;
+
+	/**
+	 * Início do intervalo externo de cada nó
+	 */
+	private final int[] split;
+
+	/**
+	 * Constroi árvore sobre os itens 0..n-1.
+	 * @param n número de itens.
+	 * @param metric distância entre itens.
+	 * @param rng gerador aleatório (escolha dos pontos de vantagem).
+	 */
+	VantagePointTree(int n, Metric metric, Random rng) {
+		items = new int[n];
+		for( int i = 0; i < n; i++ )
+			items[i] = i;
+		radius = new double[n];
+		split = new int[n];
+		build(0, n, metric, rng, new double[n]);
+	}
+
+	private void build(int lo, int hi, Metric metric, Random rng, double[] dist) {
+		if ( hi - lo <= 1 ){
+			if ( hi > lo )
+				split[lo] = hi;
+			return;
+		}
+
+		// Ponto de vantagem aleatório na primeira posição
+		swap(lo, lo + rng.nextInt(hi - lo), dist);
+		int vantage = items[lo];
+		for( int i = lo + 1; i < hi; i++ )
+			dist[i] = metric.distance(vantage, items[i]);
+
+		// Mediana das distâncias: [lo + 1, mid) <= radius <= [mid, hi),
+		// com ao menos um item no intervalo interno
+		int mid = (lo + hi + 2) >>> 1;
+		select(lo + 1, hi - 1, mid - 1, dist);
+		radius[lo] = dist[mid - 1];
+		split[lo] = mid;
+
+		build(lo + 1, mid, metric, rng, dist);
+		build(mid, hi, metric, rng, dist);
+	}
+
+	/**
+	 * Seleção do k-ésimo menor (Hoare) em <code>[left, right]</code>.
+	 */
+	private void select(int left, int right, int k, double[] dist) {
+		while( left < right ){
+			double pivot = dist[(left + right) >>> 1];
+			int i = left, j = right;
+			while( i <= j ){
+				while( dist[i] < pivot )
+					i++;
+				while( dist[j] > pivot )
+					j--;
+				if ( i <= j )
+					swap(i++, j--, dist);
+			}
+			if ( k <= j )
+				right = j;
+			else if ( k >= i )
+				left = i;
+			else
+				return;
+		}
+	}
+
+	private void swap(int i, int j, double[] dist) {
+		int t = items[i];
+		items[i] = items[j];
+		items[j] = t;
+		double d = dist[i];
+		dist[i] = dist[j];
+		dist[j] = d;
+	}
+
+	/**
+	 * Busca dos itens mais próximos com buffers reutilizáveis
+	 * (uma instância por thread).
+	 */
+	final class Search {
+
+		/**
+		 * Heap de máximo: itens e distâncias
+		 */
+		private final int[] heapItems;
+
+		private final double[] heapDist;
+
+		private int size, m;
+
+		private IntToDoubleFunction query;
+
+		/**
+		 * Cria nova busca.
+		 * @param capacity número máximo de vizinhos.
+		 */
+		Search(int capacity) {
+			heapItems = new int[capacity];
+			heapDist = new double[capacity];
+		}
+
+		/**
+		 * Busca os <code>m</code> itens mais próximos.
+		 * @param query distância do ponto consultado a cada item.
+		 * @param m número de vizinhos (no máximo a capacidade).
+		 * @param nearest itens encontrados (saída, ordem crescente de distância).
+		 * @param distances distâncias dos itens encontrados (saída).
+		 * @return número de itens encontrados.
+		 */
+		int nearest(IntToDoubleFunction query, int m, int[] nearest, double[] distances) {
+			this.query = query;
+			this.m = Math.min(m, items.length);
+			this.size = 0;
+			search(0, items.length);
+			this.query = null;
+
+			// Remove do heap em ordem decrescente
+			int count = size;
+			for( int q = count - 1; q >= 0; q-- ){
+				nearest[q] = heapItems[0];
+				distances[q] = heapDist[0];
+				pop();
+			}
+			return count;
+		}
+
+		private void search(int lo, int hi) {
+			if ( lo >= hi )
+				return;
+			double d = query.applyAsDouble(items[lo]);
+			offer(items[lo], d);
+			if ( hi - lo == 1 )
+				return;
+
+			double r = radius[lo];
+			int mid = split[lo];
+			if ( d <= r ){
+				search(lo + 1, mid);
+				if ( size < m || d + heapDist[0] > r )
+					search(mid, hi);
+			}
+			else {
+				search(mid, hi);
+				if ( size < m || d - heapDist[0] <= r )
+					search(lo + 1, mid);
+			}
+		}
+
+		private void offer(int item, double d) {
+			if ( size < m ){
+				int i = size++;
+				while( i > 0 ){
+					int parent = (i - 1) >>> 1;
+					if ( heapDist[parent] >= d )
+						break;
+					heapItems[i] = heapItems[parent];
+					heapDist[i] = heapDist[parent];
+					i = parent;
+				}
+				heapItems[i] = item;
+				heapDist[i] = d;
+			}
+			else if ( d < heapDist[0] ){
+				heapItems[0] = item;
+				heapDist[0] = d;
+				siftDown(0);
+			}
+		}
+
+		private void pop() {
+			--size;
+			if ( size > 0 ){
+				heapItems[0] = heapItems[size];
+				heapDist[0] = heapDist[size];
+				siftDown(0);
+			}
+		}
+
+		private void siftDown(int i) {
+			int item = heapItems[i];
+			double d = heapDist[i];
+			while( true ){
+				int child = 2 * i + 1;
+				if ( child >= size )
+					break;
+				if ( child + 1 < size && heapDist[child + 1] > heapDist[child] )
+					++child;
+				if ( heapDist[child] <= d )
+					break;
+				heapItems[i] = heapItems[child];
+				heapDist[i] = heapDist[child];
+				i = child;
+			}
+			heapItems[i] = item;
+			heapDist[i] = d;
+		}
+	}
+}
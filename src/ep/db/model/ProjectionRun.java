@@ -0,0 +1,310 @@
+package ep.db.model;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import ep.db.tfidf.Vocabulary;
+
+/**
+ * Classe representando uma execução da projeção multidimensional
+ * (tabelas <code>projection_runs</code> e <code>projection_control_points</code>):
+ * vocabulário, pontos de controle com sua projeção e normalização
+ * utilizados, permitindo projetar novos documentos sem refazer
+ * a projeção completa. Registra também a semente, o resumo do
+ * vocabulário, a execução à qual a projeção foi alinhada e o tempo
+ * de cada etapa, permitindo reproduzir e comparar execuções.
+ * @version 1.0
+ * @since 2017
+ *
+ */
+public class ProjectionRun {
+
+	/**
+	 * ID da execução no banco de dados
+	 */
+	private long runId;
+
+	/**
+	 * Número de documentos projetados
+	 */
+	private int numberOfDocuments;
+
+	/**
+	 * Vocabulário da matriz de frequência (<code>null</code>
+	 * com <i>feature hashing</i>)
+	 */
+	private Vocabulary vocabulary;
+
+	/**
+	 * Número de bits do vetorizador por <i>feature hashing</i>
+	 * (0 = vocabulário)
+	 */
+	private int hashingBits;
+
+	/**
+	 * Maior doc_id projetado
+	 */
+	private long lastDocId;
+
+	/**
+	 * Limites da projeção antes da normalização: mínimo e
+	 * máximo de x e de y (<code>null</code> = sem normalização)
+	 */
+	private double[] bounds;
+
+	/**
+	 * doc_id de cada ponto de controle
+	 */
+	private long[] controlPointIds;
+
+	/**
+	 * Valores dos pontos de controle (k x M)
+	 */
+	private DoubleMatrix2D controlPoints;
+
+	/**
+	 * Projeção dos pontos de controle (k x 2)
+	 */
+	private DoubleMatrix2D controlPointsProjection;
+
+	/**
+	 * Semente do gerador aleatório
+	 */
+	private long seed;
+
+	/**
+	 * Execução à qual a projeção foi alinhada (0 = sem alinhamento)
+	 */
+	private long alignedTo;
+
+	/**
+	 * Número de documentos cuja projeção foi alterada
+	 */
+	private int updated;
+
+	/**
+	 * Tempo de cada etapa (ms), na ordem de execução
+	 */
+	private final Map<String, Long> timings = new LinkedHashMap<>();
+
+	/**
+	 * Cria nova execução.
+	 */
+	public ProjectionRun() {
+
+	}
+
+	/**
+	 * Retorna id da execução no banco de dados.
+	 * @return id da execução.
+	 */
+	public long getRunId() {
+		return runId;
+	}
+
+	/**
+	 * Atribui id da execução.
+	 * @param runId id da execução.
+	 */
+	public void setRunId(long runId) {
+		this.runId = runId;
+	}
+
+	/**
+	 * Retorna número de documentos projetados.
+	 * @return número de documentos.
+	 */
+	public int getNumberOfDocuments() {
+		return numberOfDocuments;
+	}
+
+	/**
+	 * Atribui número de documentos projetados.
+	 * @param numberOfDocuments número de documentos.
+	 */
+	public void setNumberOfDocuments(int numberOfDocuments) {
+		this.numberOfDocuments = numberOfDocuments;
+	}
+
+	/**
+	 * Retorna vocabulário da matriz de frequência.
+	 * @return vocabulário ou <code>null</code> caso <i>feature hashing</i>
+	 * tenha sido utilizado.
+	 */
+	public Vocabulary getVocabulary() {
+		return vocabulary;
+	}
+
+	/**
+	 * Atribui vocabulário da matriz de frequência.
+	 * @param vocabulary vocabulário.
+	 */
+	public void setVocabulary(Vocabulary vocabulary) {
+		this.vocabulary = vocabulary;
+	}
+
+	/**
+	 * Retorna número de bits do vetorizador por <i>feature hashing</i>.
+	 * @return número de bits ou 0 caso o vocabulário tenha sido utilizado.
+	 */
+	public int getHashingBits() {
+		return hashingBits;
+	}
+
+	/**
+	 * Atribui número de bits do vetorizador por <i>feature hashing</i>.
+	 * @param hashingBits número de bits.
+	 */
+	public void setHashingBits(int hashingBits) {
+		this.hashingBits = hashingBits;
+	}
+
+	/**
+	 * Retorna maior doc_id projetado: documentos com doc_id maior
+	 * foram inseridos após a execução.
+	 * @return maior doc_id projetado.
+	 */
+	public long getLastDocId() {
+		return lastDocId;
+	}
+
+	/**
+	 * Atribui maior doc_id projetado.
+	 * @param lastDocId maior doc_id projetado.
+	 */
+	public void setLastDocId(long lastDocId) {
+		this.lastDocId = lastDocId;
+	}
+
+	/**
+	 * Retorna limites da projeção antes da normalização.
+	 * @return mínimo e máximo de x e de y ou <code>null</code> caso
+	 * a projeção não tenha sido normalizada.
+	 */
+	public double[] getBounds() {
+		return bounds;
+	}
+
+	/**
+	 * Atribui limites da projeção antes da normalização.
+	 * @param bounds mínimo e máximo de x e de y.
+	 */
+	public void setBounds(double[] bounds) {
+		this.bounds = bounds;
+	}
+
+	/**
+	 * Retorna doc_id de cada ponto de controle.
+	 * @return doc_id's dos pontos de controle.
+	 */
+	public long[] getControlPointIds() {
+		return controlPointIds;
+	}
+
+	/**
+	 * Atribui doc_id de cada ponto de controle.
+	 * @param controlPointIds doc_id's dos pontos de controle.
+	 */
+	public void setControlPointIds(long[] controlPointIds) {
+		this.controlPointIds = controlPointIds;
+	}
+
+	/**
+	 * Retorna valores (TF-IDF) dos pontos de controle.
+	 * @return matriz k x M.
+	 */
+	public DoubleMatrix2D getControlPoints() {
+		return controlPoints;
+	}
+
+	/**
+	 * Atribui valores (TF-IDF) dos pontos de controle.
+	 * @param controlPoints matriz k x M.
+	 */
+	public void setControlPoints(DoubleMatrix2D controlPoints) {
+		this.controlPoints = controlPoints;
+	}
+
+	/**
+	 * Retorna projeção dos pontos de controle (antes da normalização).
+	 * @return matriz k x 2.
+	 */
+	public DoubleMatrix2D getControlPointsProjection() {
+		return controlPointsProjection;
+	}
+
+	/**
+	 * Atribui projeção dos pontos de controle (antes da normalização).
+	 * @param controlPointsProjection matriz k x 2.
+	 */
+	public void setControlPointsProjection(DoubleMatrix2D controlPointsProjection) {
+		this.controlPointsProjection = controlPointsProjection;
+	}
+
+	/**
+	 * Retorna semente do gerador aleatório da execução.
+	 * @return semente.
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * Atribui semente do gerador aleatório da execução.
+	 * @param seed semente.
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Retorna execução à qual a projeção foi alinhada.
+	 * @return id da execução ou 0 caso a projeção não tenha
+	 * sido alinhada.
+	 */
+	public long getAlignedTo() {
+		return alignedTo;
+	}
+
+	/**
+	 * Atribui execução à qual a projeção foi alinhada.
+	 * @param alignedTo id da execução.
+	 */
+	public void setAlignedTo(long alignedTo) {
+		this.alignedTo = alignedTo;
+	}
+
+	/**
+	 * Retorna número de documentos cuja projeção foi alterada.
+	 * @return número de documentos atualizados.
+	 */
+	public int getUpdated() {
+		return updated;
+	}
+
+	/**
+	 * Atribui número de documentos cuja projeção foi alterada.
+	 * @param updated número de documentos atualizados.
+	 */
+	public void setUpdated(int updated) {
+		this.updated = updated;
+	}
+
+	/**
+	 * Retorna tempo de cada etapa da execução.
+	 * @return mapa etapa -&gt; tempo (ms), na ordem de execução.
+	 */
+	public Map<String, Long> getTimings() {
+		return timings;
+	}
+
+	/**
+	 * Acumula tempo de uma etapa da execução.
+	 * @param phase nome da etapa.
+	 * @param millis tempo (ms).
+	 */
+	public void addTiming(String phase, long millis) {
+		timings.merge(phase, millis, Long::sum);
+	}
+}
@@ -0,0 +1,237 @@
+package ep.db.pagerank;
+
+import java.util.Arrays;
+
+/**
+ * Grafo de citações armazenado de forma compacta em vetores
+ * primitivos.
+ * <p>Os vértices são os documentos que citam ou são citados,
+ * renumerados densamente (0..n-1) em ordem crescente de doc_id.
+ * As arestas de saída (documento -> referência) são armazenadas
+ * no formato CSR (<i>compressed sparse row</i>) e as arestas de
+ * entrada no formato CSC (<i>compressed sparse column</i>):
+ * os vizinhos do vértice <code>v</code> estão nas posições
+ * <code>[offsets[v], offsets[v+1])</code> do vetor de alvos.</p>
+ * @version 1.0
+ * @since 2017
+ *
+ */
+public class CitationGraph {
+
+	/**
+	 * doc_id de cada vértice (ordenado)
+	 */
+	private final long[] docIds;
+
+	/**
+	 * Início das arestas de saída de cada vértice (n+1)
+	 */
+	private final int[] outOffsets;
+
+	/**
+	 * Vértices citados (arestas de saída)
+	 */
+	private final int[] outTargets;
+
+	/**
+	 * Início das arestas de entrada de cada vértice (n+1)
+	 */
+	private final int[] inOffsets;
+
+	/**
+	 * Vértices que citam (arestas de entrada)
+	 */
+	private final int[] inSources;
+
+	private CitationGraph(long[] docIds, int[] outOffsets, int[] outTargets, int[] inOffsets, int[] inSources) {
+		this.docIds = docIds;
+		this.outOffsets = outOffsets;
+		this.outTargets = outTargets;
+		this.inOffsets = inOffsets;
+		this.inSources = inSources;
+	}
+
+	/**
+	 * Retorna número de vértices.
+	 * @return número de documentos no grafo.
+	 */
+	public int numVertices() {
+		return docIds.length;
+	}
+
+	/**
+	 * Retorna número de arestas.
+	 * @return número de citações no grafo.
+	 */
+	public int numEdges() {
+		return outTargets.length;
+	}
+
+	/**
+	 * Retorna doc_id do vértice dado.
+	 * @param v índice do vértice.
+	 * @return doc_id.
+	 */
+	public long getDocId(int v) {
+		return docIds[v];
+	}
+
+	/**
+	 * Retorna índice do vértice com o doc_id dado.
+	 * @param docId id do documento.
+	 * @return índice do vértice ou valor negativo caso
+	 * o documento não esteja no grafo.
+	 */
+	public int indexOf(long docId) {
+		return Arrays.binarySearch(docIds, docId);
+	}
+
+	/**
+	 * Retorna número de citações feitas pelo vértice.
+	 * @param v índice do vértice.
+	 * @return grau de saída.
+	 */
+	public int outDegree(int v) {
+		return outOffsets[v + 1] - outOffsets[v];
+	}
+
+	/**
+	 * Retorna número de citações recebidas pelo vértice.
+	 * @param v índice do vértice.
+	 * @return grau de entrada.
+	 */
+	public int inDegree(int v) {
+		return inOffsets[v + 1] - inOffsets[v];
+	}
+
+	/**
+	 * Retorna doc_id's dos vértices (não deve ser alterado).
+	 * @return vetor com doc_id de cada vértice.
+	 */
+	public long[] getDocIds() {
+		return docIds;
+	}
+
+	/**
+	 * Retorna vetor de offsets das arestas de saída (CSR).
+	 * @return vetor com n+1 posições.
+	 */
+	public int[] getOutOffsets() {
+		return outOffsets;
+	}
+
+	/**
+	 * Retorna vetor de alvos das arestas de saída (CSR).
+	 * @return vetor com as referências de cada vértice.
+	 */
+	public int[] getOutTargets() {
+		return outTargets;
+	}
+
+	/**
+	 * Retorna vetor de offsets das arestas de entrada (CSC).
+	 * @return vetor com n+1 posições.
+	 */
+	public int[] getInOffsets() {
+		return inOffsets;
+	}
+
+	/**
+	 * Retorna vetor de origens das arestas de entrada (CSC).
+	 * @return vetor com os documentos que citam cada vértice.
+	 */
+	public int[] getInSources() {
+		return inSources;
+	}
+
+	/**
+	 * Construtor incremental do grafo a partir de
+	 * pares (doc_id, ref_id).
+	 */
+	public static class Builder {
+
+		private long[] sources;
+
+		private long[] targets;
+
+		private int size;
+
+		/**
+		 * Cria novo construtor.
+		 * @param expectedEdges número estimado de arestas.
+		 */
+		public Builder(int expectedEdges) {
+			int capacity = Math.max(16, expectedEdges);
+			sources = new long[capacity];
+			targets = new long[capacity];
+		}
+
+		/**
+		 * Adiciona citação docId -> refId.
+		 * @param docId documento que cita.
+		 * @param refId documento citado.
+		 */
+		public void addEdge(long docId, long refId) {
+			if ( size == sources.length ){
+				int capacity = size + (size >> 1);
+				sources = Arrays.copyOf(sources, capacity);
+				targets = Arrays.copyOf(targets, capacity);
+			}
+			sources[size] = docId;
+			targets[size] = refId;
+			++size;
+		}
+
+		/**
+		 * Constroi grafo com as arestas adicionadas.
+		 * @return novo grafo de citações.
+		 */
+		public CitationGraph build() {
+			// Vértices: doc_id's distintos em ordem crescente
+			long[] ids = new long[2 * size];
+			System.arraycopy(sources, 0, ids, 0, size);
+			System.arraycopy(targets, 0, ids, size, size);
+			Arrays.sort(ids);
+			int n = 0;
+			for( int i = 0; i < ids.length; i++ ){
+				if ( n == 0 || ids[i] != ids[n - 1] )
+					ids[n++] = ids[i];
+			}
+			ids = Arrays.copyOf(ids, n);
+
+			// Renumera arestas
+			int[] src = new int[size], dst = new int[size];
+			for( int e = 0; e < size; e++ ){
+				src[e] = Arrays.binarySearch(ids, sources[e]);
+				dst[e] = Arrays.binarySearch(ids, targets[e]);
+			}
+			sources = null;
+			targets = null;
+
+			int[] outOffsets = new int[n + 1], inOffsets = new int[n + 1];
+			int[] outTargets = new int[size], inSources = new int[size];
+			compress(src, dst, outOffsets, outTargets);
+			compress(dst, src, inOffsets, inSources);
+
+			return new CitationGraph(ids, outOffsets, outTargets, inOffsets, inSources);
+		}
+
+		/**
+		 * Compacta lista de arestas (counting sort) preenchendo
+		 * offsets e vizinhos ordenados de cada vértice.
+		 */
+		private static void compress(int[] from, int[] to, int[] offsets, int[] neighbors) {
+			for( int e = 0; e < from.length; e++ )
+				++offsets[from[e] + 1];
+			for( int v = 0; v < offsets.length - 1; v++ )
+				offsets[v + 1] += offsets[v];
+
+			int[] next = Arrays.copyOf(offsets, offsets.length - 1);
+			for( int e = 0; e < from.length; e++ )
+				neighbors[next[from[e]]++] = to[e];
+
+			for( int v = 0; v < offsets.length - 1; v++ )
+				Arrays.sort(neighbors, offsets[v], offsets[v + 1]);
+		}
+	}
+}
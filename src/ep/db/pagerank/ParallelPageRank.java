@@ -0,0 +1,279 @@
+package ep.db.pagerank;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Implementação paralela do PageRank sobre um {@link CitationGraph}.
+ * <p>Utiliza iteração de potência no modo <i>pull</i>: cada vértice
+ * soma as contribuições recebidas pelas arestas de entrada (CSC), de
+ * forma que os vértices podem ser atualizados em paralelo sem
+ * sincronização. Os scores são mantidos em vetores <code>double[]</code>.</p>
+ * <p>A formulação é a mesma de
+ * {@link edu.uci.ics.jung.algorithms.scoring.PageRank}: <code>alpha</code>
+ * é a probabilidade de salto aleatório e a relevância de documentos
+ * sem citações (<i>dangling nodes</i>) é redistribuída uniformemente
+ * a cada iteração. A convergência é verificada pela norma L1 da
+ * diferença entre iterações.</p>
+ * @version 1.0
+ * @since 2017
+ *
+ */
+public class ParallelPageRank {
+
+	/**
+	 * Número mínimo de vértices processados por tarefa
+	 */
+	private static final int GRAIN = 4096;
+
+	/**
+	 * Grafo de citações
+	 */
+	private final CitationGraph graph;
+
+	/**
+	 * Probabilidade de salto aleatório
+	 */
+	private final double alpha;
+
+	/**
+	 * Tolerância (norma L1) para convergência
+	 */
+	private double tolerance = 1e-8;
+
+	/**
+	 * Número máximo de iterações
+	 */
+	private int maxIterations = 100;
+
+	/**
+	 * Número de threads (0 = número de processadores)
+	 */
+	private int parallelism = 0;
+
+	/**
+	 * Número de iterações realizadas na última execução
+	 */
+	private int iterations;
+
+	/**
+	 * Norma L1 da diferença na última iteração
+	 */
+	private double delta;
+
+	/**
+	 * Cria novo objeto para cálculo do PageRank.
+	 * @param graph grafo de citações.
+	 * @param alpha probabilidade de salto aleatório.
+	 */
+	public ParallelPageRank(CitationGraph graph, double alpha) {
+		this.graph = graph;
+		this.alpha = alpha;
+	}
+
+	/**
+	 * Atribui tolerância para convergência.
+	 * @param tolerance norma L1 mínima da diferença entre iterações.
+	 */
+	public void setTolerance(double tolerance) {
+		this.tolerance = tolerance;
+	}
+
+	/**
+	 * Atribui número máximo de iterações.
+	 * @param maxIterations número máximo de iterações.
+	 */
+	public void setMaxIterations(int maxIterations) {
+		this.maxIterations = maxIterations;
+	}
+
+	/**
+	 * Atribui número de threads utilizadas.
+	 * @param parallelism número de threads ou 0 para utilizar
+	 * o número de processadores disponíveis.
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Retorna número de iterações realizadas.
+	 * @return número de iterações da última execução.
+	 */
+	public int getIterations() {
+		return iterations;
+	}
+
+	/**
+	 * Retorna norma L1 da diferença na última iteração.
+	 * @return diferença entre as duas últimas iterações.
+	 */
+	public double getDelta() {
+		return delta;
+	}
+
+	/**
+	 * Calcula PageRank partindo da distribuição uniforme.
+	 * @return relevância de cada vértice (índices do {@link CitationGraph}).
+	 */
+	public double[] evaluate() {
+		int n = graph.numVertices();
+		double[] scores = new double[n];
+		Arrays.fill(scores, 1.0 / n);
+		return iterate(scores);
+	}
+
+	/**
+	 * Calcula PageRank partindo de scores de uma execução anterior
+	 * (<i>warm start</i>). Após poucas alterações no grafo a convergência
+	 * é atingida em poucas iterações.
+	 * @param initial scores iniciais de cada vértice; valores &lt;= 0
+	 * (ex: documentos novos) são substituídos por <code>1/n</code>. O vetor
+	 * é normalizado para soma 1 e não é alterado.
+	 * @return relevância de cada vértice (índices do {@link CitationGraph}).
+	 */
+	public double[] evaluate(double[] initial) {
+		int n = graph.numVertices();
+		double[] scores = new double[n];
+		double sum = 0;
+		for( int v = 0; v < n; v++ ){
+			scores[v] = initial[v] > 0 ? initial[v] : 1.0 / n;
+			sum += scores[v];
+		}
+		for( int v = 0; v < n; v++ )
+			scores[v] /= sum;
+		return iterate(scores);
+	}
+
+	/**
+	 * Realiza iteração de potência até convergência.
+	 * @param scores scores iniciais (alterado).
+	 * @return scores finais.
+	 */
+	private double[] iterate(double[] scores) {
+		final int n = graph.numVertices();
+		iterations = 0;
+		delta = 0;
+		if ( n == 0 )
+			return scores;
+
+		double[] next = new double[n];
+		double[] contrib = new double[n];
+
+		ForkJoinPool pool = parallelism > 0 ? new ForkJoinPool(parallelism) : new ForkJoinPool();
+		try {
+			do {
+				// Contribuição de cada vértice por aresta de saída e
+				// soma dos scores dos vértices sem arestas de saída
+				double dangling = pool.invoke(new Contributions(scores, contrib, 0, n));
+
+				double base = alpha / n + (1 - alpha) * dangling / n;
+				delta = pool.invoke(new Pull(scores, next, contrib, base, 0, n));
+
+				double[] tmp = scores;
+				scores = next;
+				next = tmp;
+				++iterations;
+			} while ( delta >= tolerance && iterations < maxIterations );
+		} finally {
+			pool.shutdown();
+		}
+
+		return scores;
+	}
+
+	/**
+	 * Calcula contribuição (score / grau de saída) de um intervalo de vértices
+	 * retornando a soma dos scores dos vértices sem arestas de saída.
+	 */
+	private class Contributions extends RecursiveTask<Double> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final double[] scores, contrib;
+
+		private final int from, to;
+
+		Contributions(double[] scores, double[] contrib, int from, int to) {
+			this.scores = scores;
+			this.contrib = contrib;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected Double compute() {
+			if ( to - from > GRAIN ){
+				int mid = (from + to) >>> 1;
+				Contributions left = new Contributions(scores, contrib, from, mid);
+				left.fork();
+				double right = new Contributions(scores, contrib, mid, to).compute();
+				return left.join() + right;
+			}
+
+			final int[] offsets = graph.getOutOffsets();
+			double dangling = 0;
+			for( int v = from; v < to; v++ ){
+				int degree = offsets[v + 1] - offsets[v];
+				if ( degree == 0 ){
+					dangling += scores[v];
+					contrib[v] = 0;
+				}
+				else
+					contrib[v] = scores[v] / degree;
+			}
+			return dangling;
+		}
+	}
+
+	/**
+	 * Atualiza scores de um intervalo de vértices a partir das arestas de
+	 * entrada, retornando a norma L1 da diferença no intervalo.
+	 */
+	private class Pull extends RecursiveTask<Double> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final double[] scores, next, contrib;
+
+		private final double base;
+
+		private final int from, to;
+
+		Pull(double[] scores, double[] next, double[] contrib, double base, int from, int to) {
+			this.scores = scores;
+			this.next = next;
+			this.contrib = contrib;
+			this.base = base;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected Double compute() {
+			if ( to - from > GRAIN ){
+				int mid = (from + to) >>> 1;
+				Pull left = new Pull(scores, next, contrib, base, from, mid);
+				left.fork();
+				double right = new Pull(scores, next, contrib, base, mid, to).compute();
+				return left.join() + right;
+			}
+
+			final int[] offsets = graph.getInOffsets();
+			final int[] sources = graph.getInSources();
+			final double damping = 1 - alpha;
+			double diff = 0;
+			for( int v = from; v < to; v++ ){
+				double in = 0;
+				for( int e = offsets[v], end = offsets[v + 1]; e < end; e++ )
+					in += contrib[sources[e]];
+
+				double value = damping * in + base;
+				diff += Math.abs(value - scores[v]);
+				next[v] = value;
+			}
+			return diff;
+		}
+	}
+}
@@ -44,6 +44,38 @@ public class RelevanceCalculator {
 	 */
 	private final double c;
 	
+	/**
+	 * Implementação do PageRank: <code>native</code> ({@link ParallelPageRank})
+	 * ou <code>jung</code> ({@link PageRank}).
+	 */
+	private final String engine;
+	
+	/**
+	 * Tolerância para convergência
+	 */
+	private final double tolerance;
+	
+	/**
+	 * Número máximo de iterações
+	 */
+	private final int maxIterations;
+	
+	/**
+	 * Número de threads (0 = número de processadores)
+	 */
+	private final int threads;
+	
+	/**
+	 * Atualização incremental (somente após novas citações)
+	 */
+	private final boolean incremental;
+	
+	/**
+	 * Diferença mínima para atualização da relevância
+	 * de um documento (modo incremental)
+	 */
+	private final double epsilon;
+	
 	/**
 	 * Cria novo objeto para cálculo de relevância utilizando
 	 * fator-C padrão ({@value #C} e configuração especificada.
@@ -62,6 +94,12 @@ public class RelevanceCalculator {
 	public RelevanceCalculator( Properties config, double c ) {
 		this.dbService = new DatabaseService(config);
 		this.c = c;
+		this.engine = config.getProperty("pagerank.engine", "native");
+		this.tolerance = Double.parseDouble(config.getProperty("pagerank.tolerance", "1e-8"));
+		this.maxIterations = Integer.parseInt(config.getProperty("pagerank.max_iterations", "100"));
+		this.threads = Integer.parseInt(config.getProperty("pagerank.threads", "0"));
+		this.incremental = "incremental".equalsIgnoreCase(config.getProperty("pagerank.mode", "full"));
+		this.epsilon = Double.parseDouble(config.getProperty("pagerank.epsilon", "1e-9"));
 	}
 	
 	/**
@@ -69,6 +107,82 @@ public class RelevanceCalculator {
 	 * @throws Exception erro ao recuperar ou atualizar relevâncias.
 	 */
 	public void updateRelevance() throws Exception {
+		if ( "jung".equalsIgnoreCase(engine) )
+			updateRelevanceJung();
+		else
+			updateRelevanceNative();
+	}
+	
+	/**
+	 * Atualiza relevâncias utilizando {@link ParallelPageRank}
+	 * sobre o grafo compacto ({@link CitationGraph}).
+	 * <p>No modo incremental (<code>pagerank.mode=incremental</code>) o cálculo
+	 * só é realizado caso existam citações novas ou removidas desde a última
+	 * execução. A iteração parte das relevâncias armazenadas e somente os
+	 * documentos cuja relevância foi alterada (mais que <code>pagerank.epsilon</code>)
+	 * são atualizados.</p>
+	 * <p>A execução é registrada em <code>pagerank_runs</code> caso a tabela
+	 * exista (obrigatória no modo incremental).</p>
+	 * @throws Exception erro ao recuperar ou atualizar relevâncias.
+	 */
+	private void updateRelevanceNative() throws Exception {
+		
+		CitationGraph graph = null;
+		double[] previous = null;
+		long[] state;
+		try {
+			state = dbService.getCitationsState();
+			if ( incremental ){
+				long[] last = dbService.getLastPageRankRun();
+				if ( last != null && last[0] == state[0] && last[1] == state[1] ){
+					logger.info("PageRank: no citations changed since last run");
+					return;
+				}
+			}
+			
+			graph = dbService.loadCitationGraph();
+			if ( incremental )
+				previous = dbService.getRelevances(graph);
+		} catch (Exception e) {
+			logger.error("Error while getting citation graph from database",e);
+			throw e;
+		}
+		
+		ParallelPageRank pageRank = new ParallelPageRank(graph, c);
+		pageRank.setTolerance(tolerance);
+		pageRank.setMaxIterations(maxIterations);
+		pageRank.setParallelism(threads);
+		double[] scores = previous != null ? pageRank.evaluate(previous) : pageRank.evaluate();
+		logger.info(String.format("PageRank: %d documents, %d citations, %d iterations (delta = %e)", 
+				graph.numVertices(), graph.numEdges(), pageRank.getIterations(), pageRank.getDelta()));
+		
+		try {
+			int updated;
+			if ( previous != null )
+				updated = dbService.updatePageRank(graph, scores, previous, epsilon);
+			else {
+				dbService.updatePageRank(graph, scores);
+				updated = graph.numVertices();
+			}
+			// Bases anteriores podem não ter a tabela pagerank_runs (requerida
+			// somente no modo incremental)
+			if ( incremental || dbService.hasTable("pagerank_runs") )
+				dbService.addPageRankRun(state, graph.numVertices(), pageRank.getIterations(), 
+						pageRank.getDelta(), updated);
+			logger.info("PageRank: " + updated + " documents updated");
+		} catch (Exception e) {
+			logger.error("Error updating page rank in database", e);
+			throw e;
+		}
+	}
+	
+	/**
+	 * Atualiza relevâncias utilizando {@link PageRank} (JUNG).
+	 * A tolerância no JUNG refere-se à maior diferença entre
+	 * iterações para um único documento.
+	 * @throws Exception erro ao recuperar ou atualizar relevâncias.
+	 */
+	private void updateRelevanceJung() throws Exception {
 		
 		DirectedGraph<Long,Long> graph = null;
 		try {
@@ -79,6 +193,8 @@ public class RelevanceCalculator {
 		}
 		
 		PageRank<Long, Long> pageRank = new PageRank<>(graph, c);
+		pageRank.setTolerance(tolerance);
+		pageRank.setMaxIterations(maxIterations);
 		pageRank.evaluate(); 
 		
 		try {
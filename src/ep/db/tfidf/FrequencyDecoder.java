@@ -0,0 +1,114 @@
+package ep.db.tfidf;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Decodificador da coluna <code>freqs</code> (jsonb) dos documentos:
+ * <code>[{"word": .., "ndoc": .., "nentry": ..}, ...]</code>.
+ * <p>O vetor é percorrido token a token com {@link JsonParser}, sem
+ * criação de mapas, números ou {@link String}'s por termo: cada termo
+ * é resolvido para sua coluna pelo {@link TermResolver} ({@link TermDictionary}
+ * ou {@link HashingVectorizer}), diretamente sobre o buffer do parser, e
+ * o par (coluna, frequência) é repassado ao {@link TermConsumer}.
+ * Termos não resolvidos (coluna negativa) são ignorados.</p>
+ * <p>Não é seguro para uso concorrente.</p>
+ * @version 1.0
+ * @since 2017
+ *
+ */
+public class FrequencyDecoder {
+
+	/**
+	 * Fábrica de parsers (compartilhada, reaproveita buffers)
+	 */
+	private static final JsonFactory FACTORY = new JsonFactory();
+
+	/**
+	 * Consumidor dos termos decodificados.
+	 */
+	@FunctionalInterface
+	public interface TermConsumer {
+
+		/**
+		 * Recebe termo decodificado.
+		 * @param column coluna do termo no dicionário.
+		 * @param freq frequência do termo no documento (nentry).
+		 */
+		void accept(int column, double freq);
+	}
+
+	/**
+	 * Resolução de termos para colunas.
+	 */
+	@FunctionalInterface
+	public interface TermResolver {
+
+		/**
+		 * Retorna coluna do termo.
+		 * @param buf buffer contendo o termo.
+		 * @param offset posição inicial do termo no buffer.
+		 * @param length tamanho do termo.
+		 * @return coluna do termo ou valor negativo se o termo deve
+		 * ser ignorado.
+		 */
+		int resolve(char[] buf, int offset, int length);
+	}
+
+	/**
+	 * Resolução das colunas
+	 */
+	private final TermResolver resolver;
+
+	/**
+	 * Cria novo decodificador.
+	 * @param resolver resolução dos termos para colunas (ex:
+	 * {@link TermDictionary}).
+	 */
+	public FrequencyDecoder(TermResolver resolver) {
+		this.resolver = resolver;
+	}
+
+	/**
+	 * Decodifica frequências de um documento.
+	 * @param json conteúdo da coluna <code>freqs</code>.
+	 * @param consumer consumidor dos pares (coluna, frequência).
+	 * @return número de termos resolvidos.
+	 * @throws IOException erro ao decodificar JSON.
+	 */
+	public int decode(String json, TermConsumer consumer) throws IOException {
+		int count = 0;
+		try ( JsonParser parser = FACTORY.createParser(json);){
+			if ( parser.nextToken() != JsonToken.START_ARRAY )
+				return 0;
+
+			JsonToken token;
+			while( (token = parser.nextToken()) == JsonToken.START_OBJECT ){
+				int column = -1;
+				double freq = 0;
+				while( parser.nextToken() == JsonToken.FIELD_NAME ){
+					String field = parser.getCurrentName();
+					JsonToken value = parser.nextToken();
+					if ( "word".equals(field) && value == JsonToken.VALUE_STRING )
+						column = resolver.resolve(parser.getTextCharacters(), parser.getTextOffset(),
+								parser.getTextLength());
+					else if ( "nentry".equals(field) && value.isNumeric() )
+						freq = parser.getDoubleValue();
+					else
+						parser.skipChildren();
+				}
+				if ( column >= 0 ){
+					consumer.accept(column, freq);
+					++count;
+				}
+			}
+
+			if ( token != JsonToken.END_ARRAY )
+				throw new IOException("Invalid freqs: expected object, found " + token);
+		}
+		return count;
+	}
+}
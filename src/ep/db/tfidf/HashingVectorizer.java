@@ -0,0 +1,366 @@
+package ep.db.tfidf;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import cern.colt.matrix.tdouble.impl.SparseRCDoubleMatrix2D;
+
+/**
+ * Vetorizador por <i>feature hashing</i> (<i>hashing trick</i>): cada
+ * termo da coluna <code>freqs</code> é mapeado para uma de 2<sup>k</sup>
+ * colunas (<i>buckets</i>) por uma função de hash (MurmurHash3), com sinal
+ * dado por um bit independente do hash, de modo que colisões tendem a
+ * se cancelar.
+ * <p>Não há vocabulário global: a largura da matriz é fixa e a
+ * memória utilizada depende somente do número de <i>buckets</i> e do
+ * número de valores não nulos. A matriz é construída em uma única passada
+ * pelos documentos ({@link #addDocument(String)}): o TF de cada <i>bucket</i>
+ * é acumulado por linha e o número de documentos em que cada <i>bucket</i>
+ * ocorre (df) é contado na mesma passada; o IDF ({@link TFIDF#idf(int, int)})
+ * é aplicado por <i>bucket</i> ao final ({@link #build(int)}).</p>
+ * <p>O valor de cada célula segue o mesmo cálculo da matriz com
+ * dicionário de termos: <code>tf * idf + log(freq)</code>, somados
+ * (com sinal) sobre os termos do <i>bucket</i>.</p>
+ * <p>Não é seguro para uso concorrente.</p>
+ * @version 1.0
+ * @since 2017
+ *
+ */
+public class HashingVectorizer implements FrequencyDecoder.TermResolver {
+
+	/**
+	 * Número máximo de bits: o bit 30 do hash define o sinal
+	 */
+	public static final int MAX_BITS = 30;
+
+	/**
+	 * Semente do hash
+	 */
+	private static final int SEED = 0x9747b28c;
+
+	/**
+	 * Número de bits (2^bits colunas)
+	 */
+	private final int bits;
+
+	/**
+	 * Máscara para obtenção do <i>bucket</i>
+	 */
+	private final int mask;
+
+	/**
+	 * Cálculo do TF-IDF
+	 */
+	private final TFIDF tfidf;
+
+	/**
+	 * Decodificador da coluna <code>freqs</code>
+	 */
+	private final FrequencyDecoder decoder;
+
+	/**
+	 * Consumidor dos termos decodificados (linha atual)
+	 */
+	private final FrequencyDecoder.TermConsumer consumer;
+
+	/**
+	 * Número de documentos em que cada <i>bucket</i> ocorre
+	 */
+	private final int[] documentFrequencies;
+
+	/**
+	 * Início de cada linha em <code>columnIndexes</code>
+	 */
+	private int[] rowPointers;
+
+	/**
+	 * <i>Bucket</i> de cada valor não nulo
+	 */
+	private int[] columnIndexes;
+
+	/**
+	 * Soma (com sinal) do TF dos termos de cada <i>bucket</i>
+	 */
+	private double[] tfs;
+
+	/**
+	 * Soma (com sinal) de log(freq) dos termos de cada <i>bucket</i>
+	 */
+	private double[] logs;
+
+	/**
+	 * Número de linhas
+	 */
+	private int rows;
+
+	/**
+	 * Número de valores armazenados
+	 */
+	private int size;
+
+	/**
+	 * Termos da linha atual: (bucket, posição)
+	 */
+	private long[] rowKeys = new long[256];
+
+	/**
+	 * TF (com sinal) dos termos da linha atual
+	 */
+	private double[] rowTfs = new double[256];
+
+	/**
+	 * log(freq) (com sinal) dos termos da linha atual
+	 */
+	private double[] rowLogs = new double[256];
+
+	/**
+	 * Número de termos da linha atual
+	 */
+	private int rowSize;
+
+	/**
+	 * Cria novo vetorizador.
+	 * @param bits número de bits (a matriz terá 2<sup>bits</sup> colunas).
+	 * @param tfidf cálculo do TF e IDF.
+	 * @param expectedRows número estimado de documentos.
+	 */
+	public HashingVectorizer(int bits, TFIDF tfidf, int expectedRows) {
+		if ( bits < 1 || bits > MAX_BITS )
+			throw new IllegalArgumentException("Bits must be between 1 and " + MAX_BITS + ": " + bits);
+		this.bits = bits;
+		this.mask = (1 << bits) - 1;
+		this.tfidf = tfidf;
+		this.decoder = new FrequencyDecoder(this);
+		this.consumer = this::accept;
+		this.documentFrequencies = new int[1 << bits];
+		this.rowPointers = new int[Math.max(16, expectedRows + 1)];
+		this.columnIndexes = new int[Math.max(16, expectedRows * 64)];
+		this.tfs = new double[columnIndexes.length];
+		this.logs = new double[columnIndexes.length];
+	}
+
+	/**
+	 * Retorna número de bits.
+	 * @return número de bits.
+	 */
+	public int getBits() {
+		return bits;
+	}
+
+	/**
+	 * Retorna número de colunas (<i>buckets</i>) da matriz.
+	 * @return 2<sup>bits</sup>.
+	 */
+	public int getNumberOfFeatures() {
+		return mask + 1;
+	}
+
+	/**
+	 * Retorna número de documentos adicionados.
+	 * @return número de linhas.
+	 */
+	public int rows() {
+		return rows;
+	}
+
+	/**
+	 * Retorna número de documentos em que cada <i>bucket</i> ocorre.
+	 * @return vetor de df's indexado por <i>bucket</i> (não deve ser alterado).
+	 */
+	public int[] getDocumentFrequencies() {
+		return documentFrequencies;
+	}
+
+	/**
+	 * Adiciona documento (nova linha da matriz).
+	 * @param freqs conteúdo da coluna <code>freqs</code> do documento ou
+	 * <code>null</code> (linha vazia).
+	 * @throws IOException erro ao decodificar JSON.
+	 */
+	public void addDocument(String freqs) throws IOException {
+		rowSize = 0;
+		if ( freqs != null )
+			decoder.decode(freqs, consumer);
+		endRow();
+	}
+
+	/**
+	 * Adiciona ao final os documentos de outro vetorizador (ex: construção
+	 * em paralelo por intervalos de documentos), somando os df's.
+	 * @param other vetorizador com o mesmo número de bits.
+	 */
+	public void append(HashingVectorizer other) {
+		if ( other.bits != bits )
+			throw new IllegalArgumentException("Bits: " + other.bits + " != " + bits);
+
+		int count = other.size;
+		if ( size + count > columnIndexes.length ){
+			int capacity = Math.max(size + count, size + (size >> 1));
+			columnIndexes = Arrays.copyOf(columnIndexes, capacity);
+			tfs = Arrays.copyOf(tfs, capacity);
+			logs = Arrays.copyOf(logs, capacity);
+		}
+		System.arraycopy(other.columnIndexes, 0, columnIndexes, size, count);
+		System.arraycopy(other.tfs, 0, tfs, size, count);
+		System.arraycopy(other.logs, 0, logs, size, count);
+
+		if ( rows + other.rows + 1 > rowPointers.length )
+			rowPointers = Arrays.copyOf(rowPointers, rows + other.rows + 1);
+		for( int r = 1; r <= other.rows; r++ )
+			rowPointers[rows + r] = size + other.rowPointers[r];
+		rows += other.rows;
+		size += count;
+
+		for( int b = 0; b < documentFrequencies.length; b++ )
+			documentFrequencies[b] += other.documentFrequencies[b];
+	}
+
+	/**
+	 * Retorna hash (não negativo) do termo: os bits menos
+	 * significativos definem o <i>bucket</i> e o bit 30 o sinal.
+	 */
+	@Override
+	public int resolve(char[] buf, int offset, int length) {
+		return hash(buf, offset, length) & 0x7fffffff;
+	}
+
+	/**
+	 * Acumula termo na linha atual.
+	 * @param hash hash do termo ({@link #resolve(char[], int, int)}).
+	 * @param freq frequência do termo no documento.
+	 */
+	private void accept(int hash, double freq) {
+		if ( freq == 0 )
+			return;
+		if ( rowSize == rowKeys.length ){
+			int capacity = rowSize * 2;
+			rowKeys = Arrays.copyOf(rowKeys, capacity);
+			rowTfs = Arrays.copyOf(rowTfs, capacity);
+			rowLogs = Arrays.copyOf(rowLogs, capacity);
+		}
+		double sign = (hash & (1 << MAX_BITS)) == 0 ? 1.0 : -1.0;
+		rowKeys[rowSize] = ((long) (hash & mask) << 32) | rowSize;
+		rowTfs[rowSize] = sign * tfidf.tf(freq);
+		rowLogs[rowSize] = sign * Logarithms.log(freq);
+		++rowSize;
+	}
+
+	/**
+	 * Finaliza linha atual: ordena termos por <i>bucket</i>, soma
+	 * valores de termos que colidem e atualiza df dos <i>buckets</i>.
+	 */
+	private void endRow() {
+		Arrays.sort(rowKeys, 0, rowSize);
+		if ( size + rowSize > columnIndexes.length ){
+			int capacity = Math.max(size + rowSize, size + (size >> 1));
+			columnIndexes = Arrays.copyOf(columnIndexes, capacity);
+			tfs = Arrays.copyOf(tfs, capacity);
+			logs = Arrays.copyOf(logs, capacity);
+		}
+
+		int from = size;
+		for( int k = 0; k < rowSize; k++ ){
+			int bucket = (int) (rowKeys[k] >>> 32);
+			int pos = (int) rowKeys[k];
+			if ( size > from && columnIndexes[size - 1] == bucket ){
+				tfs[size - 1] += rowTfs[pos];
+				logs[size - 1] += rowLogs[pos];
+			}
+			else {
+				columnIndexes[size] = bucket;
+				tfs[size] = rowTfs[pos];
+				logs[size] = rowLogs[pos];
+				++documentFrequencies[bucket];
+				++size;
+			}
+		}
+
+		if ( rows + 2 > rowPointers.length )
+			rowPointers = Arrays.copyOf(rowPointers, rowPointers.length + (rowPointers.length >> 1));
+		rowPointers[++rows] = size;
+	}
+
+	/**
+	 * Constroi matriz TF-IDF com os documentos adicionados, completando
+	 * com linhas vazias caso necessário. Valores nulos (colisões que se
+	 * cancelam) são descartados.
+	 * @param numberOfDocuments número de documentos (N do IDF e número
+	 * mínimo de linhas da matriz).
+	 * @return matriz esparsa N x 2<sup>bits</sup>.
+	 */
+	public SparseRCDoubleMatrix2D build(int numberOfDocuments) {
+		int numRows = Math.max(numberOfDocuments, rows);
+
+		// IDF por bucket
+		double[] idf = new double[documentFrequencies.length];
+		for( int b = 0; b < idf.length; b++ ){
+			if ( documentFrequencies[b] > 0 )
+				idf[b] = tfidf.idf(numberOfDocuments, documentFrequencies[b]);
+		}
+
+		int[] pointers = new int[numRows + 1];
+		int nnz = 0;
+		for( int r = 0; r < rows; r++ ){
+			for( int k = rowPointers[r]; k < rowPointers[r + 1]; k++ ){
+				double value = idf[columnIndexes[k]] * tfs[k] + logs[k];
+				if ( value != 0 ){
+					columnIndexes[nnz] = columnIndexes[k];
+					tfs[nnz] = value;
+					++nnz;
+				}
+			}
+			pointers[r + 1] = nnz;
+		}
+		Arrays.fill(pointers, rows + 1, numRows + 1, nnz);
+
+		SparseRCDoubleMatrix2D matrix = new SparseRCDoubleMatrix2D(numRows, mask + 1, pointers,
+				Arrays.copyOf(columnIndexes, nnz), Arrays.copyOf(tfs, nnz));
+
+		// Os vetores de construção não são mais válidos
+		rows = size = 0;
+		Arrays.fill(documentFrequencies, 0);
+		return matrix;
+	}
+
+	/**
+	 * MurmurHash3 (x86, 32 bits) sobre os caracteres (UTF-16) do termo.
+	 * @param buf vetor de caracteres.
+	 * @param offset início do termo.
+	 * @param length tamanho do termo.
+	 * @return hash do termo.
+	 */
+	static int hash(char[] buf, int offset, int length) {
+		final int c1 = 0xcc9e2d51, c2 = 0x1b873593;
+		int h = SEED;
+		int end = offset + (length & ~1);
+
+		// Blocos de 32 bits (dois caracteres)
+		for( int i = offset; i < end; i += 2 ){
+			int k = buf[i] | (buf[i + 1] << 16);
+			k *= c1;
+			k = Integer.rotateLeft(k, 15);
+			k *= c2;
+			h ^= k;
+			h = Integer.rotateLeft(h, 13);
+			h = h * 5 + 0xe6546b64;
+		}
+
+		// Caractere restante
+		if ( (length & 1) == 1 ){
+			int k = buf[end];
+			k *= c1;
+			k = Integer.rotateLeft(k, 15);
+			k *= c2;
+			h ^= k;
+		}
+
+		// Finalização
+		h ^= length * 2;
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+}
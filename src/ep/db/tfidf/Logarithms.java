@@ -0,0 +1,43 @@
+package ep.db.tfidf;
+
+/**
+ * Logaritmo natural com tabela para frequências inteiras pequenas
+ * (a grande maioria das frequências de termos), evitando
+ * {@link Math#log(double)} no cálculo de cada célula da matriz
+ * de frequência. O resultado é idêntico ao de {@link Math#log(double)}.
+ * @version 1.0
+ * @since 2017
+ *
+ */
+public final class Logarithms {
+
+	/**
+	 * Tamanho da tabela
+	 */
+	private static final int TABLE_SIZE = 1024;
+
+	/**
+	 * log(k) para k = 0..TABLE_SIZE-1
+	 */
+	private static final double[] TABLE = new double[TABLE_SIZE];
+
+	static {
+		for( int k = 0; k < TABLE_SIZE; k++ )
+			TABLE[k] = Math.log(k);
+	}
+
+	private Logarithms() {
+	}
+
+	/**
+	 * Retorna logaritmo natural de x.
+	 * @param x valor.
+	 * @return log(x).
+	 */
+	public static double log(double x) {
+		int k = (int) x;
+		if ( k == x && k >= 0 && k < TABLE_SIZE )
+			return TABLE[k];
+		return Math.log(x);
+	}
+}
@@ -7,6 +7,11 @@ public class LogaritmicTFIDF implements TFIDF{
 	
 	private Map<String, Integer> termsCount;
 
+	/**
+	 * IDF de cada coluna
+	 */
+	private double[] idf;
+
 	public LogaritmicTFIDF() {
 		
 	}
@@ -16,7 +21,6 @@ public class LogaritmicTFIDF implements TFIDF{
 	}
 	
 	@Override
-	//TODO: optimize-me
 	public double calculate(double count, int n, String term){
 		// 1 + log(f(t,d))
 		double tf = 0, idf;
@@ -30,4 +34,28 @@ public class LogaritmicTFIDF implements TFIDF{
 		// ( 1 + log f(t,d) ) * ( log N / |{d E D: t E d} )
 		return tf * Math.log(idf);
 	}
+
+	@Override
+	public void setDocumentFrequencies(int n, int[] documentFrequencies) {
+		idf = new double[documentFrequencies.length];
+		for( int c = 0; c < idf.length; c++ )
+			idf[c] = idf(n, documentFrequencies[c]);
+	}
+
+	@Override
+	public double calculate(double count, int column) {
+		return tf(count) * idf[column];
+	}
+
+	@Override
+	public double tf(double count) {
+		// 1 + log(f(t,d))
+		return count > 0 ? 1.0 + Logarithms.log(count) : 0;
+	}
+
+	@Override
+	public double idf(int n, int df) {
+		// log N / (1 + |{d E D: t E d}|)
+		return Math.log(n / (1.0 + df));
+	}
 }
@@ -8,4 +8,38 @@ public interface TFIDF {
 
 	public void setTermsCount(Map<String, Integer> termsCount);
 
+	/**
+	 * Define número de documentos em que o termo de cada coluna
+	 * ocorre, pré-calculando o IDF de cada coluna para uso em
+	 * {@link #calculate(double, int)}.
+	 * @param n número de documentos.
+	 * @param documentFrequencies df de cada coluna.
+	 */
+	public void setDocumentFrequencies(int n, int[] documentFrequencies);
+
+	/**
+	 * Calcula TF-IDF do termo da coluna dada, com o IDF pré-calculado
+	 * em {@link #setDocumentFrequencies(int, int[])} (sem busca por termo).
+	 * @param freq frequência absoluta do termo no documento.
+	 * @param column coluna do termo.
+	 * @return TF-IDF.
+	 */
+	public double calculate(double freq, int column);
+
+	/**
+	 * Frequência do termo (TF) ponderada.
+	 * @param freq frequência absoluta do termo no documento.
+	 * @return TF.
+	 */
+	public double tf(double freq);
+
+	/**
+	 * Inverso da frequência nos documentos (IDF).
+	 * @param n número de documentos.
+	 * @param df número de documentos em que o termo (ou <i>bucket</i>,
+	 * ver {@link HashingVectorizer}) ocorre.
+	 * @return IDF.
+	 */
+	public double idf(int n, int df);
+
 }
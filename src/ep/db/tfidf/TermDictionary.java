@@ -0,0 +1,183 @@
+package ep.db.tfidf;
+
+import java.util.Arrays;
+
+/**
+ * Dicionário de termos (termo -&gt; coluna na matriz de frequência)
+ * com endereçamento aberto sobre vetores primitivos.
+ * <p>As colunas são atribuídas em ordem de inserção (0..n-1). A busca
+ * pode ser feita diretamente sobre um trecho de um vetor de caracteres
+ * (ex: buffer do {@link com.fasterxml.jackson.core.JsonParser}),
+ * sem criação de {@link String}.</p>
+ * @version 1.0
+ * @since 2017
+ *
+ */
+public class TermDictionary implements FrequencyDecoder.TermResolver {
+
+	/**
+	 * Tabela de endereçamento: coluna + 1 (0 = posição livre)
+	 */
+	private int[] table;
+
+	/**
+	 * Termo de cada coluna
+	 */
+	private String[] terms;
+
+	/**
+	 * Hash de cada coluna
+	 */
+	private int[] hashes;
+
+	/**
+	 * Número de termos
+	 */
+	private int size;
+
+	/**
+	 * Cria novo dicionário vazio.
+	 * @param expectedSize número estimado de termos.
+	 */
+	public TermDictionary(int expectedSize) {
+		int capacity = Integer.highestOneBit(Math.max(16, expectedSize * 2 - 1)) << 1;
+		this.table = new int[capacity];
+		this.terms = new String[Math.max(16, expectedSize)];
+		this.hashes = new int[terms.length];
+	}
+
+	/**
+	 * Adiciona termo ao dicionário.
+	 * @param term termo.
+	 * @return coluna do termo (existente ou nova).
+	 */
+	public int add(String term) {
+		int h = hash(term);
+		int mask = table.length - 1;
+		for( int i = h & mask; ; i = (i + 1) & mask ){
+			int id = table[i] - 1;
+			if ( id < 0 )
+				break;
+			if ( hashes[id] == h && terms[id].equals(term) )
+				return id;
+		}
+
+		if ( size == terms.length ){
+			terms = Arrays.copyOf(terms, size + (size >> 1));
+			hashes = Arrays.copyOf(hashes, terms.length);
+		}
+		terms[size] = term;
+		hashes[size] = h;
+		++size;
+		if ( 2 * size > table.length )
+			rehash(table.length << 1);
+		else
+			insert(size - 1);
+		return size - 1;
+	}
+
+	/**
+	 * Retorna coluna do termo dado.
+	 * @param term termo.
+	 * @return coluna do termo ou <code>-1</code> caso não exista no
+	 * dicionário.
+	 */
+	public int get(String term) {
+		int h = hash(term);
+		int mask = table.length - 1;
+		for( int i = h & mask; ; i = (i + 1) & mask ){
+			int id = table[i] - 1;
+			if ( id < 0 )
+				return -1;
+			if ( hashes[id] == h && terms[id].equals(term) )
+				return id;
+		}
+	}
+
+	/**
+	 * Retorna coluna do termo contido no trecho dado de um
+	 * vetor de caracteres.
+	 * @param buf vetor de caracteres.
+	 * @param offset início do termo.
+	 * @param length tamanho do termo.
+	 * @return coluna do termo ou <code>-1</code> caso não exista no
+	 * dicionário.
+	 */
+	public int get(char[] buf, int offset, int length) {
+		int h = 0;
+		for( int k = offset, end = offset + length; k < end; k++ )
+			h = 31 * h + buf[k];
+		h = mix(h);
+
+		int mask = table.length - 1;
+		for( int i = h & mask; ; i = (i + 1) & mask ){
+			int id = table[i] - 1;
+			if ( id < 0 )
+				return -1;
+			if ( hashes[id] == h && equals(terms[id], buf, offset, length) )
+				return id;
+		}
+	}
+
+	@Override
+	public int resolve(char[] buf, int offset, int length) {
+		return get(buf, offset, length);
+	}
+
+	/**
+	 * Retorna termo da coluna dada.
+	 * @param column coluna.
+	 * @return termo.
+	 */
+	public String getTerm(int column) {
+		return terms[column];
+	}
+
+	/**
+	 * Retorna número de termos.
+	 * @return número de termos (colunas).
+	 */
+	public int size() {
+		return size;
+	}
+
+	private void insert(int id) {
+		int mask = table.length - 1;
+		int i = hashes[id] & mask;
+		while( table[i] != 0 )
+			i = (i + 1) & mask;
+		table[i] = id + 1;
+	}
+
+	private void rehash(int capacity) {
+		table = new int[capacity];
+		for( int id = 0; id < size; id++ )
+			insert(id);
+	}
+
+	/**
+	 * Hash do termo (mesmo valor calculado por
+	 * {@link #get(char[], int, int)}).
+	 */
+	private static int hash(String term) {
+		return mix(term.hashCode());
+	}
+
+	/**
+	 * Espalha bits do hash para uso dos bits inferiores.
+	 */
+	private static int mix(int h) {
+		h *= 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private static boolean equals(String term, char[] buf, int offset, int length) {
+		if ( term.length() != length )
+			return false;
+		for( int k = 0; k < length; k++ ){
+			if ( term.charAt(k) != buf[offset + k] )
+				return false;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,160 @@
+package ep.db.tfidf;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Vocabulário selecionado para construção da matriz de
+ * frequência de termos: termo, term_id e número de documentos
+ * em que ocorre (df) de cada coluna.
+ * @version 1.0
+ * @since 2017
+ *
+ */
+public class Vocabulary {
+
+	/**
+	 * term_id de cada coluna
+	 */
+	private final int[] termIds;
+
+	/**
+	 * Termo de cada coluna
+	 */
+	private final String[] terms;
+
+	/**
+	 * Número de documentos em que cada termo ocorre
+	 */
+	private final int[] documentFrequencies;
+
+	/**
+	 * Número de documentos considerados
+	 */
+	private final int numberOfDocuments;
+
+	/**
+	 * Critérios utilizados na seleção
+	 */
+	private final VocabularySelector selector;
+
+	/**
+	 * Cria novo vocabulário.
+	 * @param termIds term_id de cada coluna.
+	 * @param terms termo de cada coluna.
+	 * @param documentFrequencies número de documentos em que cada termo ocorre.
+	 * @param numberOfDocuments número de documentos considerados.
+	 * @param selector critérios utilizados na seleção.
+	 */
+	public Vocabulary(int[] termIds, String[] terms, int[] documentFrequencies, int numberOfDocuments,
+			VocabularySelector selector) {
+		this.termIds = termIds;
+		this.terms = terms;
+		this.documentFrequencies = documentFrequencies;
+		this.numberOfDocuments = numberOfDocuments;
+		this.selector = selector;
+	}
+
+	/**
+	 * Retorna número de termos (colunas).
+	 * @return número de termos.
+	 */
+	public int size() {
+		return terms.length;
+	}
+
+	/**
+	 * Retorna term_id de cada coluna.
+	 * @return vetor de term_id's (não deve ser alterado).
+	 */
+	public int[] getTermIds() {
+		return termIds;
+	}
+
+	/**
+	 * Retorna termo de cada coluna.
+	 * @return vetor de termos (não deve ser alterado).
+	 */
+	public String[] getTerms() {
+		return terms;
+	}
+
+	/**
+	 * Retorna número de documentos em que cada termo ocorre.
+	 * @return vetor de df's (não deve ser alterado).
+	 */
+	public int[] getDocumentFrequencies() {
+		return documentFrequencies;
+	}
+
+	/**
+	 * Retorna número de documentos considerados na seleção.
+	 * @return número de documentos.
+	 */
+	public int getNumberOfDocuments() {
+		return numberOfDocuments;
+	}
+
+	/**
+	 * Retorna critérios utilizados na seleção.
+	 * @return critérios de seleção.
+	 */
+	public VocabularySelector getSelector() {
+		return selector;
+	}
+
+	/**
+	 * Retorna mapeamento term_id -&gt; coluna.
+	 * @return vetor indexado por term_id com a coluna de cada
+	 * termo ou <code>-1</code> para termos fora do vocabulário.
+	 */
+	public int[] getColumnIndex() {
+		int maxId = 0;
+		for( int id : termIds )
+			maxId = Math.max(maxId, id);
+		int[] columns = new int[maxId + 1];
+		Arrays.fill(columns, -1);
+		for( int c = 0; c < termIds.length; c++ )
+			columns[termIds[c]] = c;
+		return columns;
+	}
+
+	/**
+	 * Retorna mapa termo -&gt; número de documentos (utilizado
+	 * por {@link TFIDF#setTermsCount(Map)}).
+	 * @return mapa ordenado por termo.
+	 */
+	public Map<String, Integer> getTermsCount() {
+		Map<String, Integer> termsCount = new TreeMap<>();
+		for( int c = 0; c < terms.length; c++ )
+			termsCount.put(terms[c], documentFrequencies[c]);
+		return termsCount;
+	}
+
+	/**
+	 * Retorna resumo (SHA-256) do vocabulário: term_id e df de cada
+	 * coluna e número de documentos. Execuções com o mesmo resumo
+	 * constroem a mesma matriz TF-IDF para os mesmos documentos.
+	 * @return resumo em hexadecimal.
+	 */
+	public String getHash() {
+		ByteBuffer buffer = ByteBuffer.allocate(4 * (2 * termIds.length + 1));
+		buffer.putInt(numberOfDocuments);
+		for( int c = 0; c < termIds.length; c++ ){
+			buffer.putInt(termIds[c]);
+			buffer.putInt(documentFrequencies[c]);
+		}
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(buffer.array());
+			StringBuilder hex = new StringBuilder(2 * digest.length);
+			for( byte b : digest )
+				hex.append(String.format("%02x", b));
+			return hex.toString();
+		}catch( Exception e){
+			throw new IllegalStateException(e);
+		}
+	}
+}
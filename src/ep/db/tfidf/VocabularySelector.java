@@ -0,0 +1,123 @@
+package ep.db.tfidf;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Critérios de seleção do vocabulário (colunas) da matriz
+ * de frequência de termos.
+ * <p>Os critérios são aplicados no banco de dados (SQL) antes da
+ * construção da matriz:</p>
+ * <ul>
+ * <li><code>tfidf.min_df</code>: número mínimo de documentos em que o termo
+ * ocorre (padrão 2);</li>
+ * <li><code>tfidf.max_df</code>: fração máxima de documentos em que o termo
+ * ocorre (padrão 1.0, sem limite);</li>
+ * <li><code>tfidf.top_k</code>: mantém somente os K termos que ocorrem em mais
+ * documentos (padrão 0, sem limite);</li>
+ * <li><code>tfidf.stopwords</code>: lista de termos (lexemas) separados por
+ * vírgula a serem descartados.</li>
+ * </ul>
+ * @version 1.0
+ * @since 2017
+ *
+ */
+public class VocabularySelector {
+
+	/**
+	 * Número mínimo de documentos
+	 */
+	private final int minDf;
+
+	/**
+	 * Fração máxima de documentos
+	 */
+	private final double maxDf;
+
+	/**
+	 * Número máximo de termos (0 = sem limite)
+	 */
+	private final int topK;
+
+	/**
+	 * Termos descartados
+	 */
+	private final String[] stopwords;
+
+	/**
+	 * Cria novo seletor com os critérios dados.
+	 * @param minDf número mínimo de documentos em que o termo ocorre.
+	 * @param maxDf fração máxima de documentos em que o termo ocorre.
+	 * @param topK número máximo de termos (0 = sem limite).
+	 * @param stopwords termos descartados.
+	 */
+	public VocabularySelector(int minDf, double maxDf, int topK, String[] stopwords) {
+		this.minDf = minDf;
+		this.maxDf = maxDf;
+		this.topK = topK;
+		this.stopwords = stopwords != null ? stopwords : new String[0];
+	}
+
+	/**
+	 * Cria novo seletor a partir da configuração.
+	 * @param config configuração.
+	 */
+	public VocabularySelector(Properties config) {
+		this(Integer.parseInt(config.getProperty("tfidf.min_df", "2")),
+				Double.parseDouble(config.getProperty("tfidf.max_df", "1.0")),
+				Integer.parseInt(config.getProperty("tfidf.top_k", "0")),
+				parseStopwords(config.getProperty("tfidf.stopwords", "")));
+	}
+
+	/**
+	 * Retorna número mínimo de documentos em que o termo ocorre.
+	 * @return número mínimo de documentos.
+	 */
+	public int getMinDf() {
+		return minDf;
+	}
+
+	/**
+	 * Retorna fração máxima de documentos em que o termo ocorre.
+	 * @return fração máxima de documentos.
+	 */
+	public double getMaxDf() {
+		return maxDf;
+	}
+
+	/**
+	 * Retorna número máximo de documentos em que o termo ocorre.
+	 * @param numberOfDocuments número de documentos considerados.
+	 * @return número máximo de documentos.
+	 */
+	public int getMaxDocuments(int numberOfDocuments) {
+		return (int) Math.floor(maxDf * numberOfDocuments);
+	}
+
+	/**
+	 * Retorna número máximo de termos.
+	 * @return número máximo de termos (0 = sem limite).
+	 */
+	public int getTopK() {
+		return topK;
+	}
+
+	/**
+	 * Retorna termos descartados.
+	 * @return termos descartados.
+	 */
+	public String[] getStopwords() {
+		return stopwords;
+	}
+
+	private static String[] parseStopwords(String value) {
+		List<String> words = new ArrayList<>();
+		for( String word : value.split(",") ){
+			word = word.trim();
+			if ( !word.isEmpty() )
+				words.add(word);
+		}
+		return words.toArray(new String[words.size()]);
+	}
+}
@@ -0,0 +1,112 @@
+package ep.db.mdp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix2D;
+
+/**
+ * Compara a qualidade da projeção (<i>stress</i> normalizado:
+ * <code>sum (d_ij - |y_i - y_j|)^2 / sum d_ij^2</code>) do
+ * {@link ForceScheme} sequencial (Gauss-Seidel), paralelo (por blocos)
+ * e da aproximação {@link BarnesHutForceScheme}, e a reprodutibilidade
+ * das projeções com a mesma semente.
+ * <p>Os dados são sintéticos: pontos gaussianos em torno de 10 centros
+ * em 20 dimensões.</p>
+ * @version 1.0
+ * @since 2017
+ *
+ */
+public class ForceSchemeTest {
+
+	private static final int POINTS = 640;
+
+	private static final int DIMENSIONS = 20;
+
+	private static final int CLUSTERS = 10;
+
+	private static final int THREADS = 4;
+
+	private static final long SEED = 1;
+
+	private DoubleMatrix2D points;
+
+	private DistanceMatrix distances;
+
+	@Before
+	public void setUp() {
+		Random rng = new Random(42);
+		double[][] centers = new double[CLUSTERS][DIMENSIONS];
+		for( double[] c : centers )
+			for( int j = 0; j < DIMENSIONS; j++ )
+				c[j] = 4 * rng.nextGaussian();
+
+		points = new DenseDoubleMatrix2D(POINTS, DIMENSIONS);
+		for( int i = 0; i < POINTS; i++ )
+			for( int j = 0; j < DIMENSIONS; j++ )
+				points.setQuick(i, j, centers[i % CLUSTERS][j] + rng.nextGaussian());
+		distances = DistanceMatrix.compute(points, DistanceMetric.EUCLIDEAN, 1);
+	}
+
+	@Test
+	public void stress() {
+		DoubleMatrix2D random = new DenseDoubleMatrix2D(POINTS, 2);
+		Random rng = new Random(SEED);
+		for( int i = 0; i < POINTS; i++ ){
+			random.setQuick(i, 0, rng.nextDouble());
+			random.setQuick(i, 1, rng.nextDouble());
+		}
+
+		double sequential = stress(forceScheme(1).project(distances));
+		double parallel = stress(forceScheme(THREADS).project(distances));
+		double barnesHut = stress(barnesHut(THREADS).project(points));
+
+		assertTrue("sequential: " + sequential, sequential < 0.2 * stress(random));
+		assertTrue("parallel: " + parallel + ", sequential: " + sequential, parallel < 2 * sequential);
+		assertTrue("barnes-hut: " + barnesHut + ", sequential: " + sequential, barnesHut < 1.5 * sequential);
+	}
+
+	/**
+	 * Mesma semente e mesmo número de threads: projeções idênticas
+	 * (Barnes-Hut: independente do número de threads).
+	 */
+	@Test
+	public void reproducible() {
+		assertEquals(forceScheme(1).project(distances), forceScheme(1).project(distances));
+		assertEquals(forceScheme(THREADS).project(distances), forceScheme(THREADS).project(distances));
+		assertEquals(barnesHut(1).project(points), barnesHut(THREADS).project(points));
+	}
+
+	private static ForceScheme forceScheme(int threads) {
+		ForceScheme forceScheme = new ForceScheme();
+		forceScheme.setSeed(SEED);
+		forceScheme.setParallelism(threads);
+		return forceScheme;
+	}
+
+	private static BarnesHutForceScheme barnesHut(int threads) {
+		BarnesHutForceScheme barnesHut = new BarnesHutForceScheme(100, 0.5f, 10, 10);
+		barnesHut.setSeed(SEED);
+		barnesHut.setParallelism(threads);
+		return barnesHut;
+	}
+
+	private double stress(DoubleMatrix2D y) {
+		double num = 0, den = 0;
+		for( int a = 0; a < y.rows(); a++ ){
+			for( int b = a + 1; b < y.rows(); b++ ){
+				double d = distances.get(a, b);
+				double e = Math.hypot(y.getQuick(a, 0) - y.getQuick(b, 0), y.getQuick(a, 1) - y.getQuick(b, 1));
+				num += (d - e) * (d - e);
+				den += d * d;
+			}
+		}
+		return num / den;
+	}
+}
@@ -0,0 +1,77 @@
+package ep.db.mdp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix2D;
+
+/**
+ * Testa as posições anteriores dos pontos de controle utilizadas no
+ * alinhamento entre execuções
+ * ({@link MultidimensionalProjection#previousPositions(DoubleMatrix2D, long[], long, double[])}).
+ * @version 1.0
+ * @since 2017
+ *
+ */
+public class MultidimensionalProjectionTest {
+
+	private static final double EPS = 1e-9;
+
+	/**
+	 * Pontos de controle com um documento inserido após a execução
+	 * anterior (x = y = 0 no banco) e um sem projeção (<code>NaN</code>):
+	 * ambos não têm posição anterior e a projeção rotacionada e
+	 * transladada volta exatamente à projeção anterior.
+	 */
+	@Test
+	public void alignIgnoresUnprojectedControlPoints() {
+		Random rng = new Random(42);
+		int n = 12;
+		long lastDocId = 100;
+		double[] bounds = { -3, 5, -2, 7 };
+
+		// Projeção anterior (antes da normalização) e armazenada (normalizada)
+		long[] cpointIds = new long[n];
+		DoubleMatrix2D previous = new DenseDoubleMatrix2D(n, 2);
+		DoubleMatrix2D stored = new DenseDoubleMatrix2D(n, 2);
+		for( int i = 0; i < n; i++ ){
+			cpointIds[i] = 10 + 7 * i;
+			previous.setQuick(i, 0, bounds[0] + rng.nextDouble() * (bounds[1] - bounds[0]));
+			previous.setQuick(i, 1, bounds[2] + rng.nextDouble() * (bounds[3] - bounds[2]));
+			stored.setQuick(i, 0, 2 * (previous.getQuick(i, 0) - bounds[0]) / (bounds[1] - bounds[0]) - 1);
+			stored.setQuick(i, 1, 2 * (previous.getQuick(i, 1) - bounds[2]) / (bounds[3] - bounds[2]) - 1);
+		}
+		int inserted = 3, unprojected = 7;
+		cpointIds[inserted] = lastDocId + 5;
+		stored.setQuick(inserted, 0, 0);
+		stored.setQuick(inserted, 1, 0);
+		stored.setQuick(unprojected, 0, Double.NaN);
+		stored.setQuick(unprojected, 1, Double.NaN);
+
+		DoubleMatrix2D target = MultidimensionalProjection.previousPositions(stored, cpointIds, lastDocId, bounds);
+		assertTrue(Double.isNaN(target.getQuick(inserted, 0)));
+		assertTrue(Double.isNaN(target.getQuick(inserted, 1)));
+		assertTrue(Double.isNaN(target.getQuick(unprojected, 0)));
+		assertTrue(Double.isNaN(target.getQuick(unprojected, 1)));
+
+		// Nova projeção: anterior rotacionada e transladada
+		double cos = Math.cos(1.3), sin = Math.sin(1.3);
+		DoubleMatrix2D y = new DenseDoubleMatrix2D(n, 2);
+		for( int i = 0; i < n; i++ ){
+			double x0 = previous.getQuick(i, 0), x1 = previous.getQuick(i, 1);
+			y.setQuick(i, 0, x0 * cos - x1 * sin + 4);
+			y.setQuick(i, 1, x0 * sin + x1 * cos - 1);
+		}
+
+		assertTrue(PlanarProcrustes.align(y, target));
+		for( int i = 0; i < n; i++ ){
+			assertEquals(previous.getQuick(i, 0), y.getQuick(i, 0), EPS);
+			assertEquals(previous.getQuick(i, 1), y.getQuick(i, 1), EPS);
+		}
+	}
+}
@@ -0,0 +1,261 @@
+package ep.db.mdp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.colt.matrix.tdouble.algo.decomposition.DenseDoubleSingularValueDecomposition;
+import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix2D;
+
+/**
+ * Testa a solução fechada do problema de Procrustes
+ * ({@link PlanarProcrustes#project(double[], double, double[], double[])}),
+ * comparando-a com a SVD (eq. 7 e 8 do LAMP), e o alinhamento rígido
+ * entre projeções ({@link PlanarProcrustes#align(DoubleMatrix2D, DoubleMatrix2D)}).
+ * @version 1.0
+ * @since 2017
+ *
+ */
+public class PlanarProcrustesTest {
+
+	private static final double EPS = 1e-9;
+
+	private Random rng;
+
+	@Before
+	public void setUp() {
+		rng = new Random(42);
+	}
+
+	/**
+	 * Pontos de controle no plano transformados por rotação ou reflexão
+	 * e translação: a transformação deve ser recuperada exatamente.
+	 */
+	@Test
+	public void projectRecoversRigidTransform() {
+		for( boolean reflect : new boolean[]{ false, true } ){
+			double[][] r = transform(0.7, reflect);
+			int k = 6;
+			DoubleMatrix2D xs = random(k, 2);
+			DoubleMatrix2D ys = new DenseDoubleMatrix2D(k, 2);
+			for( int i = 0; i < k; i++ )
+				apply(r, 3, -2, xs.getQuick(i, 0), xs.getQuick(i, 1), ys, i);
+
+			PlanarProcrustes procrustes = new PlanarProcrustes(PlanarProcrustes.gram(xs),
+					PlanarProcrustes.flatten(ys), k);
+			for( int t = 0; t < 10; t++ ){
+				double[] x = { rng.nextGaussian(), rng.nextGaussian() };
+				double[] alpha = weights(k);
+				double[] dots = dots(xs, x);
+				double[] y = new double[2];
+				assertTrue(procrustes.project(alpha, sum(alpha), dots, y));
+
+				DoubleMatrix2D expected = new DenseDoubleMatrix2D(1, 2);
+				apply(r, 3, -2, x[0], x[1], expected, 0);
+				assertEquals(expected.getQuick(0, 0), y[0], EPS);
+				assertEquals(expected.getQuick(0, 1), y[1], EPS);
+			}
+		}
+	}
+
+	/**
+	 * Pontos em dimensão alta: resultado igual ao da SVD
+	 * (<code>M = UV'</code>), com todos os pontos de controle e com
+	 * um subconjunto deles.
+	 */
+	@Test
+	public void projectMatchesSvd() {
+		int k = 8, dim = 5;
+		DoubleMatrix2D xs = random(k, dim);
+		DoubleMatrix2D ys = random(k, 2);
+		PlanarProcrustes procrustes = new PlanarProcrustes(PlanarProcrustes.gram(xs),
+				PlanarProcrustes.flatten(ys), k);
+
+		int[] index = { 6, 1, 3, 4, 0 };
+		DoubleMatrix2D subXs = xs.viewSelection(index, null).copy();
+		DoubleMatrix2D subYs = ys.viewSelection(index, null).copy();
+
+		for( int t = 0; t < 10; t++ ){
+			double[] x = new double[dim];
+			for( int e = 0; e < dim; e++ )
+				x[e] = rng.nextGaussian();
+
+			double[] alpha = weights(k);
+			double[] y = new double[2];
+			assertTrue(procrustes.project(alpha, sum(alpha), dots(xs, x), y));
+			double[] expected = svd(xs, ys, alpha, x);
+			assertEquals(expected[0], y[0], EPS);
+			assertEquals(expected[1], y[1], EPS);
+
+			alpha = weights(index.length);
+			assertTrue(procrustes.project(index, index.length, alpha, sum(alpha), dots(subXs, x), y));
+			expected = svd(subXs, subYs, alpha, x);
+			assertEquals(expected[0], y[0], EPS);
+			assertEquals(expected[1], y[1], EPS);
+		}
+	}
+
+	/**
+	 * C singular (projeção dos pontos de controle colinear ou pontos
+	 * de controle coincidentes): SVD deve ser utilizada.
+	 */
+	@Test
+	public void projectRankDeficient() {
+		int k = 5, dim = 3;
+		double[] x = { 0.5, -1, 2 };
+		double[] alpha = weights(k);
+		double[] y = new double[2];
+
+		DoubleMatrix2D xs = random(k, dim);
+		DoubleMatrix2D ys = new DenseDoubleMatrix2D(k, 2);
+		for( int i = 0; i < k; i++ ){
+			double s = rng.nextGaussian();
+			ys.setQuick(i, 0, 1 + 2 * s);
+			ys.setQuick(i, 1, -1 + s);
+		}
+		PlanarProcrustes procrustes = new PlanarProcrustes(PlanarProcrustes.gram(xs),
+				PlanarProcrustes.flatten(ys), k);
+		assertFalse(procrustes.project(alpha, sum(alpha), dots(xs, x), y));
+
+		DoubleMatrix2D same = new DenseDoubleMatrix2D(k, dim);
+		for( int i = 0; i < k; i++ )
+			same.viewRow(i).assign(xs.viewRow(0));
+		procrustes = new PlanarProcrustes(PlanarProcrustes.gram(same),
+				PlanarProcrustes.flatten(random(k, 2)), k);
+		assertFalse(procrustes.project(alpha, sum(alpha), dots(same, x), y));
+	}
+
+	/**
+	 * Projeção transformada por rotação ou reflexão e translação deve
+	 * voltar à referência; pontos sem referência (<code>NaN</code>) são
+	 * ignorados no cálculo mas também transformados.
+	 */
+	@Test
+	public void alignRecoversRigidTransform() {
+		for( boolean reflect : new boolean[]{ false, true } ){
+			int n = 20;
+			DoubleMatrix2D target = random(n, 2);
+			DoubleMatrix2D y = new DenseDoubleMatrix2D(n, 2);
+			double[][] r = transform(-2.1, reflect);
+			for( int i = 0; i < n; i++ )
+				apply(r, -5, 4, target.getQuick(i, 0), target.getQuick(i, 1), y, i);
+
+			DoubleMatrix2D reference = target.copy();
+			for( int i = 0; i < n; i += 4 ){
+				reference.setQuick(i, 0, Double.NaN);
+				reference.setQuick(i, 1, Double.NaN);
+			}
+
+			assertTrue(PlanarProcrustes.align(y, reference));
+			for( int i = 0; i < n; i++ ){
+				assertEquals(target.getQuick(i, 0), y.getQuick(i, 0), EPS);
+				assertEquals(target.getQuick(i, 1), y.getQuick(i, 1), EPS);
+			}
+		}
+	}
+
+	/**
+	 * Menos de 3 pontos com referência ou pontos colineares: projeção
+	 * não é alterada.
+	 */
+	@Test
+	public void alignRankDeficient() {
+		int n = 6;
+		DoubleMatrix2D y = random(n, 2);
+		DoubleMatrix2D original = y.copy();
+
+		DoubleMatrix2D target = new DenseDoubleMatrix2D(n, 2);
+		for( int i = 0; i < n; i++ ){
+			target.setQuick(i, 0, i);
+			target.setQuick(i, 1, 2 * i + 1);
+		}
+		assertFalse(PlanarProcrustes.align(y, target));
+
+		target = random(n, 2);
+		for( int i = 2; i < n; i++ ){
+			target.setQuick(i, 0, Double.NaN);
+			target.setQuick(i, 1, Double.NaN);
+		}
+		assertFalse(PlanarProcrustes.align(y, target));
+		assertTrue(original.equals(y));
+	}
+
+	/**
+	 * Referência: eq. 7 e 8 do LAMP com SVD.
+	 */
+	private static double[] svd(DoubleMatrix2D xs, DoubleMatrix2D ys, double[] alpha, double[] x) {
+		int k = xs.rows(), dim = xs.columns();
+		double alphaSum = sum(alpha);
+		double[] xt = new double[dim], yt = new double[2];
+		for( int i = 0; i < k; i++ ){
+			for( int e = 0; e < dim; e++ )
+				xt[e] += alpha[i] * xs.getQuick(i, e) / alphaSum;
+			for( int e = 0; e < 2; e++ )
+				yt[e] += alpha[i] * ys.getQuick(i, e) / alphaSum;
+		}
+
+		DoubleMatrix2D c = new DenseDoubleMatrix2D(dim, 2);
+		for( int i = 0; i < k; i++ )
+			for( int e = 0; e < dim; e++ )
+				for( int f = 0; f < 2; f++ )
+					c.setQuick(e, f, c.getQuick(e, f) + alpha[i]
+							* (xs.getQuick(i, e) - xt[e]) * (ys.getQuick(i, f) - yt[f]));
+
+		DenseDoubleSingularValueDecomposition svd = new DenseDoubleSingularValueDecomposition(c, true, true);
+		DoubleMatrix2D m = svd.getU().viewPart(0, 0, dim, 2).zMult(svd.getV().viewDice(), null);
+
+		double[] y = yt.clone();
+		for( int e = 0; e < dim; e++ )
+			for( int f = 0; f < 2; f++ )
+				y[f] += (x[e] - xt[e]) * m.getQuick(e, f);
+		return y;
+	}
+
+	private static double[][] transform(double angle, boolean reflect) {
+		double cos = Math.cos(angle), sin = Math.sin(angle);
+		double s = reflect ? -1 : 1;
+		return new double[][]{ { cos, sin }, { -s * sin, s * cos } };
+	}
+
+	private static void apply(double[][] r, double t0, double t1, double x0, double x1,
+			DoubleMatrix2D out, int row) {
+		out.setQuick(row, 0, x0 * r[0][0] + x1 * r[1][0] + t0);
+		out.setQuick(row, 1, x0 * r[0][1] + x1 * r[1][1] + t1);
+	}
+
+	private DoubleMatrix2D random(int rows, int columns) {
+		DoubleMatrix2D m = new DenseDoubleMatrix2D(rows, columns);
+		for( int i = 0; i < rows; i++ )
+			for( int j = 0; j < columns; j++ )
+				m.setQuick(i, j, rng.nextGaussian());
+		return m;
+	}
+
+	private double[] weights(int k) {
+		double[] alpha = new double[k];
+		for( int i = 0; i < k; i++ )
+			alpha[i] = 0.1 + rng.nextDouble();
+		return alpha;
+	}
+
+	private static double[] dots(DoubleMatrix2D xs, double[] x) {
+		double[] dots = new double[xs.rows()];
+		for( int i = 0; i < xs.rows(); i++ )
+			for( int e = 0; e < xs.columns(); e++ )
+				dots[i] += xs.getQuick(i, e) * x[e];
+		return dots;
+	}
+
+	private static double sum(double[] values) {
+		double sum = 0;
+		for( double v : values )
+			sum += v;
+		return sum;
+	}
+}
@@ -0,0 +1,117 @@
+package ep.db.mdp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Compara a busca dos vizinhos mais próximos da {@link VantagePointTree}
+ * com a busca exaustiva, incluindo distâncias empatadas (pontos em
+ * grade e repetidos) e <code>m</code> maior que o número de itens.
+ * @version 1.0
+ * @since 2017
+ *
+ */
+public class VantagePointTreeTest {
+
+	private Random rng;
+
+	@Before
+	public void setUp() {
+		rng = new Random(42);
+	}
+
+	@Test
+	public void randomPoints() {
+		for( int n : new int[]{ 1, 2, 3, 10, 57, 200 } ){
+			double[][] points = new double[n][3];
+			for( double[] p : points )
+				for( int e = 0; e < p.length; e++ )
+					p[e] = rng.nextGaussian();
+			check(points, false);
+		}
+	}
+
+	/**
+	 * Pontos em grade inteira (muitas distâncias iguais) e pontos
+	 * repetidos (distância zero).
+	 */
+	@Test
+	public void ties() {
+		for( int n : new int[]{ 2, 9, 40, 150 } ){
+			double[][] points = new double[n][2];
+			for( double[] p : points ){
+				p[0] = rng.nextInt(4);
+				p[1] = rng.nextInt(4);
+			}
+			check(points, false);
+			check(points, true);
+		}
+	}
+
+	@Test
+	public void empty() {
+		VantagePointTree tree = new VantagePointTree(0, (i, j) -> 0, rng);
+		VantagePointTree.Search search = tree.new Search(5);
+		assertEquals(0, search.nearest(i -> 0, 5, new int[5], new double[5]));
+	}
+
+	/**
+	 * Consulta pontos da própria base e pontos aleatórios, para todos os
+	 * valores de <code>m</code> de 1 a n + 2.
+	 */
+	private void check(double[][] points, boolean manhattan) {
+		int n = points.length;
+		VantagePointTree tree = new VantagePointTree(n,
+				(i, j) -> distance(points[i], points[j], manhattan), rng);
+		VantagePointTree.Search search = tree.new Search(n + 2);
+		int[] nearest = new int[n + 2];
+		double[] distances = new double[n + 2];
+
+		for( int t = 0; t < 2 * n + 5; t++ ){
+			double[] query;
+			if ( t < n )
+				query = points[t];
+			else {
+				query = new double[points[0].length];
+				for( int e = 0; e < query.length; e++ )
+					query[e] = rng.nextInt(5) - 0.5 * rng.nextInt(2);
+			}
+
+			double[] all = new double[n];
+			for( int i = 0; i < n; i++ )
+				all[i] = distance(query, points[i], manhattan);
+			double[] sorted = all.clone();
+			Arrays.sort(sorted);
+
+			for( int m = 1; m <= n + 2; m++ ){
+				int count = search.nearest(i -> all[i], m, nearest, distances);
+				assertEquals(Math.min(m, n), count);
+
+				boolean[] seen = new boolean[n];
+				for( int q = 0; q < count; q++ ){
+					// Mesmas distâncias da busca exaustiva (itens podem
+					// diferir em empates), itens distintos e consistentes
+					assertEquals("m = " + m + ", q = " + q, sorted[q], distances[q], 0);
+					assertEquals(all[nearest[q]], distances[q], 0);
+					assertTrue(!seen[nearest[q]]);
+					seen[nearest[q]] = true;
+				}
+			}
+		}
+	}
+
+	private static double distance(double[] a, double[] b, boolean manhattan) {
+		double sum = 0;
+		for( int e = 0; e < a.length; e++ ){
+			double d = a[e] - b[e];
+			sum += manhattan ? Math.abs(d) : d * d;
+		}
+		return manhattan ? sum : Math.sqrt(sum);
+	}
+}
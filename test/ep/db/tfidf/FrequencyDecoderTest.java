@@ -0,0 +1,78 @@
+package ep.db.tfidf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertArrayEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Compara a decodificação da coluna <code>freqs</code> com
+ * {@link FrequencyDecoder} (streaming) e com {@link ObjectMapper}
+ * (mapas por termo, decodificação anterior).
+ * @version 1.0
+ * @since 2017
+ *
+ */
+public class FrequencyDecoderTest {
+
+	private static final String[] DOCUMENTS = {
+		"[]",
+		"[{\"word\": \"graph\", \"ndoc\": 1, \"nentry\": 3}, {\"word\": \"rank\", \"ndoc\": 1, \"nentry\": 1}]",
+		"[{\"nentry\": 2, \"word\": \"project\"}, {\"word\": \"unknown\", \"nentry\": 7}]",
+		"[{\"word\": \"ma\\u00e7\\u00e3\", \"ndoc\": 1, \"nentry\": 2.5}, {\"word\": \"café\", \"nentry\": 4}]",
+		"[{\"word\": \"graph\", \"extra\": {\"a\": [1, 2]}, \"nentry\": 5}, {\"word\": \"rank\", \"nentry\": 0}]",
+	};
+
+	private TermDictionary dictionary;
+
+	@Before
+	public void setUp() {
+		dictionary = new TermDictionary(16);
+		for( String term : new String[]{ "graph", "rank", "project", "maçã", "café" } )
+			dictionary.add(term);
+	}
+
+	@Test
+	public void decodeMatchesObjectMapper() throws IOException {
+		FrequencyDecoder decoder = new FrequencyDecoder(dictionary);
+		for( String json : DOCUMENTS ){
+			List<double[]> streamed = new ArrayList<>();
+			int count = decoder.decode(json, (column, freq) -> streamed.add(new double[]{ column, freq }));
+
+			List<double[]> expected = decodeObjectMapper(json);
+			assertEquals(json, expected.size(), count);
+			assertEquals(json, expected.size(), streamed.size());
+			for( int i = 0; i < expected.size(); i++ )
+				assertArrayEquals(json, expected.get(i), streamed.get(i), 0);
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void invalidArray() throws IOException {
+		new FrequencyDecoder(dictionary).decode("[{\"word\": \"graph\", \"nentry\": 1}, 3]", (column, freq) -> {});
+	}
+
+	/**
+	 * Decodificação anterior: mapas por termo.
+	 */
+	private List<double[]> decodeObjectMapper(String json) throws IOException {
+		List<Map<String,Object>> terms = new ObjectMapper().readValue(json,
+				new TypeReference<List<Map<String,Object>>>(){});
+		List<double[]> result = new ArrayList<>();
+		for( Map<String,Object> term : terms ){
+			int column = dictionary.get((String) term.get("word"));
+			if ( column >= 0 )
+				result.add(new double[]{ column, ((Number) term.get("nentry")).doubleValue() });
+		}
+		return result;
+	}
+}
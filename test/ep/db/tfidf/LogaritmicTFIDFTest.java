@@ -0,0 +1,90 @@
+package ep.db.tfidf;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Compara o cálculo das células da matriz de frequência por termo
+ * ({@link TFIDF#calculate(double, int, String)}: busca no mapa de termos
+ * e {@link Math#log(double)}) e por coluna
+ * ({@link TFIDF#calculate(double, int)}: IDF pré-calculado e
+ * {@link Logarithms}). Os dois cálculos devem ser idênticos.
+ * <p>Os dados são sintéticos: vocabulário e df's aleatórios, termos
+ * com distribuição de Zipf e frequências com distribuição geométrica.</p>
+ * @version 1.0
+ * @since 2017
+ *
+ */
+public class LogaritmicTFIDFTest {
+
+	/**
+	 * Número de documentos (N do IDF)
+	 */
+	private static final int DOCUMENTS = 100000;
+
+	private static final int TERMS = 2000;
+
+	private static final int CELLS = 100000;
+
+	/**
+	 * Termo de cada coluna
+	 */
+	private String[] terms;
+
+	private TFIDF byTerm;
+
+	private TFIDF byColumn;
+
+	@Before
+	public void setUp() {
+		Random rng = new Random(42);
+
+		terms = new String[TERMS];
+		int[] df = new int[TERMS];
+		Map<String, Integer> termsCount = new HashMap<>();
+		for( int c = 0; c < TERMS; c++ ){
+			terms[c] = Integer.toString(c, 36) + "term";
+			df[c] = 2 + rng.nextInt(DOCUMENTS / 10);
+			termsCount.put(terms[c], df[c]);
+		}
+
+		byTerm = new LogaritmicTFIDF();
+		byTerm.setTermsCount(termsCount);
+		byColumn = new LogaritmicTFIDF();
+		byColumn.setDocumentFrequencies(DOCUMENTS, df);
+	}
+
+	@Test
+	public void byColumnMatchesByTerm() {
+		Random rng = new Random(7);
+		for( int k = 0; k < CELLS; k++ ){
+			int column = (int) Math.min(TERMS - 1, Math.floor(Math.pow(TERMS, rng.nextDouble())) - 1);
+			double freq = 1 + (int) Math.floor(Math.log(rng.nextDouble()) / Math.log(0.6));
+			assertEquals("cell " + k, byTerm.calculate(freq, DOCUMENTS, terms[column]),
+					byColumn.calculate(freq, column), 0);
+		}
+	}
+
+	@Test
+	public void zeroFrequency() {
+		for( int c = 0; c < TERMS; c++ ){
+			assertEquals(0, byColumn.calculate(0, c), 0);
+			assertEquals(byTerm.calculate(0, DOCUMENTS, terms[c]), byColumn.calculate(0, c), 0);
+		}
+	}
+
+	@Test
+	public void logarithmsMatchMathLog() {
+		double[] values = { 0, 1, 2, 3, 1023, 1024, 1025, 0.5, 2.5, 1e6, 1e-3 };
+		for( double x : values )
+			assertEquals("log(" + x + ")", Math.log(x), Logarithms.log(x), 0);
+		for( int k = 0; k < 4096; k++ )
+			assertEquals("log(" + k + ")", Math.log(k), Logarithms.log(k), 0);
+	}
+}